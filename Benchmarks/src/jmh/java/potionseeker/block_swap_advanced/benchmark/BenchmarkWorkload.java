@@ -0,0 +1,172 @@
+package potionseeker.block_swap_advanced.benchmark;
+
+import potionseeker.block_swap_advanced.config.BlockSwapConfig;
+import potionseeker.block_swap_advanced.swapper.PlacementCause;
+import potionseeker.block_swap_advanced.swapper.SwapPhase;
+import potionseeker.block_swap_advanced.swapper.SwapTable;
+import potionseeker.block_swap_advanced.swapper.Swapper;
+
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Rule sets and chunk contents for the benchmarks, generated from a fixed seed so every run sees the same workload.
+ */
+public final class BenchmarkWorkload {
+    public static final long SEED = 0x5EEDL;
+
+    // Blocks the rules swap, roughly in order of how often they occur underground
+    private static final Block[] OLD_BLOCKS = {
+            Blocks.STONE, Blocks.DEEPSLATE, Blocks.DIRT, Blocks.GRAVEL, Blocks.GRANITE, Blocks.DIORITE, Blocks.ANDESITE,
+            Blocks.TUFF, Blocks.COAL_ORE, Blocks.IRON_ORE, Blocks.COPPER_ORE, Blocks.DEEPSLATE_IRON_ORE, Blocks.GRASS_BLOCK,
+            Blocks.SAND, Blocks.CALCITE, Blocks.DRIPSTONE_BLOCK
+    };
+    private static final Block[] NEW_BLOCKS = {
+            Blocks.COBBLESTONE, Blocks.COBBLED_DEEPSLATE, Blocks.COARSE_DIRT, Blocks.SAND, Blocks.POLISHED_GRANITE,
+            Blocks.POLISHED_DIORITE, Blocks.POLISHED_ANDESITE, Blocks.SMOOTH_BASALT
+    };
+
+    private BenchmarkWorkload() {}
+
+    /**
+     * Which filters the generated rules carry.
+     */
+    public enum FilterMix {
+        NONE,
+        DIMENSION,
+        BIOME,
+        /**
+         * Cycles through no filter, a dimension filter, a biome filter and a Y range with a swap probability.
+         */
+        MIXED
+    }
+
+    /**
+     * What the sections of a synthetic chunk are filled with.
+     */
+    public enum SectionComposition {
+        /**
+         * Every section a single state, so every palette is a single value.
+         */
+        STONE,
+        /**
+         * Stone or deepslate with ore, dirt, gravel and stone variant blobs and air pockets.
+         */
+        UNDERGROUND,
+        /**
+         * Underground below the surface, grass, dirt, sand and water at the surface, air above.
+         */
+        SURFACE,
+        /**
+         * Uniformly random blocks from every rule's old block plus air, the worst case for palettes.
+         */
+        NOISE
+    }
+
+    public static List<Swapper.SwapEntry> rules(int ruleCount, FilterMix filterMix) {
+        List<Swapper.SwapEntry> rules = new ArrayList<>(ruleCount);
+        for (int i = 0; i < ruleCount; i++) {
+            BlockState oldState = OLD_BLOCKS[i % OLD_BLOCKS.length].defaultBlockState();
+            BlockState newState = NEW_BLOCKS[i % NEW_BLOCKS.length].defaultBlockState();
+            FilterMix filter = filterMix == FilterMix.MIXED ? FilterMix.values()[i % 3] : filterMix;
+            boolean yRange = filterMix == FilterMix.MIXED && i % 4 == 3 || i >= OLD_BLOCKS.length;
+            Swapper.CoreSwapEntry core = new Swapper.CoreSwapEntry(
+                    oldState,
+                    newState,
+                    true,
+                    List.of(PlacementCause.values()),
+                    yRange ? -32 + 8 * (i % 8) : Integer.MIN_VALUE,
+                    yRange ? 32 + 8 * (i % 8) : Integer.MAX_VALUE,
+                    yRange ? 0.5F : 1.0F,
+                    yRange ? 8 : 0,
+                    yRange ? 8 : 0,
+                    false
+            );
+            rules.add(new Swapper.SwapEntry(core, filter(filter), false, false));
+        }
+        return rules;
+    }
+
+    private static Swapper.FilterEntry filter(FilterMix filterMix) {
+        return switch (filterMix) {
+            case NONE, MIXED -> new Swapper.FilterEntry(List.of(), List.of(), List.of(), List.of(), List.of(), List.of());
+            case DIMENSION -> new Swapper.FilterEntry(List.of("minecraft:overworld"), List.of(), List.of(), List.of(), List.of(), List.of());
+            case BIOME -> new Swapper.FilterEntry(List.of(), List.of(), List.of("minecraft:plains", "minecraft:desert"), List.of(), List.of(), List.of());
+        };
+    }
+
+    public static BlockSwapConfig config(List<Swapper.SwapEntry> rules) {
+        return new BlockSwapConfig(rules, true, false, false, false, -1, 0, -1);
+    }
+
+    /**
+     * @return the rules of the loaded config that take part in {@code phase} in {@code level}, indexed by rule id
+     */
+    public static boolean[] activeRules(SwapTable table, Level level, SwapPhase phase) {
+        return Swapper.activeRules(table, level, phase);
+    }
+
+    public static void fill(LevelChunk chunk, SectionComposition composition) {
+        Random random = new Random(SEED ^ chunk.getPos().toLong());
+        LevelChunkSection[] sections = chunk.getSections();
+        int surfaceSection = sections.length * 2 / 3;
+        for (int i = 0; i < sections.length; i++) {
+            LevelChunkSection section = sections[i];
+            int sectionY = chunk.getSectionYFromSectionIndex(i);
+            for (int x = 0; x < 16; x++) {
+                for (int y = 0; y < 16; y++) {
+                    for (int z = 0; z < 16; z++) {
+                        BlockState state = switch (composition) {
+                            case STONE -> Blocks.STONE.defaultBlockState();
+                            case UNDERGROUND -> underground(random, sectionY);
+                            case SURFACE -> i < surfaceSection ? underground(random, sectionY)
+                                    : i == surfaceSection ? surface(random, y) : Blocks.AIR.defaultBlockState();
+                            case NOISE -> random.nextInt(OLD_BLOCKS.length + 1) == 0
+                                    ? Blocks.AIR.defaultBlockState()
+                                    : OLD_BLOCKS[random.nextInt(OLD_BLOCKS.length)].defaultBlockState();
+                        };
+                        section.setBlockState(x, y, z, state, false);
+                    }
+                }
+            }
+        }
+    }
+
+    private static BlockState underground(Random random, int sectionY) {
+        int roll = random.nextInt(100);
+        Block base = sectionY < 0 ? Blocks.DEEPSLATE : Blocks.STONE;
+        if (roll < 80) {
+            return base.defaultBlockState();
+        }
+        if (roll < 86) {
+            return Blocks.AIR.defaultBlockState();
+        }
+        if (roll < 95) {
+            Block[] variants = {Blocks.GRANITE, Blocks.DIORITE, Blocks.ANDESITE, Blocks.TUFF, Blocks.GRAVEL, Blocks.DIRT};
+            return variants[random.nextInt(variants.length)].defaultBlockState();
+        }
+        Block[] ores = sectionY < 0
+                ? new Block[]{Blocks.DEEPSLATE_IRON_ORE, Blocks.DEEPSLATE_COPPER_ORE, Blocks.DEEPSLATE_REDSTONE_ORE}
+                : new Block[]{Blocks.COAL_ORE, Blocks.IRON_ORE, Blocks.COPPER_ORE};
+        return ores[random.nextInt(ores.length)].defaultBlockState();
+    }
+
+    private static BlockState surface(Random random, int y) {
+        if (y < 12) {
+            return random.nextInt(4) == 0 ? Blocks.GRAVEL.defaultBlockState() : Blocks.DIRT.defaultBlockState();
+        }
+        if (y == 12) {
+            int roll = random.nextInt(10);
+            return roll < 7 ? Blocks.GRASS_BLOCK.defaultBlockState() : roll < 9 ? Blocks.SAND.defaultBlockState() : Blocks.WATER.defaultBlockState();
+        }
+        return Blocks.AIR.defaultBlockState();
+    }
+}
@@ -0,0 +1,75 @@
+package potionseeker.block_swap_advanced.benchmark;
+
+import potionseeker.block_swap_advanced.converter.OfflineRegistries;
+import potionseeker.block_swap_advanced.converter.SyntheticLevel;
+import potionseeker.block_swap_advanced.swapper.ChunkScanner;
+import potionseeker.block_swap_advanced.swapper.ChunkSnapshot;
+import potionseeker.block_swap_advanced.swapper.SwapBatch;
+import potionseeker.block_swap_advanced.swapper.SwapPhase;
+import potionseeker.block_swap_advanced.swapper.SwapTable;
+import potionseeker.block_swap_advanced.swapper.Swapper;
+
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.LevelChunk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-chunk cost of a retro-gen pass: the snapshot taken on the server thread and the scan that runs on a worker.
+ * Applying the batch needs a server level and is not covered here; {@code swapExistingChunk} does nothing else
+ * that depends on the chunk's contents.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChunkScanBenchmark {
+    @Param({"1", "16", "128"})
+    public int ruleCount;
+
+    @Param({"NONE", "BIOME", "MIXED"})
+    public BenchmarkWorkload.FilterMix filterMix;
+
+    @Param({"STONE", "UNDERGROUND", "SURFACE", "NOISE"})
+    public BenchmarkWorkload.SectionComposition composition;
+
+    private SyntheticLevel level;
+    private LevelChunk chunk;
+    private SwapTable table;
+    private boolean[] activeRules;
+    private ChunkSnapshot snapshot;
+
+    @Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void setUp() {
+        level = new SyntheticLevel(OfflineRegistries.registryAccess());
+        Swapper.updateConfig(BenchmarkWorkload.config(BenchmarkWorkload.rules(ruleCount, filterMix)));
+        // Chunk 2 straddles the plains and forest biome bands
+        chunk = level.createChunk(new ChunkPos(2, 0));
+        BenchmarkWorkload.fill(chunk, composition);
+        table = Swapper.table(SwapPhase.RETRO);
+        activeRules = BenchmarkWorkload.activeRules(table, level, SwapPhase.RETRO);
+        snapshot = capture();
+    }
+
+    @Benchmark
+    public ChunkSnapshot capture() {
+        return ChunkSnapshot.capture(chunk, level, BenchmarkWorkload.SEED, table, activeRules, false, SwapPhase.RETRO);
+    }
+
+    @Benchmark
+    public SwapBatch scan() {
+        return ChunkScanner.scan(snapshot);
+    }
+
+    @Benchmark
+    public SwapBatch captureAndScan() {
+        return ChunkScanner.scan(capture());
+    }
+}
@@ -0,0 +1,86 @@
+package potionseeker.block_swap_advanced.benchmark;
+
+import potionseeker.block_swap_advanced.config.BlockSwapConfig;
+import potionseeker.block_swap_advanced.converter.OfflineRegistries;
+import potionseeker.block_swap_advanced.serialization.JanksonJsonOps;
+import potionseeker.block_swap_advanced.serialization.JanksonUtil;
+import potionseeker.block_swap_advanced.swapper.Swapper;
+
+import com.mojang.serialization.DataResult;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Config lookups and parsing. {@link #contains} is the linear rule walk of {@code BlockSwapConfig.contains},
+ * {@link #swapCandidate} the compiled table check the hooks use instead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConfigBenchmark {
+    @Param({"1", "16", "128"})
+    public int ruleCount;
+
+    private BlockSwapConfig config;
+    private BlockState[] states;
+    private Path configFile;
+    private int cursor;
+
+    @Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void setUp() throws IOException {
+        OfflineRegistries.registryAccess();
+        config = BenchmarkWorkload.config(BenchmarkWorkload.rules(ruleCount, BenchmarkWorkload.FilterMix.MIXED));
+        Swapper.updateConfig(config);
+
+        // Every registered state, so most lookups miss like they do in the hooks
+        states = new BlockState[Block.BLOCK_STATE_REGISTRY.size()];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = Block.BLOCK_STATE_REGISTRY.byId(i);
+        }
+
+        configFile = Files.createTempFile("block_swap", ".json5");
+        JanksonUtil.createConfig(configFile, BlockSwapConfig.CODEC, BlockSwapConfig.CONFIG_HEADER, new Object2ObjectOpenHashMap<>(), JanksonJsonOps.INSTANCE, config);
+    }
+
+    @TearDown(org.openjdk.jmh.annotations.Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(configFile);
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return config.contains(nextState());
+    }
+
+    @Benchmark
+    public boolean swapCandidate() {
+        return Swapper.isSwapCandidate(nextState());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public DataResult<BlockSwapConfig> parse() {
+        return JanksonUtil.readConfigWithResult(configFile, BlockSwapConfig.CODEC, JanksonJsonOps.INSTANCE);
+    }
+
+    private BlockState nextState() {
+        BlockState state = states[cursor];
+        cursor = cursor + 1 == states.length ? 0 : cursor + 1;
+        return state;
+    }
+}
@@ -0,0 +1,215 @@
+package potionseeker.block_swap_advanced.benchmark;
+
+import potionseeker.block_swap_advanced.config.BlockSwapConfig;
+import potionseeker.block_swap_advanced.config.MissingBlockIDsConfig;
+import potionseeker.block_swap_advanced.converter.OfflineRegistries;
+import potionseeker.block_swap_advanced.converter.ReplayLevel;
+import potionseeker.block_swap_advanced.converter.SavedStructures;
+import potionseeker.block_swap_advanced.region.RegionFileReader;
+import potionseeker.block_swap_advanced.serialization.JanksonJsonOps;
+import potionseeker.block_swap_advanced.serialization.JanksonUtil;
+import potionseeker.block_swap_advanced.swapper.ChunkScanner;
+import potionseeker.block_swap_advanced.swapper.ChunkSnapshot;
+import potionseeker.block_swap_advanced.swapper.StructureLookup;
+import potionseeker.block_swap_advanced.swapper.SwapBatch;
+import potionseeker.block_swap_advanced.swapper.SwapPhase;
+import potionseeker.block_swap_advanced.swapper.SwapTable;
+import potionseeker.block_swap_advanced.swapper.Swapper;
+
+import com.mojang.serialization.DataResult;
+import net.minecraft.core.Holder;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.biome.BiomeManager;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.dimension.DimensionType;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Replays the region files of a saved world through the retro-gen engine, offline and without writing to the world.
+ * Every generated chunk goes through the same snapshot and scan {@code Swapper.swapExistingChunk} hands to the scan
+ * executor, with the world's real palettes, biomes and structure starts; only applying the batch is left out, since
+ * that needs a server level. Processed-chunk tracking and {@code chunk_swap_range} are ignored, so every chunk is
+ * scanned as if redo_gen were on.
+ * <p>
+ * Usage: {@code ./gradlew :Benchmarks:replayRegions -Pworld=<world dir> [-Pdimension=minecraft:the_nether]
+ * [-PswapConfig=<block_swap.json5>] [-Ppasses=3] [-Plimit=<chunks>]}. The config defaults to the world's own
+ * {@code serverconfig/block_swap.json5}. Later passes run with a warm JIT, so the last one is the steady state.
+ */
+public final class RegionReplay {
+    private static final int CACHED_CHUNKS = 4096;
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private RegionReplay() {}
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = options(args);
+        if (!options.containsKey("world")) {
+            System.err.println("Usage: RegionReplay --world <world dir> [--dimension <id>] [--config <block_swap.json5>] [--passes <n>] [--limit <chunks>]");
+            System.exit(2);
+        }
+        Path world = Paths.get(options.get("world"));
+        ResourceKey<Level> dimension = ResourceKey.create(Registries.DIMENSION, new ResourceLocation(options.getOrDefault("dimension", "minecraft:overworld")));
+        Path configPath = options.containsKey("config") ? Paths.get(options.get("config")) : world.resolve("serverconfig").resolve("block_swap.json5");
+        int passes = Integer.parseInt(options.getOrDefault("passes", "3"));
+        int limit = Integer.parseInt(options.getOrDefault("limit", Integer.toString(Integer.MAX_VALUE)));
+
+        RegistryAccess registryAccess = OfflineRegistries.registryAccess();
+        CompoundTag worldGenSettings = NbtIo.readCompressed(world.resolve("level.dat").toFile()).getCompound("Data").getCompound("WorldGenSettings");
+        long seed = worldGenSettings.getLong("seed");
+        Holder<DimensionType> dimensionType = OfflineRegistries.dimensionType(worldGenSettings, dimension);
+
+        DataResult<BlockSwapConfig> config = JanksonUtil.readConfigWithResult(configPath, BlockSwapConfig.CODEC, JanksonJsonOps.INSTANCE);
+        if (config.result().isEmpty()) {
+            System.err.println("Could not read " + configPath + ": " + config.error().map(DataResult.PartialResult::message).orElse("unknown error"));
+            System.exit(1);
+        }
+        Swapper.updateConfig(config.result().get());
+
+        Path regionDir = DimensionType.getStorageFolder(dimension, world).resolve("region");
+        List<Path> regionFiles;
+        try (Stream<Path> files = Files.list(regionDir)) {
+            regionFiles = files.filter(RegionFileReader::isRegionFile).sorted().toList();
+        }
+        System.out.printf(Locale.ROOT, "Replaying %d region files from %s with %d rules from %s%n",
+                regionFiles.size(), regionDir, config.result().get().swapEntries().size(), configPath);
+
+        MissingBlockIDsConfig missingBlockIds = MissingBlockIDsConfig.read(world.resolve("serverconfig").resolve("missing_block_ids.json5"));
+        try (ReplayLevel level = new ReplayLevel(registryAccess, dimension, dimensionType, BiomeManager.obfuscateSeed(seed), regionDir, missingBlockIds, CACHED_CHUNKS)) {
+            SwapTable table = Swapper.table(SwapPhase.RETRO);
+            boolean[] activeRules = BenchmarkWorkload.activeRules(table, level, SwapPhase.RETRO);
+            for (int pass = 1; pass <= passes; pass++) {
+                Totals totals = replay(level, regionFiles, seed, table, activeRules, limit);
+                System.out.printf(Locale.ROOT, "Pass %d/%d%n", pass, passes);
+                totals.print(table);
+            }
+            if (level.failedChunks() > 0) {
+                System.out.printf(Locale.ROOT, "%d chunks could not be read and were skipped%n", level.failedChunks());
+            }
+        }
+    }
+
+    private static Totals replay(ReplayLevel level, List<Path> regionFiles, long seed, SwapTable table, boolean[] activeRules, int limit) throws IOException {
+        Totals totals = new Totals(table.ruleCount());
+        for (Path regionFile : regionFiles) {
+            try (RegionFileReader region = RegionFileReader.open(regionFile)) {
+                for (int index = 0; index < RegionFileReader.CHUNKS_PER_REGION && totals.chunks < limit; index++) {
+                    if (!region.hasChunk(index)) {
+                        continue;
+                    }
+                    ChunkPos pos = region.chunkPos(index);
+                    LevelChunk chunk = level.load(pos.x, pos.z).chunk();
+                    if (chunk == null) {
+                        continue;
+                    }
+                    // Decoding the chunk, its neighbours and the structure starts it references is not part of the
+                    // engine's work, so it happens before the clock starts
+                    for (int dx = -1; dx <= 1; dx++) {
+                        for (int dz = -1; dz <= 1; dz++) {
+                            level.load(pos.x + dx, pos.z + dz);
+                        }
+                    }
+                    StructureLookup structures = SavedStructures.resolve(level, level.load(pos.x, pos.z));
+
+                    long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+                    long start = System.nanoTime();
+                    ChunkSnapshot snapshot = ChunkSnapshot.capture(chunk, level, seed, structures, table, activeRules, false, SwapPhase.RETRO);
+                    SwapBatch batch = snapshot.isEmpty() ? null : ChunkScanner.scan(snapshot);
+                    long nanos = System.nanoTime() - start;
+                    totals.allocatedBytes += THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+                    totals.record(nanos, batch);
+                }
+            }
+            if (totals.chunks >= limit) {
+                break;
+            }
+        }
+        return totals;
+    }
+
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected an option, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    private static final class Totals {
+        long chunks;
+        long emptyChunks;
+        long blocksEvaluated;
+        long swaps;
+        long nanos;
+        long allocatedBytes;
+        final long[] ruleHits;
+        long[] chunkNanos = new long[1024];
+
+        Totals(int ruleCount) {
+            this.ruleHits = new long[ruleCount];
+        }
+
+        void record(long scanNanos, SwapBatch batch) {
+            if (chunks == chunkNanos.length) {
+                chunkNanos = Arrays.copyOf(chunkNanos, chunkNanos.length * 2);
+            }
+            chunkNanos[(int) chunks] = scanNanos;
+            chunks++;
+            nanos += scanNanos;
+            if (batch == null) {
+                emptyChunks++;
+                return;
+            }
+            blocksEvaluated += batch.blocksEvaluated();
+            swaps += batch.size();
+            for (int i = 0; i < batch.size(); i++) {
+                ruleHits[batch.ruleId(i)]++;
+            }
+        }
+
+        void print(SwapTable table) {
+            long[] sorted = Arrays.copyOf(chunkNanos, (int) chunks);
+            Arrays.sort(sorted);
+            double seconds = nanos / 1.0E9;
+            System.out.printf(Locale.ROOT, "  %d chunks (%d with nothing to scan), %.1f chunks/s, %.1f µs/chunk, p50 %.1f µs, p99 %.1f µs%n",
+                    chunks, emptyChunks, chunks / seconds, nanos / 1.0E3 / Math.max(1, chunks),
+                    percentile(sorted, 0.5) / 1.0E3, percentile(sorted, 0.99) / 1.0E3);
+            System.out.printf(Locale.ROOT, "  %d blocks evaluated, %d swaps, %.1f MB allocated (%.1f KB/chunk, %.1f MB/s)%n",
+                    blocksEvaluated, swaps, allocatedBytes / 1.0E6, allocatedBytes / 1.0E3 / Math.max(1, chunks), allocatedBytes / 1.0E6 / seconds);
+            for (int ruleId = 0; ruleId < ruleHits.length; ruleId++) {
+                Swapper.SwapEntry rule = table.rule(ruleId);
+                System.out.printf(Locale.ROOT, "  Rule #%d (%s -> %s): %d swaps%n", ruleId,
+                        BuiltInRegistries.BLOCK.getKey(rule.oldState().getBlock()), BuiltInRegistries.BLOCK.getKey(rule.newState().getBlock()), ruleHits[ruleId]);
+            }
+        }
+
+        private static long percentile(long[] sorted, double quantile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+    }
+}
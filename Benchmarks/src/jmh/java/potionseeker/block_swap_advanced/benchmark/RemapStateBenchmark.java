@@ -0,0 +1,97 @@
+package potionseeker.block_swap_advanced.benchmark;
+
+import potionseeker.block_swap_advanced.converter.OfflineRegistries;
+import potionseeker.block_swap_advanced.converter.SyntheticLevel;
+import potionseeker.block_swap_advanced.swapper.Swapper;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-block cost of world generation swaps. {@link #generationHook} does what {@code MixinWorldGenRegion} does for
+ * every block set during generation, {@link #remapCandidate} only the part after the candidate check.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RemapStateBenchmark {
+    private static final int BLOCKS = 1 << 16;
+
+    @Param({"1", "16", "128"})
+    public int ruleCount;
+
+    @Param({"NONE", "DIMENSION", "BIOME", "MIXED"})
+    public BenchmarkWorkload.FilterMix filterMix;
+
+    @Param({"UNDERGROUND", "SURFACE"})
+    public BenchmarkWorkload.SectionComposition composition;
+
+    private SyntheticLevel level;
+    private BlockState[] states;
+    private BlockState[] candidateStates;
+    private BlockPos[] positions;
+    private BlockPos[] candidatePositions;
+    private int cursor;
+
+    @Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void setUp() {
+        level = new SyntheticLevel(OfflineRegistries.registryAccess());
+        Swapper.updateConfig(BenchmarkWorkload.config(BenchmarkWorkload.rules(ruleCount, filterMix)));
+
+        // Blocks are taken from a strip of synthetic chunks so positions cross biome bands and Y ranges
+        List<BlockState> allStates = new ArrayList<>();
+        List<BlockPos> allPositions = new ArrayList<>();
+        List<BlockState> candidates = new ArrayList<>();
+        List<BlockPos> candidatePos = new ArrayList<>();
+        for (int chunkX = 0; allStates.size() < BLOCKS; chunkX++) {
+            LevelChunk chunk = level.createChunk(new ChunkPos(chunkX, 0));
+            BenchmarkWorkload.fill(chunk, composition);
+            for (int i = 0; i < 4096 && allStates.size() < BLOCKS; i++) {
+                BlockPos pos = new BlockPos(chunk.getPos().getMinBlockX() + (i & 15), level.getMinBuildHeight() + i * 7 % level.getHeight(), chunk.getPos().getMinBlockZ() + (i >> 4 & 15));
+                BlockState state = chunk.getBlockState(pos);
+                allStates.add(state);
+                allPositions.add(pos);
+                if (Swapper.isSwapCandidate(state)) {
+                    candidates.add(state);
+                    candidatePos.add(pos);
+                }
+            }
+        }
+        states = allStates.toArray(new BlockState[0]);
+        positions = allPositions.toArray(new BlockPos[0]);
+        // Repeat the candidates up to the full length so the index mask works for both arrays
+        candidateStates = new BlockState[BLOCKS];
+        candidatePositions = new BlockPos[BLOCKS];
+        for (int i = 0; i < BLOCKS; i++) {
+            candidateStates[i] = candidates.isEmpty() ? states[i] : candidates.get(i % candidates.size());
+            candidatePositions[i] = candidates.isEmpty() ? positions[i] : candidatePos.get(i % candidatePos.size());
+        }
+    }
+
+    @Benchmark
+    public BlockState generationHook() {
+        int i = cursor++ & BLOCKS - 1;
+        BlockState state = states[i];
+        return Swapper.isSwapCandidate(state) ? Swapper.remapState(state, level, positions[i], false) : state;
+    }
+
+    @Benchmark
+    public BlockState remapCandidate() {
+        int i = cursor++ & BLOCKS - 1;
+        return Swapper.remapState(candidateStates[i], level, candidatePositions[i], false);
+    }
+}
@@ -0,0 +1,182 @@
+package potionseeker.block_swap_advanced.benchmark.pregen;
+
+import potionseeker.block_swap_advanced.BlockSwap;
+import potionseeker.block_swap_advanced.config.BlockSwapConfig;
+import potionseeker.block_swap_advanced.metrics.SwapMetrics;
+import potionseeker.block_swap_advanced.swapper.ChunkScanExecutor;
+import potionseeker.block_swap_advanced.swapper.RetroGenScheduler;
+import potionseeker.block_swap_advanced.swapper.SwapPhase;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerChunkCache;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.TicketType;
+import net.minecraft.world.level.ChunkPos;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Headless pre-generation benchmark, enabled with {@code -Dblock_swap_advanced.pregen_benchmark.size=N}. Once the
+ * server runs it generates an N×N chunk area of the overworld, away from the spawn chunks, through region tickets,
+ * records every server tick meanwhile, then reports ms/chunk, swaps and MSPT percentiles and stops the server.
+ * {@code -Dblock_swap_advanced.pregen_benchmark.hooks=false} applies the baseline mixins, which turn the mod's world
+ * generation and post-processing work off; see {@link PregenMixinPlugin}. Only the {@code runPregenBenchmark} run of
+ * the Fabric build has this class, its mixins included, on the classpath.
+ */
+public final class PregenBenchmark {
+    private static final String PROPERTY_PREFIX = BlockSwap.MOD_ID + ".pregen_benchmark.";
+    private static final int SIZE = Integer.getInteger(PROPERTY_PREFIX + "size", 0);
+    private static final int CONCURRENCY = Math.max(1, Integer.getInteger(PROPERTY_PREFIX + "concurrency", 64));
+    // Chunks east of spawn, so the spawn area generated during startup doesn't count towards the run
+    private static final int OFFSET = Integer.getInteger(PROPERTY_PREFIX + "offset", 512);
+    private static final String REPORT_FILE = "pregen_benchmark.txt";
+    private static final TicketType<ChunkPos> TICKET = TicketType.create(BlockSwap.MOD_ID + ":pregen_benchmark", Comparator.comparingLong(ChunkPos::toLong));
+
+    public static final boolean ENABLED = SIZE > 0;
+
+    private static long tickStart;
+    private static Run run;
+    private static boolean finished;
+
+    private PregenBenchmark() {}
+
+    /**
+     * Called at the start of every server tick.
+     */
+    public static void tickStarted() {
+        if (ENABLED) {
+            tickStart = System.nanoTime();
+        }
+    }
+
+    /**
+     * Called at the end of every server tick. Starts the run on the first tick, then advances it.
+     */
+    public static void tickFinished(MinecraftServer server) {
+        if (!ENABLED || finished) {
+            return;
+        }
+        long tickNanos = System.nanoTime() - tickStart;
+        if (run == null) {
+            run = new Run(server.overworld());
+            return;
+        }
+        run.tickNanos.add(tickNanos);
+        if (run.tick()) {
+            finished = true;
+            run.report(server);
+            run = null;
+            server.halt(false);
+        }
+    }
+
+    private static final class Run {
+        private final ServerLevel level;
+        private final ChunkPos origin;
+        private final int total;
+        private final Long2LongOpenHashMap pending = new Long2LongOpenHashMap();
+        private final LongArrayList tickNanos = new LongArrayList();
+        private final LongArrayList chunkNanos = new LongArrayList();
+        private final long start;
+        private int next;
+
+        Run(ServerLevel level) {
+            this.level = level;
+            ChunkPos spawn = new ChunkPos(level.getSharedSpawnPos());
+            this.origin = new ChunkPos(spawn.x + OFFSET, spawn.z - SIZE / 2);
+            this.total = SIZE * SIZE;
+            SwapMetrics.reset();
+            BlockSwap.LOGGER.info("Pre-generation benchmark: {}x{} chunks from {}, {} in flight, world generation hooks {}",
+                    SIZE, SIZE, origin, CONCURRENCY, PregenMixinPlugin.HOOKS ? "on" : "off");
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * @return true once every chunk is generated, post-processed and through retro-gen
+         */
+        boolean tick() {
+            ServerChunkCache chunkSource = level.getChunkSource();
+            long now = System.nanoTime();
+            for (ObjectIterator<Long2LongMap.Entry> iterator = pending.long2LongEntrySet().fastIterator(); iterator.hasNext(); ) {
+                Long2LongMap.Entry entry = iterator.next();
+                long pos = entry.getLongKey();
+                ChunkPos chunkPos = new ChunkPos(pos);
+                // Ticking means postProcessGeneration ran; keep the chunk loaded until retro-gen is done with it
+                if (chunkSource.isPositionTicking(pos) && !RetroGenScheduler.isQueued(level, chunkPos) && !ChunkScanExecutor.isInFlight(level, chunkPos)) {
+                    chunkNanos.add(now - entry.getLongValue());
+                    chunkSource.removeRegionTicket(TICKET, chunkPos, 1, chunkPos);
+                    iterator.remove();
+                }
+            }
+
+            while (pending.size() < CONCURRENCY && next < total) {
+                ChunkPos chunkPos = new ChunkPos(origin.x + next % SIZE, origin.z + next / SIZE);
+                // Distance 1 makes the chunk block ticking, which is when postProcessGeneration runs
+                chunkSource.addRegionTicket(TICKET, chunkPos, 1, chunkPos);
+                pending.put(chunkPos.toLong(), now);
+                next++;
+            }
+            return next == total && pending.isEmpty();
+        }
+
+        void report(MinecraftServer server) {
+            long wallNanos = System.nanoTime() - start;
+            long[] ticks = tickNanos.toLongArray();
+            long[] chunks = chunkNanos.toLongArray();
+            Arrays.sort(ticks);
+            Arrays.sort(chunks);
+
+            List<String> lines = new ArrayList<>();
+            lines.add(String.format(Locale.ROOT, "Pre-generation benchmark %s: %dx%d chunks, seed %d, %d swap rules, world generation hooks %s",
+                    Instant.now(), SIZE, SIZE, level.getSeed(), BlockSwapConfig.getConfig(false).swapEntries().size(), PregenMixinPlugin.HOOKS ? "on" : "off"));
+            lines.add(String.format(Locale.ROOT, "Wall time: %.1f s, %.3f ms/chunk, %.1f chunks/s",
+                    wallNanos / 1.0E9, wallNanos / 1.0E6 / total, total / (wallNanos / 1.0E9)));
+            lines.add(String.format(Locale.ROOT, "Chunk latency: p50 %.1f ms, p99 %.1f ms, max %.1f ms",
+                    percentile(chunks, 0.5) / 1.0E6, percentile(chunks, 0.99) / 1.0E6, percentile(chunks, 1.0) / 1.0E6));
+            lines.add(String.format(Locale.ROOT, "MSPT over %d ticks: p50 %.2f, p95 %.2f, p99 %.2f, max %.2f",
+                    ticks.length, percentile(ticks, 0.5) / 1.0E6, percentile(ticks, 0.95) / 1.0E6, percentile(ticks, 0.99) / 1.0E6, percentile(ticks, 1.0) / 1.0E6));
+            long totalSwaps = 0;
+            StringBuilder swaps = new StringBuilder();
+            for (SwapPhase phase : SwapPhase.values()) {
+                long phaseSwaps = SwapMetrics.swapsApplied(phase);
+                totalSwaps += phaseSwaps;
+                swaps.append(", ").append(phase.description()).append(' ').append(phaseSwaps);
+            }
+            lines.add("Swaps: " + totalSwaps + " total" + swaps);
+
+            for (String line : lines) {
+                BlockSwap.LOGGER.info(line);
+            }
+            Path reportPath = server.getServerDirectory().toPath().resolve(REPORT_FILE);
+            try {
+                lines.add("");
+                Files.write(reportPath, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                BlockSwap.LOGGER.info("Appended pre-generation benchmark results to {}", reportPath);
+            } catch (IOException e) {
+                BlockSwap.LOGGER.error("Failed to write pre-generation benchmark results to {}: {}", reportPath, e.getMessage());
+            }
+        }
+
+        private static long percentile(long[] sorted, double quantile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+    }
+}
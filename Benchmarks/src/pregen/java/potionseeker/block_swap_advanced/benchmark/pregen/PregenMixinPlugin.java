@@ -0,0 +1,44 @@
+package potionseeker.block_swap_advanced.benchmark.pregen;
+
+import org.objectweb.asm.tree.ClassNode;
+import org.spongepowered.asm.mixin.extensibility.IMixinConfigPlugin;
+import org.spongepowered.asm.mixin.extensibility.IMixinInfo;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Applies the {@code *Baseline} mixins, which turn the mod's world generation and post-processing work off, only
+ * when the benchmark runs with {@code -Dblock_swap_advanced.pregen_benchmark.hooks=false}.
+ */
+public final class PregenMixinPlugin implements IMixinConfigPlugin {
+    // Read here rather than from PregenBenchmark, whose static initializer registers a ticket type
+    static final boolean HOOKS = !"false".equalsIgnoreCase(System.getProperty("block_swap_advanced.pregen_benchmark.hooks"));
+
+    @Override
+    public void onLoad(String mixinPackage) {}
+
+    @Override
+    public String getRefMapperConfig() {
+        return null;
+    }
+
+    @Override
+    public boolean shouldApplyMixin(String targetClassName, String mixinClassName) {
+        return !mixinClassName.endsWith("Baseline") || !HOOKS;
+    }
+
+    @Override
+    public void acceptTargets(Set<String> myTargets, Set<String> otherTargets) {}
+
+    @Override
+    public List<String> getMixins() {
+        return null;
+    }
+
+    @Override
+    public void preApply(String targetClassName, ClassNode targetClass, String mixinClassName, IMixinInfo mixinInfo) {}
+
+    @Override
+    public void postApply(String targetClassName, ClassNode targetClass, String mixinClassName, IMixinInfo mixinInfo) {}
+}
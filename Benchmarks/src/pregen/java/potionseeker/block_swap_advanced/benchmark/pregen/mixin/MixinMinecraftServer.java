@@ -0,0 +1,24 @@
+package potionseeker.block_swap_advanced.benchmark.pregen.mixin;
+
+import potionseeker.block_swap_advanced.benchmark.pregen.PregenBenchmark;
+import net.minecraft.server.MinecraftServer;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import java.util.function.BooleanSupplier;
+
+@Mixin(MinecraftServer.class)
+public abstract class MixinMinecraftServer {
+
+    @Inject(method = "tickServer", at = @At("HEAD"))
+    private void blockSwapPregen_startTick(BooleanSupplier hasTimeLeft, CallbackInfo ci) {
+        PregenBenchmark.tickStarted();
+    }
+
+    @Inject(method = "tickServer", at = @At("TAIL"))
+    private void blockSwapPregen_finishTick(BooleanSupplier hasTimeLeft, CallbackInfo ci) {
+        PregenBenchmark.tickFinished((MinecraftServer) (Object) this);
+    }
+}
@@ -0,0 +1,21 @@
+package potionseeker.block_swap_advanced.benchmark.pregen.mixin;
+
+import potionseeker.block_swap_advanced.swapper.RetroGenScheduler;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.chunk.LevelChunk;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * Baseline only: post-processed chunks are never queued for retro_gen or redo_gen.
+ */
+@Mixin(value = RetroGenScheduler.class, remap = false)
+public abstract class MixinRetroGenSchedulerBaseline {
+
+    @Inject(method = "enqueue", at = @At("HEAD"), cancellable = true)
+    private static void blockSwapPregen_noRetroGen(ServerLevel level, LevelChunk chunk, CallbackInfo ci) {
+        ci.cancel();
+    }
+}
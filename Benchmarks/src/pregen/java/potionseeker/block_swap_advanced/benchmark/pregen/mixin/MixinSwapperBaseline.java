@@ -0,0 +1,27 @@
+package potionseeker.block_swap_advanced.benchmark.pregen.mixin;
+
+import potionseeker.block_swap_advanced.swapper.Swapper;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+/**
+ * Baseline only: no block is swapped while it is generated and no deferred swaps run after post-processing.
+ */
+@Mixin(value = Swapper.class, remap = false)
+public abstract class MixinSwapperBaseline {
+
+    @Inject(method = "isSwapCandidate", at = @At("HEAD"), cancellable = true)
+    private static void blockSwapPregen_noCandidates(BlockState state, CallbackInfoReturnable<Boolean> cir) {
+        cir.setReturnValue(false);
+    }
+
+    @Inject(method = "runDeferredSwaps", at = @At("HEAD"), cancellable = true)
+    private static void blockSwapPregen_noDeferredSwaps(LevelChunk chunk, CallbackInfo ci) {
+        ci.cancel();
+    }
+}
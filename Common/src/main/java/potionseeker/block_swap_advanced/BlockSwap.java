@@ -5,7 +5,6 @@ import potionseeker.block_swap_advanced.config.MissingBlockIDsConfig;
 import potionseeker.block_swap_advanced.serialization.JanksonJsonOps;
 import potionseeker.block_swap_advanced.serialization.JanksonUtil;
 import potionseeker.block_swap_advanced.swapper.Swapper;
-import net.minecraft.server.level.ServerLevel;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -51,6 +50,15 @@ public class BlockSwap {
          - Editing Configs:
            - Place a customized 'block_swap.json5' or 'missing_block_ids.json5' in 'defaultconfigs' to apply to all newly created worlds.
            - Modify 'world/serverconfig/block_swap.json5' to change rules for an existing world.
+         
+         - Commands (operators only):
+           - /blockswap stats: Chunks scanned, sections skipped, blocks evaluated, swaps per phase and per rule, and swap latency.
+           - /blockswap stats reset: Clears the stats.
+           - /blockswap stats dump: Writes the stats in OpenMetrics format to 'world/block_swap_metrics.txt'.
+           - /blockswap estimate [file]: How many blocks each rule of a config in 'config/block_swap_advanced/' (default: block_swap.json5) would swap in the current dimension, from the block census of its saved chunks. The numbers are upper bounds: biome and structure filters are not applied.
+           - /blockswap process <dimension> <radius|all> [concurrency]: Runs retro_gen over every saved chunk of a dimension within a square radius in chunks around you, or over all of them, without waiting for players to visit. At most 'concurrency' chunks (default: 8) load at once, fewer as MSPT approaches 50 ms and none while the server is over it. The job resumes where it left off after a restart.
+           - /blockswap process <dimension> status: Shows the job's progress.
+           - /blockswap process <dimension> stop: Stops the job.
             
             Configuration Structure:
         
@@ -61,6 +69,8 @@ public class BlockSwap {
             - generate_block_info: If true, generates block info files for reference.
             - verbose_logging: If true, block swaps will be added to the latest.log.
             - chunk_swap_range: Limits swapping to chunks within this range from players (-1 for all loaded chunks, 0 to disable, >1 for chunk range).
+            - retro_gen_threads: Number of worker threads that scan chunks for retro_gen/redo_gen (-1 for automatic, 0 to scan on the server thread).
+            - retro_gen_tick_budget_ms: Milliseconds per tick spent on retro_gen/redo_gen chunks, nearest to players first. Shrinks automatically when the server is lagging (-1 for no limit).
         
              'core' Object (required for swaps):
              - old (BlockState, required): Block to replace. e.g., {"Name": "minecraft:cobblestone"}.
@@ -69,6 +79,7 @@ public class BlockSwap {
              
              'core' Object (optional, defaults to internal values):
              - replace_placement (bool, default: true): Swap on player/entity placement.
+             - placement_causes (list<string>, default: all): Placements replace_placement reacts to: "player" (block items), "dispenser", "structure" (structure blocks/commands), "physics" (falling blocks), "other" (fluids, redstone, growth, other mods).
              - min_y (int, default: min world height): Minimum Y for swaps. Don't use unless setting a value other than the min world height.
              - max_y (int, default: max world height): Maximum Y for swaps. Don't use unless setting a value other than the max world height.
              - block_swap_rand (float 0.0-1.0, default: 1.0): Swap probability (1.0 = always, 0.5 = 50%, 0.0 = never).
@@ -97,6 +108,7 @@ public class BlockSwap {
                         "old": {},
                         "new": {},
                         "replace_placement": true,
+                        "placement_causes": ["player", "dispenser", "structure", "physics", "other"],
                         "min_y": *,
                         "max_y": *,
                         "block_swap_rand": 1.0,
@@ -120,7 +132,9 @@ public class BlockSwap {
                   "redo_gen": false,
                   "generate_block_info": false,
                   "verbose_logging": false,
-                  "chunk_swap_range": -1
+                  "chunk_swap_range": -1,
+                  "retro_gen_threads": -1,
+                  "retro_gen_tick_budget_ms": 5
             }
 
          Examples:
@@ -287,8 +301,4 @@ public class BlockSwap {
             LOGGER.error("Failed to generate readme or example config at {}: {}", configDir, e.getMessage());
         }
     }
-
-    public static ProcessedChunksData getProcessedChunksData(ServerLevel level) {
-        return ProcessedChunksData.load(level);
-    }
 }
\ No newline at end of file
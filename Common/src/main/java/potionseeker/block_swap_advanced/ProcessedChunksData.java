@@ -1,5 +1,8 @@
 package potionseeker.block_swap_advanced;
 
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.LongTag;
@@ -10,52 +13,47 @@ import net.minecraft.world.level.saveddata.SavedData;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.HashSet;
-import java.util.Set;
-
+/**
+ * Which chunks retro_gen and redo_gen had processed before that state moved into chunk NBT, as saved by older versions
+ * in {@code data/block_swap_processed.dat}. Chunks saved without their own state fall back to it once, see
+ * {@link potionseeker.block_swap_advanced.swapper.ProcessedChunks}.
+ * <p>
+ * The processed state itself now lives in each chunk's NBT, so it is stored per region by the region files and only
+ * rewritten for chunks that are saved. This set only shrinks: a chunk is dropped from it once it has been saved with
+ * its own state. The file is rewritten once, when the last chunk is dropped, rather than on every autosave.
+ */
 public class ProcessedChunksData extends SavedData {
     private static final Logger LOGGER = LogManager.getLogger("BlockSwap");
     private static final String DATA_NAME = "block_swap_processed";
-    private final Set<ChunkPos> processedChunks = new HashSet<>();
-    private final Set<ChunkPos> processedThisSession = new HashSet<>();
-    private String configHash = "";
 
-    public static ProcessedChunksData load(ServerLevel level) {
-        return level.getDataStorage().computeIfAbsent(
-                ProcessedChunksData::load,
-                () -> new ProcessedChunksData(),
-                DATA_NAME
-        );
-    }
+    private final LongSet processedChunks = new LongOpenHashSet();
+    private String configHash = "";
 
-    public boolean isChunkProcessed(ChunkPos pos) {
-        return processedChunks.contains(pos);
-    }
+    private ProcessedChunksData() {}
 
-    public void markChunkProcessed(ChunkPos pos) {
-        if (processedChunks.add(pos)) {
-            LOGGER.debug("Marked chunk {} as processed", pos);
-            setDirty();
+    /**
+     * Cheap after the first call for a level, which keeps the data the data storage handed out for its lifetime.
+     */
+    public static ProcessedChunksData load(ServerLevel level) {
+        ProcessedChunksLevel processedLevel = (ProcessedChunksLevel) level;
+        ProcessedChunksData data = processedLevel.blockSwap_getProcessedChunks();
+        if (data == null) {
+            data = level.getDataStorage().computeIfAbsent(ProcessedChunksData::load, ProcessedChunksData::new, DATA_NAME);
+            processedLevel.blockSwap_setProcessedChunks(data);
         }
+        return data;
     }
 
-    public boolean wasProcessedThisSession(ChunkPos pos) {
-        return processedThisSession.contains(pos);
-    }
-
-    public void markProcessedThisSession(ChunkPos pos) {
-        if (processedThisSession.add(pos)) {
-            LOGGER.debug("Marked chunk {} as processed this session", pos);
-            setDirty();
-        }
+    public boolean isChunkProcessed(ChunkPos pos) {
+        return processedChunks.contains(pos.toLong());
     }
 
-    public void updateConfigHash(String newHash) {
-        if (!configHash.equals(newHash)) {
-            configHash = newHash;
-            processedChunks.clear();
-            processedThisSession.clear();
-            LOGGER.debug("Config hash updated to {}, cleared processed chunks", newHash);
+    /**
+     * Drops a chunk whose own NBT now records whether it was processed.
+     */
+    public void forget(ChunkPos pos) {
+        if (processedChunks.remove(pos.toLong()) && processedChunks.isEmpty()) {
+            LOGGER.info("Every chunk processed by an older version of Block Swap Advanced now carries its own processed state");
             setDirty();
         }
     }
@@ -68,10 +66,8 @@ public class ProcessedChunksData extends SavedData {
         ProcessedChunksData data = new ProcessedChunksData();
         ListTag chunkList = tag.getList("ProcessedChunks", Tag.TAG_LONG);
         for (int i = 0; i < chunkList.size(); i++) {
-            Tag element = chunkList.get(i);
-            if (element instanceof LongTag longTag) {
-                long pos = longTag.getAsLong();
-                data.processedChunks.add(new ChunkPos(pos));
+            if (chunkList.get(i) instanceof LongTag longTag) {
+                data.processedChunks.add(longTag.getAsLong());
             }
         }
         data.configHash = tag.getString("ConfigHash");
@@ -82,12 +78,11 @@ public class ProcessedChunksData extends SavedData {
     @Override
     public CompoundTag save(CompoundTag tag) {
         ListTag chunkList = new ListTag();
-        for (ChunkPos pos : processedChunks) {
-            chunkList.add(LongTag.valueOf(pos.toLong()));
+        for (LongIterator iterator = processedChunks.iterator(); iterator.hasNext(); ) {
+            chunkList.add(LongTag.valueOf(iterator.nextLong()));
         }
         tag.put("ProcessedChunks", chunkList);
         tag.putString("ConfigHash", configHash);
-        LOGGER.debug("Saving {} processed chunks with config hash {}", processedChunks.size(), configHash);
         return tag;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,14 @@
+package potionseeker.block_swap_advanced;
+
+import javax.annotation.Nullable;
+
+/**
+ * Holds a level's {@link ProcessedChunksData} once it has been looked up, added to {@code ServerLevel} by a mixin. Use
+ * {@link ProcessedChunksData#load} rather than calling these directly.
+ */
+public interface ProcessedChunksLevel {
+    @Nullable
+    ProcessedChunksData blockSwap_getProcessedChunks();
+
+    void blockSwap_setProcessedChunks(ProcessedChunksData processedChunks);
+}
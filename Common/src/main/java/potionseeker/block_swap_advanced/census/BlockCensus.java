@@ -0,0 +1,98 @@
+package potionseeker.block_swap_advanced.census;
+
+import potionseeker.block_swap_advanced.swapper.SwapProbabilities;
+import potionseeker.block_swap_advanced.swapper.SwapTable;
+
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+
+/**
+ * Which blocks a section may contain, as a 64-bit Bloom filter with two bits per block. Bits are derived from the
+ * block id rather than the registry index, so saved filters stay valid when the mod list changes. A filter can only
+ * answer "maybe" or "certainly not": sections are summarized from their palettes, which may still list states that
+ * are no longer present, and placements only ever add bits.
+ */
+public final class BlockCensus {
+    private BlockCensus() {}
+
+    public static long blockMask(Block block) {
+        return Masks.MASKS[BuiltInRegistries.BLOCK.getId(block)];
+    }
+
+    /**
+     * @return true if a section summarized as {@code sectionMask} may contain the block
+     */
+    public static boolean mayContain(long sectionMask, long blockMask) {
+        return (sectionMask & blockMask) == blockMask;
+    }
+
+    public static long sectionMask(LevelChunkSection section) {
+        if (section.hasOnlyAir()) {
+            return 0L;
+        }
+        long[] mask = new long[1];
+        // Linear and hashmap palettes list their states; the global palette doesn't, so its sections are counted
+        boolean unlisted = section.maybeHas(state -> {
+            mask[0] |= stateMask(state);
+            return false;
+        });
+        if (unlisted) {
+            section.getStates().count((state, count) -> mask[0] |= stateMask(state));
+        }
+        return mask[0];
+    }
+
+    public static long[] chunkMasks(LevelChunk chunk) {
+        LevelChunkSection[] sections = chunk.getSections();
+        long[] masks = new long[sections.length];
+        for (int i = 0; i < sections.length; i++) {
+            masks[i] = sectionMask(sections[i]);
+        }
+        return masks;
+    }
+
+    /**
+     * @param sectionMasks the census of a chunk, indexed from the bottom section
+     * @return true if a section of the chunk may hold a source block of an active rule within that rule's Y range
+     */
+    public static boolean mayMatch(long[] sectionMasks, SwapTable table, boolean[] activeRules, SwapProbabilities probabilities) {
+        for (int ruleId = 0; ruleId < activeRules.length; ruleId++) {
+            if (!activeRules[ruleId]) {
+                continue;
+            }
+            long blockMask = blockMask(table.rule(ruleId).oldState().getBlock());
+            for (int sectionIndex = 0; sectionIndex < sectionMasks.length; sectionIndex++) {
+                if (mayContain(sectionMasks[sectionIndex], blockMask) && probabilities.canSwapInSection(ruleId, sectionIndex)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static long stateMask(BlockState state) {
+        return state.isAir() ? 0L : blockMask(state.getBlock());
+    }
+
+    // Built on first use, after every block is registered
+    private static final class Masks {
+        static final long[] MASKS = new long[BuiltInRegistries.BLOCK.size()];
+
+        static {
+            for (Block block : BuiltInRegistries.BLOCK) {
+                long hash = mix(BuiltInRegistries.BLOCK.getKey(block).toString().hashCode());
+                MASKS[BuiltInRegistries.BLOCK.getId(block)] = 1L << (hash & 63) | 1L << (hash >>> 6 & 63);
+            }
+        }
+
+        // SplitMix64 finalizer
+        private static long mix(long value) {
+            value = (value ^ value >>> 30) * 0xBF58476D1CE4E5B9L;
+            value = (value ^ value >>> 27) * 0x94D049BB133111EBL;
+            return value ^ value >>> 31;
+        }
+    }
+}
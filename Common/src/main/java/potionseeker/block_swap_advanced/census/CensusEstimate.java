@@ -0,0 +1,123 @@
+package potionseeker.block_swap_advanced.census;
+
+import potionseeker.block_swap_advanced.swapper.RuleFilters;
+import potionseeker.block_swap_advanced.swapper.SwapPhase;
+import potionseeker.block_swap_advanced.swapper.SwapProbabilities;
+import potionseeker.block_swap_advanced.swapper.SwapTable;
+import potionseeker.block_swap_advanced.swapper.Swapper;
+
+import net.minecraft.Util;
+import net.minecraft.core.SectionPos;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * How much of a level a set of rules could touch, answered from the saved {@link ChunkCensusData} without loading a
+ * chunk. Counts are upper bounds: the census can report blocks that aren't there, and biome and structure filters are
+ * not applied. The block estimate assumes every block of a matching section is a source block, weighted by the rule's
+ * probability at each Y level.
+ */
+public final class CensusEstimate {
+    private CensusEstimate() {}
+
+    /**
+     * Flushes the level's census on the calling (server) thread, then reads the census files in the background.
+     *
+     * @return one line for the census as a whole, then one per rule
+     */
+    public static CompletableFuture<List<String>> estimate(ServerLevel level, List<Swapper.SwapEntry> rules) {
+        ChunkCensusData.load(level).flush();
+        SwapTable table = SwapTable.compile(rules);
+        RuleFilters filters = table.filters(level.registryAccess());
+        SwapProbabilities probabilities = table.probabilities(level);
+        int sectionCount = level.getSectionsCount();
+        boolean[] activeRules = new boolean[rules.size()];
+        double[][] sectionBlocks = new double[rules.size()][sectionCount];
+        for (int ruleId = 0; ruleId < rules.size(); ruleId++) {
+            Swapper.SwapEntry rule = rules.get(ruleId);
+            activeRules[ruleId] = (SwapPhase.RETRO.includes(rule) || SwapPhase.DEFERRED.includes(rule)) && filters.get(ruleId).allowsDimension(level.dimension());
+            for (int sectionIndex = 0; sectionIndex < sectionCount; sectionIndex++) {
+                int bottomY = SectionPos.sectionToBlockCoord(level.getMinSection() + sectionIndex);
+                for (int y = bottomY; y < bottomY + 16; y++) {
+                    sectionBlocks[ruleId][sectionIndex] += 256.0 * probabilities.get(ruleId, y);
+                }
+            }
+        }
+        Path regionDir = ChunkCensusData.regionDir(level);
+        return CompletableFuture.supplyAsync(() -> count(regionDir, sectionCount, table, activeRules, sectionBlocks), Util.backgroundExecutor());
+    }
+
+    private static List<String> count(Path regionDir, int sectionCount, SwapTable table, boolean[] activeRules, double[][] sectionBlocks) {
+        int ruleCount = activeRules.length;
+        long[] blockMasks = new long[ruleCount];
+        for (int ruleId = 0; ruleId < ruleCount; ruleId++) {
+            blockMasks[ruleId] = BlockCensus.blockMask(table.rule(ruleId).oldState().getBlock());
+        }
+        long chunks = 0;
+        long[] ruleChunks = new long[ruleCount];
+        long[] ruleSections = new long[ruleCount];
+        double[] ruleBlocks = new double[ruleCount];
+
+        List<Path> files;
+        try (Stream<Path> list = Files.isDirectory(regionDir) ? Files.list(regionDir) : Stream.empty()) {
+            files = list.filter(file -> file.getFileName().toString().matches("r\\.-?\\d+\\.-?\\d+\\.dat")).toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (Path file : files) {
+            ChunkCensusData.Region region = ChunkCensusData.readRegion(file, sectionCount);
+            for (int z = 0; z < ChunkPos.REGION_SIZE; z++) {
+                for (int x = 0; x < ChunkPos.REGION_SIZE; x++) {
+                    // Only the region-local position matters to the region's layout
+                    ChunkPos pos = new ChunkPos(x, z);
+                    if (!region.isPresent(pos)) {
+                        continue;
+                    }
+                    chunks++;
+                    for (int ruleId = 0; ruleId < ruleCount; ruleId++) {
+                        if (!activeRules[ruleId]) {
+                            continue;
+                        }
+                        int matching = 0;
+                        for (int sectionIndex = 0; sectionIndex < sectionCount; sectionIndex++) {
+                            if (sectionBlocks[ruleId][sectionIndex] > 0.0 && BlockCensus.mayContain(region.section(pos, sectionIndex), blockMasks[ruleId])) {
+                                matching++;
+                                ruleBlocks[ruleId] += sectionBlocks[ruleId][sectionIndex];
+                            }
+                        }
+                        if (matching > 0) {
+                            ruleChunks[ruleId]++;
+                            ruleSections[ruleId] += matching;
+                        }
+                    }
+                }
+            }
+        }
+
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT, "Block census covers %d chunks in %d regions", chunks, files.size()));
+        for (int ruleId = 0; ruleId < ruleCount; ruleId++) {
+            Swapper.SwapEntry rule = table.rule(ruleId);
+            String name = String.format(Locale.ROOT, "Rule #%d (%s -> %s)", ruleId,
+                    BuiltInRegistries.BLOCK.getKey(rule.oldState().getBlock()), BuiltInRegistries.BLOCK.getKey(rule.newState().getBlock()));
+            if (!activeRules[ruleId]) {
+                lines.add(name + ": not run by retro_gen or redo_gen in this dimension");
+                continue;
+            }
+            lines.add(String.format(Locale.ROOT, "%s: at most %d chunks (%.1f%%), %d sections, ~%d blocks",
+                    name, ruleChunks[ruleId], chunks == 0 ? 0.0 : 100.0 * ruleChunks[ruleId] / chunks, ruleSections[ruleId], Math.round(ruleBlocks[ruleId])));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,14 @@
+package potionseeker.block_swap_advanced.census;
+
+import javax.annotation.Nullable;
+
+/**
+ * Holds a level's {@link ChunkCensusData} once it has been looked up, added to {@code ServerLevel} by a mixin. Use
+ * {@link ChunkCensusData#load} rather than calling these directly.
+ */
+public interface CensusLevel {
+    @Nullable
+    ChunkCensusData blockSwap_getCensus();
+
+    void blockSwap_setCensus(ChunkCensusData census);
+}
@@ -0,0 +1,319 @@
+package potionseeker.block_swap_advanced.census;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.dimension.DimensionType;
+import net.minecraft.world.level.saveddata.SavedData;
+import net.minecraft.world.level.storage.LevelResource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The {@link BlockCensus} of every saved chunk of a level, one file per region in {@code data/block_swap_census}.
+ * A chunk's census is refreshed whenever the chunk is saved, and placements of blocks that a rule swaps are added to
+ * it right away if its region is in memory. Regions are read on first use and only a bounded number of them are kept;
+ * changed regions are written when the level saves or when they are dropped from memory. Saving a chunk never reads a
+ * region: the census of a chunk whose region isn't in memory is held back until the region is read or the level saves.
+ */
+public class ChunkCensusData extends SavedData {
+    private static final Logger LOGGER = LogManager.getLogger("BlockSwap");
+    private static final String DATA_NAME = "block_swap_census";
+    private static final int LOADED_REGIONS = 64;
+
+    private final Path regionDir;
+    private final int sectionCount;
+    private final Long2ObjectLinkedOpenHashMap<Region> regions = new Long2ObjectLinkedOpenHashMap<>();
+    // Census of saved chunks whose region wasn't in memory, by region key, then ChunkPos.toLong
+    private final Long2ObjectMap<Long2ObjectMap<long[]>> pending = new Long2ObjectOpenHashMap<>();
+
+    private ChunkCensusData(Path regionDir, int sectionCount) {
+        this.regionDir = regionDir;
+        this.sectionCount = sectionCount;
+    }
+
+    /**
+     * Cheap after the first call for a level, which keeps the census the data storage handed out for its lifetime.
+     */
+    public static ChunkCensusData load(ServerLevel level) {
+        CensusLevel censusLevel = (CensusLevel) level;
+        ChunkCensusData census = censusLevel.blockSwap_getCensus();
+        if (census == null) {
+            Path regionDir = regionDir(level);
+            int sectionCount = level.getSectionsCount();
+            census = level.getDataStorage().computeIfAbsent(
+                    tag -> new ChunkCensusData(regionDir, sectionCount),
+                    () -> new ChunkCensusData(regionDir, sectionCount),
+                    DATA_NAME
+            );
+            censusLevel.blockSwap_setCensus(census);
+        }
+        return census;
+    }
+
+    public static Path regionDir(ServerLevel level) {
+        return regionDir(level.dimension(), level.getServer().getWorldPath(LevelResource.ROOT));
+    }
+
+    public static Path regionDir(ResourceKey<Level> dimension, Path worldRoot) {
+        return DimensionType.getStorageFolder(dimension, worldRoot).resolve("data").resolve(DATA_NAME);
+    }
+
+    /**
+     * Called when a full chunk is saved.
+     */
+    public void update(LevelChunk chunk) {
+        ChunkPos pos = chunk.getPos();
+        long[] masks = BlockCensus.chunkMasks(chunk);
+        Region region = region(pos.getRegionX(), pos.getRegionZ(), false);
+        if (region == null) {
+            pending.computeIfAbsent(ChunkPos.asLong(pos.getRegionX(), pos.getRegionZ()), key -> new Long2ObjectOpenHashMap<>())
+                    .put(pos.toLong(), masks);
+            setDirty();
+        } else if (region.update(pos, masks)) {
+            region.dirty = true;
+            setDirty();
+        }
+    }
+
+    /**
+     * Adds a placed block to its section's census, if the chunk's census is in memory; otherwise the next save of the
+     * chunk picks it up.
+     */
+    public void recordPlacement(ServerLevel level, BlockPos pos, Block block) {
+        // Runs for every placed swap candidate, so the chunk is worked out without allocating a ChunkPos
+        int chunkX = SectionPos.blockToSectionCoord(pos.getX());
+        int chunkZ = SectionPos.blockToSectionCoord(pos.getZ());
+        Region region = region(chunkX >> 5, chunkZ >> 5, false);
+        int sectionIndex = level.getSectionIndex(pos.getY());
+        if (sectionIndex < 0 || sectionIndex >= sectionCount) {
+            return;
+        }
+        if (region == null) {
+            Long2ObjectMap<long[]> chunks = pending.get(ChunkPos.asLong(chunkX >> 5, chunkZ >> 5));
+            long[] masks = chunks == null ? null : chunks.get(ChunkPos.asLong(chunkX, chunkZ));
+            if (masks != null) {
+                masks[sectionIndex] |= BlockCensus.blockMask(block);
+            }
+            return;
+        }
+        if (!region.isPresent(chunkX, chunkZ)) {
+            return;
+        }
+        int index = region.offset(chunkX, chunkZ) + sectionIndex;
+        long mask = region.sections[index] | BlockCensus.blockMask(block);
+        if (mask != region.sections[index]) {
+            region.sections[index] = mask;
+            region.dirty = true;
+            setDirty();
+        }
+    }
+
+    /**
+     * @return the census of the chunk indexed from the bottom section, or null if the chunk was never saved with one
+     */
+    @Nullable
+    public long[] sections(ChunkPos pos) {
+        Region region = region(pos.getRegionX(), pos.getRegionZ(), true);
+        if (!region.isPresent(pos)) {
+            return null;
+        }
+        int offset = region.offset(pos);
+        long[] masks = new long[sectionCount];
+        System.arraycopy(region.sections, offset, masks, 0, sectionCount);
+        return masks;
+    }
+
+    /**
+     * Writes every changed region to disk, reading the regions of held back chunks that aren't in memory to do so.
+     */
+    public void flush() {
+        for (ObjectIterator<Long2ObjectMap.Entry<Long2ObjectMap<long[]>>> iterator = Long2ObjectMaps.fastIterator(pending); iterator.hasNext(); ) {
+            Long2ObjectMap.Entry<Long2ObjectMap<long[]>> entry = iterator.next();
+            long key = entry.getLongKey();
+            // Not added to the loaded regions, so saving doesn't push out the ones in use
+            Region region = readRegion(regionFile(regionDir, ChunkPos.getX(key), ChunkPos.getZ(key)), sectionCount);
+            region.dirty = applyPending(region, entry.getValue());
+            writeIfDirty(key, region);
+            if (!region.dirty) {
+                iterator.remove();
+            }
+        }
+        for (Long2ObjectMap.Entry<Region> entry : regions.long2ObjectEntrySet()) {
+            writeIfDirty(entry.getLongKey(), entry.getValue());
+        }
+    }
+
+    private Region region(int regionX, int regionZ, boolean read) {
+        long key = ChunkPos.asLong(regionX, regionZ);
+        Region region = regions.getAndMoveToLast(key);
+        if (region == null && read) {
+            region = readRegion(regionFile(regionDir, regionX, regionZ), sectionCount);
+            Long2ObjectMap<long[]> chunks = pending.remove(key);
+            region.dirty = chunks != null && applyPending(region, chunks);
+            regions.putAndMoveToLast(key, region);
+            if (regions.size() > LOADED_REGIONS) {
+                long eldest = regions.firstLongKey();
+                writeIfDirty(eldest, regions.removeFirst());
+            }
+        }
+        return region;
+    }
+
+    private static boolean applyPending(Region region, Long2ObjectMap<long[]> chunks) {
+        boolean changed = false;
+        for (Long2ObjectMap.Entry<long[]> chunk : Long2ObjectMaps.fastIterable(chunks)) {
+            changed |= region.update(new ChunkPos(chunk.getLongKey()), chunk.getValue());
+        }
+        return changed;
+    }
+
+    private void writeIfDirty(long key, Region region) {
+        if (!region.dirty) {
+            return;
+        }
+        Path file = regionFile(regionDir, ChunkPos.getX(key), ChunkPos.getZ(key));
+        try {
+            writeRegion(file, region);
+            region.dirty = false;
+        } catch (IOException e) {
+            // Stays dirty, so the next save tries again
+            LOGGER.error("Failed to save block census to {}: {}", file, e.getMessage());
+        }
+    }
+
+    public static Path regionFile(Path regionDir, int regionX, int regionZ) {
+        return regionDir.resolve("r." + regionX + "." + regionZ + ".dat");
+    }
+
+    /**
+     * Replaces a region file in one step, so a reader never sees it half written.
+     */
+    public static void writeRegion(Path file, Region region) throws IOException {
+        CompoundTag tag = new CompoundTag();
+        tag.putInt("SectionCount", region.sectionCount);
+        tag.putLongArray("Present", region.present);
+        tag.putLongArray("Sections", region.sections);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.createDirectories(file.getParent());
+        NbtIo.writeCompressed(tag, temp.toFile());
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a region file as written by this class; a missing or unreadable file reads as a region without chunks.
+     */
+    public static Region readRegion(Path file, int sectionCount) {
+        if (Files.isRegularFile(file)) {
+            try {
+                CompoundTag tag = NbtIo.readCompressed(file.toFile());
+                long[] present = tag.getLongArray("Present");
+                long[] sections = tag.getLongArray("Sections");
+                if (tag.getInt("SectionCount") == sectionCount && present.length == Region.PRESENT_LONGS
+                        && sections.length == ChunkPos.REGION_SIZE * ChunkPos.REGION_SIZE * sectionCount) {
+                    return new Region(present, sections, sectionCount);
+                }
+                LOGGER.warn("Ignoring block census in {}: written for another build height", file);
+            } catch (IOException e) {
+                LOGGER.error("Failed to read block census from {}: {}", file, e.getMessage());
+            }
+        }
+        return new Region(new long[Region.PRESENT_LONGS], new long[ChunkPos.REGION_SIZE * ChunkPos.REGION_SIZE * sectionCount], sectionCount);
+    }
+
+    @Override
+    public void save(File file) {
+        if (isDirty()) {
+            flush();
+        }
+        super.save(file);
+    }
+
+    @Override
+    public CompoundTag save(CompoundTag tag) {
+        return tag;
+    }
+
+    /**
+     * The census of the chunks of one region, {@code sectionCount} masks per chunk in region-local x + z * 32 order.
+     */
+    public static final class Region {
+        static final int PRESENT_LONGS = ChunkPos.REGION_SIZE * ChunkPos.REGION_SIZE / Long.SIZE;
+
+        private final long[] present;
+        private final long[] sections;
+        private final int sectionCount;
+        private boolean dirty;
+
+        Region(long[] present, long[] sections, int sectionCount) {
+            this.present = present;
+            this.sections = sections;
+            this.sectionCount = sectionCount;
+        }
+
+        public boolean isPresent(ChunkPos pos) {
+            return isPresent(pos.x, pos.z);
+        }
+
+        boolean isPresent(int chunkX, int chunkZ) {
+            int index = index(chunkX, chunkZ);
+            return (present[index >>> 6] & 1L << index) != 0;
+        }
+
+        /**
+         * Replaces the census of a chunk with the masks of its sections, indexed from the bottom section.
+         *
+         * @return true if the region changed
+         */
+        public boolean update(ChunkPos pos, long[] masks) {
+            int offset = offset(pos);
+            int index = index(pos.x, pos.z);
+            boolean changed = !isPresent(pos);
+            present[index >>> 6] |= 1L << index;
+            for (int i = 0; i < sectionCount && i < masks.length; i++) {
+                changed |= sections[offset + i] != masks[i];
+                sections[offset + i] = masks[i];
+            }
+            return changed;
+        }
+
+        /**
+         * @return the census mask of a section of a chunk that {@link #isPresent}
+         */
+        public long section(ChunkPos pos, int sectionIndex) {
+            return sections[offset(pos) + sectionIndex];
+        }
+
+        int offset(ChunkPos pos) {
+            return offset(pos.x, pos.z);
+        }
+
+        int offset(int chunkX, int chunkZ) {
+            return index(chunkX, chunkZ) * sectionCount;
+        }
+
+        // Region-local x + z * 32, as ChunkPos.getRegionLocalX/Z work it out
+        private static int index(int chunkX, int chunkZ) {
+            return (chunkX & 31) + (chunkZ & 31) * ChunkPos.REGION_SIZE;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package potionseeker.block_swap_advanced.command;
+
+import potionseeker.block_swap_advanced.BlockSwap;
+import potionseeker.block_swap_advanced.census.CensusEstimate;
+import potionseeker.block_swap_advanced.config.BlockSwapConfig;
+import potionseeker.block_swap_advanced.metrics.SwapMetrics;
+import potionseeker.block_swap_advanced.process.BulkProcessor;
+import potionseeker.block_swap_advanced.serialization.JanksonJsonOps;
+import potionseeker.block_swap_advanced.serialization.JanksonUtil;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.builder.RequiredArgumentBuilder;
+import com.mojang.serialization.DataResult;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.commands.arguments.DimensionArgument;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.storage.LevelResource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * {@code /blockswap stats [reset|dump]}: shows, clears or writes out the counters in {@link SwapMetrics}.
+ * <p>
+ * {@code /blockswap estimate [file]}: estimates from the block census how much of the current dimension the rules in a
+ * config file (by default the active {@code block_swap.json5}) could touch, without applying them.
+ * <p>
+ * {@code /blockswap process <dimension> <radius|all> [concurrency]}: runs the retro pass over the saved chunks of a
+ * dimension within a square radius of chunks around the command's position, or over all of them, without waiting for
+ * players to visit them; see {@link BulkProcessor}. {@code /blockswap process <dimension> status} shows how far it
+ * got and {@code /blockswap process <dimension> stop} abandons it. A job survives restarts until it is finished.
+ */
+public final class BlockSwapCommand {
+    private static final String DUMP_FILE = "block_swap_metrics.txt";
+    private static final String CONFIG_FILE = "block_swap.json5";
+
+    private BlockSwapCommand() {}
+
+    public static void register(CommandDispatcher<CommandSourceStack> dispatcher) {
+        dispatcher.register(Commands.literal("blockswap")
+                .requires(source -> source.hasPermission(2))
+                .then(Commands.literal("stats")
+                        .executes(context -> showStats(context.getSource()))
+                        .then(Commands.literal("reset").executes(context -> resetStats(context.getSource())))
+                        .then(Commands.literal("dump").executes(context -> dumpStats(context.getSource()))))
+                .then(Commands.literal("estimate")
+                        .executes(context -> estimate(context.getSource(), CONFIG_FILE))
+                        .then(Commands.argument("file", StringArgumentType.string())
+                                .executes(context -> estimate(context.getSource(), StringArgumentType.getString(context, "file")))))
+                .then(Commands.literal("process")
+                        .then(Commands.argument("dimension", DimensionArgument.dimension())
+                                .then(Commands.literal("status")
+                                        .executes(context -> processStatus(context.getSource(), DimensionArgument.getDimension(context, "dimension"))))
+                                .then(Commands.literal("stop")
+                                        .executes(context -> stopProcess(context.getSource(), DimensionArgument.getDimension(context, "dimension"))))
+                                .then(Commands.literal("all")
+                                        .executes(context -> startProcess(context.getSource(), DimensionArgument.getDimension(context, "dimension"), -1, BulkProcessor.DEFAULT_CONCURRENCY))
+                                        .then(concurrency(true)))
+                                .then(Commands.argument("radius", IntegerArgumentType.integer(0))
+                                        .executes(context -> startProcess(context.getSource(), DimensionArgument.getDimension(context, "dimension"),
+                                                IntegerArgumentType.getInteger(context, "radius"), BulkProcessor.DEFAULT_CONCURRENCY))
+                                        .then(concurrency(false))))));
+    }
+
+    private static RequiredArgumentBuilder<CommandSourceStack, Integer> concurrency(boolean all) {
+        return Commands.argument("concurrency", IntegerArgumentType.integer(1, 64))
+                .executes(context -> startProcess(context.getSource(), DimensionArgument.getDimension(context, "dimension"),
+                        all ? -1 : IntegerArgumentType.getInteger(context, "radius"), IntegerArgumentType.getInteger(context, "concurrency")));
+    }
+
+    private static int showStats(CommandSourceStack source) {
+        List<String> lines = SwapMetrics.summary();
+        for (String line : lines) {
+            source.sendSuccess(() -> Component.literal(line), false);
+        }
+        return lines.size();
+    }
+
+    private static int resetStats(CommandSourceStack source) {
+        SwapMetrics.reset();
+        source.sendSuccess(() -> Component.literal("Block swap stats reset"), true);
+        return 1;
+    }
+
+    private static int dumpStats(CommandSourceStack source) {
+        Path file = source.getServer().getWorldPath(LevelResource.ROOT).resolve(DUMP_FILE).normalize();
+        try {
+            SwapMetrics.dump(file);
+        } catch (IOException e) {
+            BlockSwap.LOGGER.error("Failed to write block swap stats to {}", file, e);
+            source.sendFailure(Component.literal("Could not write " + file + ": " + e.getMessage()));
+            return 0;
+        }
+        source.sendSuccess(() -> Component.literal("Wrote block swap stats to " + file), true);
+        return 1;
+    }
+
+    private static int estimate(CommandSourceStack source, String fileName) {
+        Path file = BlockSwap.CONFIG_PATH.resolve(fileName).normalize();
+        if (!file.startsWith(BlockSwap.CONFIG_PATH.normalize()) || !Files.isRegularFile(file)) {
+            source.sendFailure(Component.literal("No config file " + file));
+            return 0;
+        }
+        DataResult<BlockSwapConfig> config = JanksonUtil.readConfigWithResult(file, BlockSwapConfig.CODEC, JanksonJsonOps.INSTANCE);
+        if (config.result().isEmpty()) {
+            source.sendFailure(Component.literal("Could not read " + file + ": " + config.error().map(DataResult.PartialResult::message).orElse("unknown error")));
+            return 0;
+        }
+        source.sendSuccess(() -> Component.literal("Estimating " + fileName + " in " + source.getLevel().dimension().location() + "..."), false);
+        CensusEstimate.estimate(source.getLevel(), config.result().get().swapEntries()).whenCompleteAsync((lines, error) -> {
+            if (error != null) {
+                BlockSwap.LOGGER.error("Failed to estimate {} from the block census", file, error);
+                source.sendFailure(Component.literal("Could not read the block census: " + error.getMessage()));
+                return;
+            }
+            for (String line : lines) {
+                source.sendSuccess(() -> Component.literal(line), false);
+            }
+        }, source.getServer());
+        return 1;
+    }
+
+    private static int startProcess(CommandSourceStack source, ServerLevel level, int radius, int concurrency) {
+        ChunkPos center = new ChunkPos(BlockPos.containing(source.getPosition()));
+        int regionCount;
+        try {
+            regionCount = BulkProcessor.start(level, center, radius, concurrency);
+        } catch (IllegalStateException e) {
+            source.sendFailure(Component.literal(e.getMessage()));
+            return 0;
+        } catch (IOException e) {
+            BlockSwap.LOGGER.error("Failed to list the region files of {}", level.dimension().location(), e);
+            source.sendFailure(Component.literal("Could not list the region files of " + level.dimension().location() + ": " + e.getMessage()));
+            return 0;
+        }
+        int regions = regionCount;
+        if (regions == 0) {
+            source.sendFailure(Component.literal("No saved chunks of " + level.dimension().location() + " to process"));
+            return 0;
+        }
+        String area = radius < 0 ? "all chunks" : "within " + radius + " chunks of " + center;
+        source.sendSuccess(() -> Component.literal("Processing " + area + " of " + level.dimension().location() + " in " + regions + " region files, "
+                + concurrency + " chunks at a time"), true);
+        return regions;
+    }
+
+    private static int processStatus(CommandSourceStack source, ServerLevel level) {
+        List<String> lines = BulkProcessor.status(level);
+        for (String line : lines) {
+            source.sendSuccess(() -> Component.literal(line), false);
+        }
+        return lines.size();
+    }
+
+    private static int stopProcess(CommandSourceStack source, ServerLevel level) {
+        if (!BulkProcessor.stop(level)) {
+            source.sendFailure(Component.literal(level.dimension().location() + " is not being processed"));
+            return 0;
+        }
+        source.sendSuccess(() -> Component.literal("Stopped processing " + level.dimension().location()), true);
+        return 1;
+    }
+}
@@ -28,9 +28,11 @@ public record BlockSwapConfig(
         boolean redoGen,
         boolean generateBlockInfo,
         boolean verboseLogging,
-        int chunkSwapRange
+        int chunkSwapRange,
+        int retroGenThreads,
+        int retroGenTickBudgetMs
 ) {
-    public static final BlockSwapConfig DEFAULT = new BlockSwapConfig(List.of(), true, false, false, false, -1);
+    public static final BlockSwapConfig DEFAULT = new BlockSwapConfig(List.of(), true, false, false, false, -1, -1, 5);
 
     public static final Codec<BlockSwapConfig> CODEC = RecordCodecBuilder.create(builder ->
             builder.group(
@@ -39,7 +41,9 @@ public record BlockSwapConfig(
                     Codec.BOOL.optionalFieldOf("redo_gen", false).forGetter(BlockSwapConfig::redoGen),
                     Codec.BOOL.optionalFieldOf("generate_block_info", false).forGetter(BlockSwapConfig::generateBlockInfo),
                     Codec.BOOL.optionalFieldOf("verbose_logging", false).forGetter(BlockSwapConfig::verboseLogging),
-                    Codec.INT.optionalFieldOf("chunk_swap_range", -1).forGetter(BlockSwapConfig::chunkSwapRange)
+                    Codec.INT.optionalFieldOf("chunk_swap_range", -1).forGetter(BlockSwapConfig::chunkSwapRange),
+                    Codec.INT.optionalFieldOf("retro_gen_threads", -1).forGetter(BlockSwapConfig::retroGenThreads),
+                    Codec.INT.optionalFieldOf("retro_gen_tick_budget_ms", 5).forGetter(BlockSwapConfig::retroGenTickBudgetMs)
             ).apply(builder, BlockSwapConfig::new)
     );
 
@@ -220,16 +224,19 @@ public record BlockSwapConfig(
             Configuration Options:
             - swapper: List of block swap rules (e.g., swapping minecraft:cobblestone to minecraft:diamond_block).
             - retro_gen: If true, applies swaps to existing unprocessed chunks when the world loads (default: true).
-            - redo_gen: If true, re-applies swaps to any chunks when the config changes (resets processed chunks).
+            - redo_gen: If true, re-applies swaps to processed chunks when the config changes, using only the rules that were added or changed.
             - generate_block_info: If true, generates block info files for reference (useful for modded blocks).
             - verbose_logging: If true, logs detailed swap operations for debugging.
             - chunk_swap_range: Chunks around players to process (-1 = all loaded, 0 = none except new/placed).
+            - retro_gen_threads: Worker threads that scan chunks for retro_gen/redo_gen (-1 = automatic, 0 = scan on the server thread).
+            - retro_gen_tick_budget_ms: Milliseconds per tick spent queuing retro_gen/redo_gen chunks, reduced automatically under lag (-1 = no limit).
 
             Swap Entry Fields:
             Core (required):
             - old (block state, e.g., {"Name": "minecraft:cobblestone"}): Block to replace.
             - new (block state, e.g., {"Name": "minecraft:diamond_block"}): Block to swap to.
             - replace_placement (bool, default: true): Swap when block is placed (e.g., by player).
+            - placement_causes (list<string>, default: all): Which placements to swap: player, dispenser, structure, physics, other.
             - min_y (int, default: min world height): Minimum Y level for swap.
             - max_y (int, default: max world height): Maximum Y level for swap.
             - block_swap_rand (float, 0.0-1.0, default: 1.0): Swap probability.
@@ -11,6 +11,8 @@ import potionseeker.block_swap_advanced.serialization.JanksonUtil;
 
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.Tag;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.world.level.block.Block;
 
@@ -98,14 +100,41 @@ public record MissingBlockIDsConfig(Map<String, Block> idRemapper) {
                     JanksonUtil.createConfig(configPath, CODEC, HEADER, new Object2ObjectOpenHashMap<>(), JanksonJsonOps.INSTANCE, new MissingBlockIDsConfig(defaultMap));
                 }
             }
-            try {
-                CONFIG = JanksonUtil.readConfig(configPath, CODEC, JanksonJsonOps.INSTANCE);
-                BlockSwap.LOGGER.debug("Loaded missing_block_ids config from: {}", configPath);
-            } catch (Exception e) {
-                BlockSwap.LOGGER.error("Failed to load missing_block_ids config from {}: {}. Using default config.", configPath, e.getMessage());
-                CONFIG = new MissingBlockIDsConfig(new IdentityHashMap<>());
-            }
+            CONFIG = read(configPath);
         }
         return CONFIG;
     }
+
+    /**
+     * Reads a config file without creating or copying one, for tools that work on a world the server isn't running.
+     * A missing or unreadable file reads as a config that remaps nothing.
+     */
+    public static MissingBlockIDsConfig read(Path configPath) {
+        if (!Files.isRegularFile(configPath)) {
+            return new MissingBlockIDsConfig(new IdentityHashMap<>());
+        }
+        try {
+            MissingBlockIDsConfig config = JanksonUtil.readConfig(configPath, CODEC, JanksonJsonOps.INSTANCE);
+            BlockSwap.LOGGER.debug("Loaded missing_block_ids config from: {}", configPath);
+            return config;
+        } catch (Exception e) {
+            BlockSwap.LOGGER.error("Failed to load missing_block_ids config from {}: {}. Using default config.", configPath, e.getMessage());
+            return new MissingBlockIDsConfig(new IdentityHashMap<>());
+        }
+    }
+
+    /**
+     * Renames the palette entries of a saved section's {@code block_states} whose block id is remapped.
+     */
+    public void repairPalette(CompoundTag blockStates) {
+        for (Tag paletteTag : blockStates.getList("palette", Tag.TAG_COMPOUND)) {
+            if (paletteTag instanceof CompoundTag paletteEntry) {
+                String name = paletteEntry.getString("Name");
+                if (idRemapper.containsKey(name)) {
+                    paletteEntry.remove("Name");
+                    paletteEntry.putString("Name", BuiltInRegistries.BLOCK.getKey(idRemapper.get(name)).toString());
+                }
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,58 @@
+package potionseeker.block_swap_advanced.metrics;
+
+import potionseeker.block_swap_advanced.swapper.SwapPhase;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.level.Level;
+
+/**
+ * One world generation or placement swap evaluation. World generation runs these for every candidate block, so there
+ * the event is only created for the blocks {@link SwapMetrics#sampleBlock} picks. Either way it is only recorded
+ * when it is slow, unless the recording lowers the threshold.
+ */
+@Name("block_swap_advanced.BlockSwap")
+@Label("Block Swap Evaluation")
+@Category("Block Swap Advanced")
+@Description("A placement or sampled world generation swap evaluation")
+@StackTrace(false)
+@Threshold("20 us")
+public class BlockSwapEvent extends Event {
+    @Label("Chunk X")
+    int chunkX;
+
+    @Label("Chunk Z")
+    int chunkZ;
+
+    @Label("Dimension")
+    String dimension;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Blocks Evaluated")
+    long blocksEvaluated;
+
+    @Label("Swaps Applied")
+    int swapsApplied;
+
+    public void complete(Level level, BlockPos pos, SwapPhase phase, boolean swapped) {
+        end();
+        if (shouldCommit()) {
+            this.chunkX = SectionPos.blockToSectionCoord(pos.getX());
+            this.chunkZ = SectionPos.blockToSectionCoord(pos.getZ());
+            this.dimension = level.dimension().location().toString();
+            this.phase = phase.name();
+            this.blocksEvaluated = 1;
+            this.swapsApplied = swapped ? 1 : 0;
+            commit();
+        }
+    }
+}
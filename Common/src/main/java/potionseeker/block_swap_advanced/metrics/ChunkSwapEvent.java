@@ -0,0 +1,63 @@
+package potionseeker.block_swap_advanced.metrics;
+
+import potionseeker.block_swap_advanced.swapper.SwapPhase;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+
+/**
+ * A retro-gen or deferred pass over one chunk. The event spans the work done on the server thread; for retro-gen the
+ * time the scan took on a worker thread is reported separately.
+ */
+@Name("block_swap_advanced.ChunkSwap")
+@Label("Chunk Swap Pass")
+@Category("Block Swap Advanced")
+@Description("A retro-gen or deferred swap pass over one chunk")
+@StackTrace(false)
+public class ChunkSwapEvent extends Event {
+    @Label("Chunk X")
+    int chunkX;
+
+    @Label("Chunk Z")
+    int chunkZ;
+
+    @Label("Dimension")
+    String dimension;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Blocks Evaluated")
+    long blocksEvaluated;
+
+    @Label("Swaps Applied")
+    int swapsApplied;
+
+    @Label("Scan Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long scanDuration;
+
+    /**
+     * Ends the event and commits it if the recording wants it. The fields are only filled in when it does.
+     */
+    public void complete(ServerLevel level, ChunkPos pos, SwapPhase phase, long blocksEvaluated, int swapsApplied, long scanNanos) {
+        end();
+        if (shouldCommit()) {
+            this.chunkX = pos.x;
+            this.chunkZ = pos.z;
+            this.dimension = level.dimension().location().toString();
+            this.phase = phase.name();
+            this.blocksEvaluated = blocksEvaluated;
+            this.swapsApplied = swapsApplied;
+            this.scanDuration = scanNanos;
+            commit();
+        }
+    }
+}
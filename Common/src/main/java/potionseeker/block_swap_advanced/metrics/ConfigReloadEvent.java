@@ -0,0 +1,27 @@
+package potionseeker.block_swap_advanced.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Compiling a swap config into swap tables.
+ */
+@Name("block_swap_advanced.ConfigReload")
+@Label("Swap Config Reload")
+@Category("Block Swap Advanced")
+@Description("Compiling the swap rules of a config")
+public class ConfigReloadEvent extends Event {
+    @Label("Rules")
+    int rules;
+
+    public void complete(int rules) {
+        end();
+        if (shouldCommit()) {
+            this.rules = rules;
+            commit();
+        }
+    }
+}
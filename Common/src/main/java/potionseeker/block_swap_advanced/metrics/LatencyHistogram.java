@@ -0,0 +1,81 @@
+package potionseeker.block_swap_advanced.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with power-of-two buckets, from 1 µs up to about one second. Recording is a bit
+ * count and two adder increments, so it is cheap enough for worker threads and hot paths.
+ */
+public final class LatencyHistogram {
+    // Bucket i holds durations up to 2^(MIN_EXPONENT + i) nanoseconds, the last one everything above
+    static final int MIN_EXPONENT = 10;
+    static final int BUCKETS = 21;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        long clamped = Math.max(nanos, 1L);
+        int exponent = 64 - Long.numberOfLeadingZeros(clamped - 1);
+        buckets[Math.min(Math.max(exponent - MIN_EXPONENT, 0), BUCKETS)].increment();
+        sumNanos.add(clamped);
+    }
+
+    /**
+     * @return the number of durations in each bucket, not cumulative
+     */
+    long[] counts() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    long sumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * @return the upper bound of bucket {@code index} in nanoseconds, or {@link Long#MAX_VALUE} for the last one
+     */
+    static long upperBoundNanos(int index) {
+        return index >= BUCKETS ? Long.MAX_VALUE : 1L << MIN_EXPONENT + index;
+    }
+
+    /**
+     * @return the upper bound of the bucket holding the {@code quantile} of all recorded durations, or 0 if nothing
+     * was recorded
+     */
+    static long quantileNanos(long[] counts, double quantile) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBoundNanos(i);
+            }
+        }
+        return upperBoundNanos(counts.length - 1);
+    }
+
+    void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        sumNanos.reset();
+    }
+}
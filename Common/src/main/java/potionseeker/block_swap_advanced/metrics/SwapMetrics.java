@@ -0,0 +1,267 @@
+package potionseeker.block_swap_advanced.metrics;
+
+import potionseeker.block_swap_advanced.swapper.SwapPhase;
+import potionseeker.block_swap_advanced.swapper.Swapper;
+
+import net.minecraft.core.registries.BuiltInRegistries;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Counters and latency histograms for the swap passes, kept since the server started or the last reset. Everything
+ * is a {@link LongAdder}, so world generation threads, scanner threads and the server thread record without
+ * contending, and reading only happens for {@code /blockswap stats}.
+ */
+public final class SwapMetrics {
+    /**
+     * World generation swaps are timed for one block in this many, the rest only count.
+     */
+    public static final int BLOCK_SAMPLE_RATE = 64;
+
+    private static final SwapPhase[] PHASES = SwapPhase.values();
+    private static final PhaseMetrics[] BY_PHASE = new PhaseMetrics[PHASES.length];
+    private static final LongAdder CHUNKS_QUEUED = new LongAdder();
+    private static final LongAdder CHUNKS_DISCARDED = new LongAdder();
+    private static volatile RuleMetrics RULES = new RuleMetrics(List.of());
+
+    static {
+        for (int i = 0; i < BY_PHASE.length; i++) {
+            BY_PHASE[i] = new PhaseMetrics();
+        }
+    }
+
+    private SwapMetrics() {}
+
+    private static final class PhaseMetrics {
+        final LongAdder chunksScanned = new LongAdder();
+        final LongAdder chunksSkipped = new LongAdder();
+        final LongAdder sectionsScanned = new LongAdder();
+        final LongAdder sectionsSkipped = new LongAdder();
+        final LongAdder blocksEvaluated = new LongAdder();
+        final LongAdder swapsApplied = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        void reset() {
+            chunksScanned.reset();
+            chunksSkipped.reset();
+            sectionsScanned.reset();
+            sectionsSkipped.reset();
+            blocksEvaluated.reset();
+            swapsApplied.reset();
+            latency.reset();
+        }
+    }
+
+    private static final class RuleMetrics {
+        final String[] labels;
+        final LongAdder[] swaps;
+
+        RuleMetrics(List<Swapper.SwapEntry> rules) {
+            labels = new String[rules.size()];
+            swaps = new LongAdder[rules.size()];
+            for (int ruleId = 0; ruleId < swaps.length; ruleId++) {
+                Swapper.SwapEntry rule = rules.get(ruleId);
+                labels[ruleId] = BuiltInRegistries.BLOCK.getKey(rule.oldState().getBlock()) + " -> " + BuiltInRegistries.BLOCK.getKey(rule.newState().getBlock());
+                swaps[ruleId] = new LongAdder();
+            }
+        }
+    }
+
+    /**
+     * Starts per-rule counting for a new config. Rule ids are only meaningful within one config, so the per-rule
+     * counts start over.
+     */
+    public static void configure(List<Swapper.SwapEntry> rules) {
+        RULES = new RuleMetrics(rules);
+    }
+
+    public static void reset() {
+        for (PhaseMetrics metrics : BY_PHASE) {
+            metrics.reset();
+        }
+        CHUNKS_QUEUED.reset();
+        CHUNKS_DISCARDED.reset();
+        for (LongAdder swaps : RULES.swaps) {
+            swaps.reset();
+        }
+    }
+
+    /**
+     * @return true for roughly one call in {@link #BLOCK_SAMPLE_RATE}
+     */
+    public static boolean sampleBlock() {
+        return ThreadLocalRandom.current().nextInt(BLOCK_SAMPLE_RATE) == 0;
+    }
+
+    public static void chunkScanned(SwapPhase phase, int sectionsScanned, int sectionsSkipped, long blocksEvaluated, long nanos) {
+        PhaseMetrics metrics = BY_PHASE[phase.ordinal()];
+        metrics.chunksScanned.increment();
+        metrics.sectionsScanned.add(sectionsScanned);
+        metrics.sectionsSkipped.add(sectionsSkipped);
+        metrics.blocksEvaluated.add(blocksEvaluated);
+        metrics.latency.record(nanos);
+    }
+
+    /**
+     * A chunk that was visited but had nothing a rule could swap, so it was never scanned.
+     */
+    public static void chunkSkipped(SwapPhase phase) {
+        BY_PHASE[phase.ordinal()].chunksSkipped.increment();
+    }
+
+    public static void blockEvaluated(SwapPhase phase) {
+        BY_PHASE[phase.ordinal()].blocksEvaluated.increment();
+    }
+
+    public static void blockTimed(SwapPhase phase, long nanos) {
+        BY_PHASE[phase.ordinal()].latency.record(nanos);
+    }
+
+    public static void swapApplied(SwapPhase phase, int ruleId) {
+        BY_PHASE[phase.ordinal()].swapsApplied.increment();
+        LongAdder[] swaps = RULES.swaps;
+        if (ruleId < swaps.length) {
+            swaps[ruleId].increment();
+        }
+    }
+
+    public static void chunkQueued() {
+        CHUNKS_QUEUED.increment();
+    }
+
+    /**
+     * A retro-gen scan whose result was thrown away because the chunk changed or unloaded in the meantime.
+     */
+    public static void scanDiscarded() {
+        CHUNKS_DISCARDED.increment();
+    }
+
+    public static long swapsApplied(SwapPhase phase) {
+        return BY_PHASE[phase.ordinal()].swapsApplied.sum();
+    }
+
+    public static long blocksEvaluated(SwapPhase phase) {
+        return BY_PHASE[phase.ordinal()].blocksEvaluated.sum();
+    }
+
+    /**
+     * @return a short human-readable report, one line per entry
+     */
+    public static List<String> summary() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT, "Retro-gen: %d chunks queued, %d scans discarded", CHUNKS_QUEUED.sum(), CHUNKS_DISCARDED.sum()));
+        for (SwapPhase phase : PHASES) {
+            PhaseMetrics metrics = BY_PHASE[phase.ordinal()];
+            long[] counts = metrics.latency.counts();
+            StringBuilder line = new StringBuilder(phaseLabel(phase)).append(": ");
+            if (phase == SwapPhase.RETRO || phase == SwapPhase.DEFERRED) {
+                line.append(String.format(Locale.ROOT, "%d chunks scanned, %d skipped, %d/%d sections skipped, ",
+                        metrics.chunksScanned.sum(), metrics.chunksSkipped.sum(), metrics.sectionsSkipped.sum(),
+                        metrics.sectionsScanned.sum() + metrics.sectionsSkipped.sum()));
+            }
+            line.append(String.format(Locale.ROOT, "%d blocks evaluated, %d swaps, p50 <= %s, p99 <= %s",
+                    metrics.blocksEvaluated.sum(), metrics.swapsApplied.sum(),
+                    formatNanos(LatencyHistogram.quantileNanos(counts, 0.5)), formatNanos(LatencyHistogram.quantileNanos(counts, 0.99))));
+            lines.add(line.toString());
+        }
+        RuleMetrics rules = RULES;
+        for (int ruleId = 0; ruleId < rules.swaps.length; ruleId++) {
+            long swaps = rules.swaps[ruleId].sum();
+            if (swaps > 0) {
+                lines.add(String.format(Locale.ROOT, "Rule #%d (%s): %d swaps", ruleId, rules.labels[ruleId], swaps));
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Writes every metric in the OpenMetrics text format, replacing the file atomically.
+     */
+    public static void dump(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writeOpenMetrics(writer);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static void writeOpenMetrics(Writer writer) throws IOException {
+        writeCounter(writer, "blockswap_chunks_queued", "Chunks queued for retro-gen or redo-gen.");
+        writer.write("blockswap_chunks_queued_total " + CHUNKS_QUEUED.sum() + "\n");
+        writeCounter(writer, "blockswap_scans_discarded", "Chunk scans dropped because the chunk changed or unloaded.");
+        writer.write("blockswap_scans_discarded_total " + CHUNKS_DISCARDED.sum() + "\n");
+
+        writePhaseCounter(writer, "blockswap_chunks_scanned", "Chunks scanned for swaps.", metrics -> metrics.chunksScanned);
+        writePhaseCounter(writer, "blockswap_chunks_skipped", "Chunks visited without anything to scan.", metrics -> metrics.chunksSkipped);
+        writePhaseCounter(writer, "blockswap_sections_scanned", "Chunk sections scanned block by block.", metrics -> metrics.sectionsScanned);
+        writePhaseCounter(writer, "blockswap_sections_skipped", "Chunk sections skipped without looking at their blocks.", metrics -> metrics.sectionsSkipped);
+        writePhaseCounter(writer, "blockswap_blocks_evaluated", "Blocks checked against at least one candidate rule.", metrics -> metrics.blocksEvaluated);
+        writePhaseCounter(writer, "blockswap_swaps_applied", "Blocks swapped.", metrics -> metrics.swapsApplied);
+
+        writeCounter(writer, "blockswap_rule_swaps", "Blocks swapped per rule of the current config.");
+        RuleMetrics rules = RULES;
+        for (int ruleId = 0; ruleId < rules.swaps.length; ruleId++) {
+            writer.write("blockswap_rule_swaps_total{rule=\"" + ruleId + "\",swap=\"" + escape(rules.labels[ruleId]) + "\"} " + rules.swaps[ruleId].sum() + "\n");
+        }
+
+        writer.write("# TYPE blockswap_swap_duration_seconds histogram\n");
+        writer.write("# UNIT blockswap_swap_duration_seconds seconds\n");
+        writer.write("# HELP blockswap_swap_duration_seconds Time spent finding swaps, per chunk for retro and deferred, per block for placement and per sampled block for generation.\n");
+        for (SwapPhase phase : PHASES) {
+            LatencyHistogram latency = BY_PHASE[phase.ordinal()].latency;
+            String label = "phase=\"" + phaseLabel(phase) + "\"";
+            long[] counts = latency.counts();
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                long bound = LatencyHistogram.upperBoundNanos(i);
+                String le = bound == Long.MAX_VALUE ? "+Inf" : Double.toString(bound / 1.0E9);
+                writer.write("blockswap_swap_duration_seconds_bucket{" + label + ",le=\"" + le + "\"} " + cumulative + "\n");
+            }
+            writer.write("blockswap_swap_duration_seconds_count{" + label + "} " + cumulative + "\n");
+            writer.write("blockswap_swap_duration_seconds_sum{" + label + "} " + latency.sumNanos() / 1.0E9 + "\n");
+        }
+        writer.write("# EOF\n");
+    }
+
+    private static void writePhaseCounter(Writer writer, String name, String help, Function<PhaseMetrics, LongAdder> counter) throws IOException {
+        writeCounter(writer, name, help);
+        for (SwapPhase phase : PHASES) {
+            writer.write(name + "_total{phase=\"" + phaseLabel(phase) + "\"} " + counter.apply(BY_PHASE[phase.ordinal()]).sum() + "\n");
+        }
+    }
+
+    private static void writeCounter(Writer writer, String name, String help) throws IOException {
+        writer.write("# TYPE " + name + " counter\n");
+        writer.write("# HELP " + name + " " + help + "\n");
+    }
+
+    private static String phaseLabel(SwapPhase phase) {
+        return phase.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos == Long.MAX_VALUE) {
+            return ">1s";
+        }
+        if (nanos >= 1_000_000L) {
+            return nanos / 1_000_000L + "ms";
+        }
+        return nanos / 1_000L + "µs";
+    }
+}
@@ -0,0 +1,32 @@
+package potionseeker.block_swap_advanced.mixin;
+
+import potionseeker.block_swap_advanced.swapper.PlacementCause;
+import net.minecraft.world.InteractionResult;
+import net.minecraft.world.item.BlockItem;
+import net.minecraft.world.item.context.BlockPlaceContext;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(BlockItem.class)
+public class MixinBlockItem {
+    private static final String PLACE_BLOCK = "Lnet/minecraft/world/item/BlockItem;placeBlock(Lnet/minecraft/world/item/context/BlockPlaceContext;Lnet/minecraft/world/level/block/state/BlockState;)Z";
+    // Beds and doors place their other half from here
+    private static final String SET_PLACED_BY = "Lnet/minecraft/world/level/block/Block;setPlacedBy(Lnet/minecraft/world/level/Level;Lnet/minecraft/core/BlockPos;Lnet/minecraft/world/level/block/state/BlockState;Lnet/minecraft/world/entity/LivingEntity;Lnet/minecraft/world/item/ItemStack;)V";
+
+    // Without a player, e.g. a dispenser placing a shulker box, the placement keeps the cause marked around it
+    @Inject(method = "place", at = {@At(value = "INVOKE", target = PLACE_BLOCK), @At(value = "INVOKE", target = SET_PLACED_BY)})
+    private void markPlayer(BlockPlaceContext context, CallbackInfoReturnable<InteractionResult> cir) {
+        if (context.getPlayer() != null) {
+            PlacementCause.push(PlacementCause.PLAYER);
+        }
+    }
+
+    @Inject(method = "place", at = {@At(value = "INVOKE", target = PLACE_BLOCK, shift = At.Shift.AFTER), @At(value = "INVOKE", target = SET_PLACED_BY, shift = At.Shift.AFTER)})
+    private void unmarkPlayer(BlockPlaceContext context, CallbackInfoReturnable<InteractionResult> cir) {
+        if (context.getPlayer() != null) {
+            PlacementCause.pop();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package potionseeker.block_swap_advanced.mixin;
+
+import potionseeker.block_swap_advanced.swapper.ProcessedChunk;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+
+import javax.annotation.Nullable;
+
+@Mixin(ChunkAccess.class)
+public abstract class MixinChunkAccess implements ProcessedChunk {
+    @Unique
+    @Nullable
+    private String blockSwap_processedHash;
+    @Unique
+    @Nullable
+    private long[] blockSwap_processedRules;
+
+    @Nullable
+    @Override
+    public String blockSwap_getProcessedHash() {
+        return blockSwap_processedHash;
+    }
+
+    @Override
+    public void blockSwap_setProcessedHash(@Nullable String configHash) {
+        blockSwap_processedHash = configHash;
+    }
+
+    @Nullable
+    @Override
+    public long[] blockSwap_getProcessedRules() {
+        return blockSwap_processedRules;
+    }
+
+    @Override
+    public void blockSwap_setProcessedRules(@Nullable long[] ruleFingerprints) {
+        blockSwap_processedRules = ruleFingerprints;
+    }
+}
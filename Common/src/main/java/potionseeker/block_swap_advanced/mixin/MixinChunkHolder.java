@@ -1,8 +1,9 @@
 package potionseeker.block_swap_advanced.mixin;
 
 import potionseeker.block_swap_advanced.BlockSwap;
-import potionseeker.block_swap_advanced.ProcessedChunksData;
 import potionseeker.block_swap_advanced.config.BlockSwapConfig;
+import potionseeker.block_swap_advanced.swapper.ProcessedChunks;
+import potionseeker.block_swap_advanced.swapper.RetroGenScheduler;
 import potionseeker.block_swap_advanced.swapper.Swapper;
 import net.minecraft.server.level.ChunkHolder;
 import net.minecraft.server.level.ServerLevel;
@@ -22,14 +23,6 @@ public class MixinChunkHolder {
         }
 
         BlockSwapConfig config = BlockSwapConfig.getConfig(false);
-        ProcessedChunksData data = BlockSwap.getProcessedChunksData(serverLevel);
-        String newConfigHash = Integer.toString(config.swapEntries().hashCode());
-
-        // Update config hash if redoGen is enabled and hash has changed
-        if (config.redoGen() && !newConfigHash.equals(data.getConfigHash())) {
-            data.updateConfigHash(newConfigHash);
-            BlockSwap.LOGGER.debug("Updated config hash to {} during chunk processing for {}", newConfigHash, chunk.getPos());
-        }
 
         // Check if chunk is within chunk_swap_range
         boolean withinRange = Swapper.isWithinChunkSwapRange(serverLevel, chunk.getPos(), config.chunkSwapRange());
@@ -38,17 +31,11 @@ public class MixinChunkHolder {
             return;
         }
 
-        // Process chunks for retroGen or redoGen
-        if (config.retroGen() && !data.isChunkProcessed(chunk.getPos())) {
-            BlockSwap.LOGGER.debug("Processing chunk {} for retro_gen", chunk.getPos());
-            Swapper.runRetroGenerator(chunk);
-            data.markChunkProcessed(chunk.getPos());
-            data.markProcessedThisSession(chunk.getPos());
-        } else if (config.redoGen() && !data.wasProcessedThisSession(chunk.getPos())) {
-            BlockSwap.LOGGER.debug("Processing chunk {} for redo_gen", chunk.getPos());
-            Swapper.runRetroGenerator(chunk);
-            data.markChunkProcessed(chunk.getPos());
-            data.markProcessedThisSession(chunk.getPos());
+        // Queue chunks for retroGen or redoGen; RetroGenScheduler works through them within the tick budget
+        if (config.retroGen() && !ProcessedChunks.isProcessed(chunk, config.redoGen())) {
+            RetroGenScheduler.enqueue(serverLevel, chunk);
+        } else if (config.redoGen() && !ProcessedChunks.isProcessedUnderCurrentConfig(chunk)) {
+            RetroGenScheduler.enqueue(serverLevel, chunk);
         }
     }
 }
\ No newline at end of file
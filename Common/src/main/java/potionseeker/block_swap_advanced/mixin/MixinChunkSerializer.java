@@ -1,21 +1,21 @@
 package potionseeker.block_swap_advanced.mixin;
 
+import potionseeker.block_swap_advanced.census.ChunkCensusData;
 import potionseeker.block_swap_advanced.config.MissingBlockIDsConfig;
-import net.minecraft.core.registries.BuiltInRegistries;
+import potionseeker.block_swap_advanced.swapper.ProcessedChunks;
 import net.minecraft.nbt.CompoundTag;
-import net.minecraft.nbt.ListTag;
-import net.minecraft.nbt.Tag;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.entity.ai.village.poi.PoiManager;
 import net.minecraft.world.level.ChunkPos;
-import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.LevelChunk;
 import net.minecraft.world.level.chunk.ProtoChunk;
 import net.minecraft.world.level.chunk.storage.ChunkSerializer;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.Redirect;
-
-import java.util.Map;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
 @Mixin(ChunkSerializer.class)
 public class MixinChunkSerializer {
@@ -30,17 +30,27 @@ public class MixinChunkSerializer {
     private static CompoundTag repairStates(CompoundTag tag, String key) {
         CompoundTag blockStates = tag.getCompound(key);
         if (key.equals("block_states")) {
-            Map<String, Block> idRemapper = MissingBlockIDsConfig.getConfig(false).idRemapper();
-            for (Tag paletteTag : blockStates.getList("palette", Tag.TAG_COMPOUND)) {
-                if (paletteTag instanceof CompoundTag paletteEntry) {
-                    String name = paletteEntry.getString("Name");
-                    if (idRemapper.containsKey(name)) {
-                        paletteEntry.remove("Name");
-                        paletteEntry.putString("Name", BuiltInRegistries.BLOCK.getKey(idRemapper.get(name)).toString());
-                    }
-                }
-            }
+            MissingBlockIDsConfig.getConfig(false).repairPalette(blockStates);
         }
         return blockStates;
     }
-}
\ No newline at end of file
+
+    @Inject(
+            method = "read(Lnet/minecraft/server/level/ServerLevel;Lnet/minecraft/world/entity/ai/village/poi/PoiManager;Lnet/minecraft/world/level/ChunkPos;Lnet/minecraft/nbt/CompoundTag;)Lnet/minecraft/world/level/chunk/ProtoChunk;",
+            at = @At("RETURN")
+    )
+    private static void readProcessedState(ServerLevel level, PoiManager poiManager, ChunkPos pos, CompoundTag tag, CallbackInfoReturnable<ProtoChunk> cir) {
+        ProcessedChunks.read(level, cir.getReturnValue(), tag);
+    }
+
+    @Inject(
+            method = "write(Lnet/minecraft/server/level/ServerLevel;Lnet/minecraft/world/level/chunk/ChunkAccess;)Lnet/minecraft/nbt/CompoundTag;",
+            at = @At("RETURN")
+    )
+    private static void writeProcessedState(ServerLevel level, ChunkAccess chunk, CallbackInfoReturnable<CompoundTag> cir) {
+        ProcessedChunks.write(level, chunk, cir.getReturnValue());
+        if (chunk instanceof LevelChunk levelChunk) {
+            ChunkCensusData.load(level).update(levelChunk);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package potionseeker.block_swap_advanced.mixin;
+
+import potionseeker.block_swap_advanced.command.BlockSwapCommand;
+import com.mojang.brigadier.CommandDispatcher;
+import net.minecraft.commands.CommandBuildContext;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+// Registered here rather than through the loader events so Fabric and Forge share one registration path
+@Mixin(Commands.class)
+public class MixinCommands {
+    @Shadow
+    @Final
+    private CommandDispatcher<CommandSourceStack> dispatcher;
+
+    @Inject(method = "<init>", at = @At("RETURN"))
+    private void registerBlockSwapCommands(Commands.CommandSelection selection, CommandBuildContext context, CallbackInfo ci) {
+        BlockSwapCommand.register(dispatcher);
+    }
+}
@@ -0,0 +1,25 @@
+package potionseeker.block_swap_advanced.mixin;
+
+import potionseeker.block_swap_advanced.swapper.PlacementCause;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.block.DispenserBlock;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(DispenserBlock.class)
+public class MixinDispenserBlock {
+    private static final String DISPENSE = "Lnet/minecraft/core/dispenser/DispenseItemBehavior;dispense(Lnet/minecraft/core/BlockSource;Lnet/minecraft/world/item/ItemStack;)Lnet/minecraft/world/item/ItemStack;";
+
+    @Inject(method = "dispenseFrom", at = @At(value = "INVOKE", target = DISPENSE))
+    private void markDispenser(ServerLevel level, BlockPos pos, CallbackInfo ci) {
+        PlacementCause.push(PlacementCause.DISPENSER);
+    }
+
+    @Inject(method = "dispenseFrom", at = @At(value = "INVOKE", target = DISPENSE, shift = At.Shift.AFTER))
+    private void unmarkDispenser(ServerLevel level, BlockPos pos, CallbackInfo ci) {
+        PlacementCause.pop();
+    }
+}
@@ -0,0 +1,24 @@
+package potionseeker.block_swap_advanced.mixin;
+
+import potionseeker.block_swap_advanced.swapper.PlacementCause;
+import net.minecraft.world.entity.item.FallingBlockEntity;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(FallingBlockEntity.class)
+public class MixinFallingBlockEntity {
+    // The only block a falling block places from tick is itself, when it lands
+    private static final String SET_BLOCK = "Lnet/minecraft/world/level/Level;setBlock(Lnet/minecraft/core/BlockPos;Lnet/minecraft/world/level/block/state/BlockState;I)Z";
+
+    @Inject(method = "tick", at = @At(value = "INVOKE", target = SET_BLOCK))
+    private void markPhysics(CallbackInfo ci) {
+        PlacementCause.push(PlacementCause.PHYSICS);
+    }
+
+    @Inject(method = "tick", at = @At(value = "INVOKE", target = SET_BLOCK, shift = At.Shift.AFTER))
+    private void unmarkPhysics(CallbackInfo ci) {
+        PlacementCause.pop();
+    }
+}
@@ -1,8 +1,9 @@
 package potionseeker.block_swap_advanced.mixin;
 
 import potionseeker.block_swap_advanced.BlockSwap;
-import potionseeker.block_swap_advanced.ProcessedChunksData;
 import potionseeker.block_swap_advanced.config.BlockSwapConfig;
+import potionseeker.block_swap_advanced.swapper.ProcessedChunks;
+import potionseeker.block_swap_advanced.swapper.RetroGenScheduler;
 import potionseeker.block_swap_advanced.swapper.Swapper;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.chunk.LevelChunk;
@@ -22,21 +23,24 @@ public class MixinLevelChunkPostProcess {
         }
 
         BlockSwapConfig config = BlockSwapConfig.getConfig(false);
-        ProcessedChunksData data = BlockSwap.getProcessedChunksData(serverLevel);
-        String newConfigHash = Integer.toString(config.swapEntries().hashCode());
 
         // Run deferred swaps for new chunks
         Swapper.runDeferredSwaps(chunk);
 
-        // Run swaps for unprocessed chunks (retro_gen)
-        if (config.retroGen() && !data.isChunkProcessed(chunk.getPos())) {
+        // Queue unprocessed chunks for retro_gen; the chunk is marked processed once the scan is committed.
+        // New chunks outside chunk_swap_range were already swapped during generation, so they are marked right away.
+        boolean withinRange = Swapper.isWithinChunkSwapRange(serverLevel, chunk.getPos(), config.chunkSwapRange());
+        if (config.retroGen() && !ProcessedChunks.isProcessed(chunk, config.redoGen())) {
             BlockSwap.LOGGER.debug("Processing chunk {} for retro_gen", chunk.getPos());
-            Swapper.runRetroGenerator(chunk);
-            data.markChunkProcessed(chunk.getPos());
-        } else if (config.redoGen() && !newConfigHash.equals(data.getConfigHash()) && !data.wasProcessedThisSession(chunk.getPos())) {
+            if (withinRange) {
+                RetroGenScheduler.enqueue(serverLevel, chunk);
+            } else {
+                ProcessedChunks.markProcessed(chunk);
+            }
+        } else if (config.redoGen() && withinRange && !ProcessedChunks.isProcessedUnderCurrentConfig(chunk)) {
+            // Chunks out of range are left for MixinChunkHolder to queue once a player comes near
             BlockSwap.LOGGER.debug("Processing chunk {} for redo_gen", chunk.getPos());
-            Swapper.runRetroGenerator(chunk);
-            data.markProcessedThisSession(chunk.getPos());
+            RetroGenScheduler.enqueue(serverLevel, chunk);
         }
     }
 }
\ No newline at end of file
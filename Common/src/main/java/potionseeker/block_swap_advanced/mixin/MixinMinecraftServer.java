@@ -6,9 +6,13 @@ import com.mojang.serialization.Codec;
 import potionseeker.block_swap_advanced.BlockSwap;
 import potionseeker.block_swap_advanced.config.BlockSwapConfig;
 import potionseeker.block_swap_advanced.config.MissingBlockIDsConfig;
+import potionseeker.block_swap_advanced.process.BulkProcessor;
 import potionseeker.block_swap_advanced.serialization.BlockInfo;
 import potionseeker.block_swap_advanced.serialization.JanksonJsonOps;
 import potionseeker.block_swap_advanced.serialization.JanksonUtil;
+import potionseeker.block_swap_advanced.swapper.ChunkScanExecutor;
+import potionseeker.block_swap_advanced.swapper.PlacementCause;
+import potionseeker.block_swap_advanced.swapper.RetroGenScheduler;
 import potionseeker.block_swap_advanced.swapper.Swapper;
 import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.resources.ResourceLocation;
@@ -32,11 +36,24 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 
 @Mixin(MinecraftServer.class)
 public abstract class MixinMinecraftServer {
 
+    @Inject(method = "stopServer", at = @At("TAIL"))
+    private void blockSwap_stopServer(CallbackInfo ci) {
+        ChunkScanExecutor.shutdown();
+        BulkProcessor.clear();
+        RetroGenScheduler.clear();
+    }
+
+    @Inject(method = "tickServer", at = @At("HEAD"))
+    private void blockSwap_tickServer(BooleanSupplier hasTimeLeft, CallbackInfo ci) {
+        PlacementCause.reset();
+    }
+
     @Inject(
             method = "<init>(Ljava/lang/Thread;Lnet/minecraft/world/level/storage/LevelStorageSource$LevelStorageAccess;Lnet/minecraft/server/packs/repository/PackRepository;Lnet/minecraft/server/WorldStem;Ljava/net/Proxy;Lcom/mojang/datafixers/DataFixer;Lnet/minecraft/server/Services;Lnet/minecraft/server/level/progress/ChunkProgressListenerFactory;)V",
             at = @At("RETURN")
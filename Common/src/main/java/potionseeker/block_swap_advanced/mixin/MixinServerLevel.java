@@ -0,0 +1,55 @@
+package potionseeker.block_swap_advanced.mixin;
+
+import potionseeker.block_swap_advanced.ProcessedChunksData;
+import potionseeker.block_swap_advanced.ProcessedChunksLevel;
+import potionseeker.block_swap_advanced.census.CensusLevel;
+import potionseeker.block_swap_advanced.census.ChunkCensusData;
+import potionseeker.block_swap_advanced.process.BulkProcessor;
+import potionseeker.block_swap_advanced.swapper.RetroGenScheduler;
+import net.minecraft.server.level.ServerLevel;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import javax.annotation.Nullable;
+import java.util.function.BooleanSupplier;
+
+@Mixin(ServerLevel.class)
+public class MixinServerLevel implements CensusLevel, ProcessedChunksLevel {
+    @Unique
+    @Nullable
+    private ChunkCensusData blockSwap_census;
+    @Unique
+    @Nullable
+    private ProcessedChunksData blockSwap_processedChunks;
+
+    @Inject(method = "tick", at = @At("TAIL"))
+    private void tickRetroGenQueue(BooleanSupplier hasTimeLeft, CallbackInfo ci) {
+        RetroGenScheduler.tick((ServerLevel) (Object) this);
+        BulkProcessor.tick((ServerLevel) (Object) this);
+    }
+
+    @Nullable
+    @Override
+    public ChunkCensusData blockSwap_getCensus() {
+        return blockSwap_census;
+    }
+
+    @Override
+    public void blockSwap_setCensus(ChunkCensusData census) {
+        blockSwap_census = census;
+    }
+
+    @Nullable
+    @Override
+    public ProcessedChunksData blockSwap_getProcessedChunks() {
+        return blockSwap_processedChunks;
+    }
+
+    @Override
+    public void blockSwap_setProcessedChunks(ProcessedChunksData processedChunks) {
+        blockSwap_processedChunks = processedChunks;
+    }
+}
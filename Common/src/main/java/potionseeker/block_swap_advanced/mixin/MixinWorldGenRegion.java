@@ -12,8 +12,6 @@ import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.ModifyArg;
 
-import java.util.List;
-
 @Mixin(WorldGenRegion.class)
 public abstract class MixinWorldGenRegion {
     private static final Logger LOGGER = LogManager.getLogger("BlockSwap");
@@ -32,8 +30,7 @@ public abstract class MixinWorldGenRegion {
         BlockSwapConfig config = BlockSwapConfig.getConfig(false);
 
         // Check if the block state is eligible for swapping
-        List<Swapper.SwapEntry> entries = Swapper.getEntriesForBlock(state.getBlock());
-        if (entries != null && !entries.isEmpty()) {
+        if (Swapper.isSwapCandidate(state)) {
             BlockState newState = Swapper.remapState(state, level, pos, false);
             if (!newState.equals(state)) {
                 if (newState == null || newState.isAir()) {
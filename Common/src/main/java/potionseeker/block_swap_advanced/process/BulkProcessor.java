@@ -0,0 +1,448 @@
+package potionseeker.block_swap_advanced.process;
+
+import potionseeker.block_swap_advanced.BlockSwap;
+import potionseeker.block_swap_advanced.census.BlockCensus;
+import potionseeker.block_swap_advanced.census.ChunkCensusData;
+import potionseeker.block_swap_advanced.region.RegionFileReader;
+import potionseeker.block_swap_advanced.swapper.ChunkScanExecutor;
+import potionseeker.block_swap_advanced.swapper.ProcessedChunks;
+import potionseeker.block_swap_advanced.swapper.SwapPhase;
+import potionseeker.block_swap_advanced.swapper.SwapTable;
+import potionseeker.block_swap_advanced.swapper.Swapper;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.minecraft.SharedConstants;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtUtils;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.TicketType;
+import net.minecraft.util.Mth;
+import net.minecraft.util.profiling.ProfilerFiller;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.chunk.ChunkStatus;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.storage.ChunkSerializer;
+import net.minecraft.world.level.dimension.DimensionType;
+import net.minecraft.world.level.storage.LevelResource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * Runs the retro pass over every saved chunk of a dimension for {@code /blockswap process}, instead of waiting for
+ * players to visit them. Chunks are enumerated from the dimension's region files, one region at a time and nearest
+ * region to the centre first. A chunk is ruled out without loading it where possible: by its block census, then by
+ * its saved NBT, which tells whether it is fully generated, whether it was already processed under the current config
+ * and which rules it still needs. The rest are loaded with a {@link #TICKET} as full, non-ticking chunks, handed to
+ * {@link Swapper#processExistingChunk} and released once they are marked processed.
+ * <p>
+ * At most the job's concurrency of chunks are in flight at once, fewer as MSPT gets close to 50 ms and none while the
+ * server is over it, so the job slows down before it makes a busy server lag. Progress lives in {@link ProcessJobData}
+ * and resumes with the region the job was working on after a restart or crash.
+ */
+public final class BulkProcessor {
+    public static final TicketType<ChunkPos> TICKET = TicketType.create(BlockSwap.MOD_ID + ":process", Comparator.comparingLong(ChunkPos::toLong));
+    public static final int DEFAULT_CONCURRENCY = 8;
+    private static final Map<ResourceKey<Level>, Job> JOBS = new HashMap<>();
+    private static final int CURRENT_DATA_VERSION = SharedConstants.getCurrentVersion().getDataVersion().getVersion();
+    private static final float FULL_BUDGET_MSPT = 35.0F;
+    private static final float TARGET_MSPT = 50.0F;
+    private static final int LOAD_TIMEOUT_TICKS = 1200;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int REPORT_INTERVAL_TICKS = 1200;
+
+    private BulkProcessor() {}
+
+    /**
+     * Starts processing the saved chunks of a level.
+     *
+     * @param radius the square radius in chunks around {@code center}, or negative for the whole dimension
+     * @return the number of region files to go through
+     * @throws IllegalStateException if the level is already being processed, or no rule is applied by retro_gen
+     * @throws IOException if the level's region files can't be listed
+     */
+    public static int start(ServerLevel level, ChunkPos center, int radius, int concurrency) throws IOException {
+        Job job = job(level);
+        if (job.data.isActive()) {
+            throw new IllegalStateException(level.dimension().location() + " is already being processed");
+        }
+        if (Swapper.table(SwapPhase.RETRO).isEmpty()) {
+            throw new IllegalStateException("No rule is applied by retro_gen, so there is nothing to process");
+        }
+        List<long[]> regions = new ArrayList<>();
+        Path regionDir = regionDir(level);
+        if (Files.isDirectory(regionDir)) {
+            try (Stream<Path> files = Files.list(regionDir)) {
+                for (Path file : files.filter(RegionFileReader::isRegionFile).toList()) {
+                    String[] parts = file.getFileName().toString().split("\\.");
+                    int regionX = Integer.parseInt(parts[1]);
+                    int regionZ = Integer.parseInt(parts[2]);
+                    int minX = regionX << 5;
+                    int minZ = regionZ << 5;
+                    if (radius >= 0 && (minX > center.x + radius || minX + 31 < center.x - radius || minZ > center.z + radius || minZ + 31 < center.z - radius)) {
+                        continue;
+                    }
+                    long dx = minX + 16 - center.x;
+                    long dz = minZ + 16 - center.z;
+                    regions.add(new long[]{dx * dx + dz * dz, ChunkPos.asLong(regionX, regionZ)});
+                }
+            }
+        }
+        regions.sort(Comparator.comparingLong(region -> region[0]));
+        job.reset();
+        job.data.begin(center, radius, concurrency, regions.stream().mapToLong(region -> region[1]).toArray());
+        BlockSwap.LOGGER.info("Processing {} region files of {} around chunk {} ({})", regions.size(), level.dimension().location(), center,
+                radius < 0 ? "all chunks" : "radius " + radius);
+        return regions.size();
+    }
+
+    /**
+     * Stops the level's job and forgets its progress. Chunks in flight are released; those already submitted still
+     * finish their retro pass.
+     *
+     * @return false if the level wasn't being processed
+     */
+    public static boolean stop(ServerLevel level) {
+        Job job = job(level);
+        if (!job.data.isActive()) {
+            return false;
+        }
+        job.reset();
+        job.data.clear();
+        BlockSwap.LOGGER.info("Stopped processing {}", level.dimension().location());
+        return true;
+    }
+
+    public static List<String> status(ServerLevel level) {
+        Job job = job(level);
+        ProcessJobData data = job.data;
+        List<String> lines = new ArrayList<>();
+        if (!data.isActive()) {
+            lines.add(level.dimension().location() + " is not being processed");
+            return lines;
+        }
+        lines.add(String.format(Locale.ROOT, "Processing %s around chunk [%d, %d] (%s): region %d of %d",
+                level.dimension().location(), data.centerX, data.centerZ, data.radius < 0 ? "all chunks" : "radius " + data.radius,
+                data.region + 1, data.regions.length));
+        lines.add(String.format(Locale.ROOT, "%d chunks processed, %d skipped without loading, %d failed, %d in flight (up to %d)",
+                data.processed, data.skipped, data.failed, job.inFlight.size(), data.concurrency));
+        return lines;
+    }
+
+    /**
+     * Advances the level's job, if it has one. Called at the end of every level tick.
+     */
+    public static void tick(ServerLevel level) {
+        Job job = job(level);
+        if (!job.data.isActive()) {
+            return;
+        }
+        ProfilerFiller profiler = level.getProfiler();
+        profiler.push(BlockSwap.MOD_ID + ":process");
+        job.tick(concurrencyLimit(level, job.data.concurrency));
+        profiler.pop();
+    }
+
+    /**
+     * Forgets every level's job. Called when the server stops; the saved progress picks the jobs up again on the next
+     * start.
+     */
+    public static void clear() {
+        JOBS.clear();
+    }
+
+    private static Job job(ServerLevel level) {
+        Job job = JOBS.get(level.dimension());
+        if (job == null || job.level != level) {
+            job = new Job(level, ProcessJobData.load(level));
+            JOBS.put(level.dimension(), job);
+        }
+        return job;
+    }
+
+    private static int concurrencyLimit(ServerLevel level, int concurrency) {
+        float mspt = level.getServer().getAverageTickTime();
+        float scale = Mth.clamp((TARGET_MSPT - mspt) / (TARGET_MSPT - FULL_BUDGET_MSPT), 0.0F, 1.0F);
+        return Math.round(concurrency * scale);
+    }
+
+    private static Path regionDir(ServerLevel level) {
+        return DimensionType.getStorageFolder(level.dimension(), level.getServer().getWorldPath(LevelResource.ROOT)).resolve("region");
+    }
+
+    private enum Stage {
+        READING,
+        LOADING,
+        PROCESSING
+    }
+
+    private static final class Chunk {
+        final int index;
+        final ChunkPos pos;
+        Stage stage;
+        CompletableFuture<Optional<CompoundTag>> read;
+        int ticks;
+        int attempts;
+
+        Chunk(int index, ChunkPos pos) {
+            this.index = index;
+            this.pos = pos;
+        }
+    }
+
+    private static final class Job {
+        private final ServerLevel level;
+        private final ProcessJobData data;
+        private final List<Chunk> inFlight = new ArrayList<>();
+        // Indices of the current region's chunks that are still to be started
+        private int[] pending = new int[0];
+        private int cursor;
+        private int openRegion = -1;
+        private int ticksSinceReport;
+        private int processedSinceReport;
+
+        Job(ServerLevel level, ProcessJobData data) {
+            this.level = level;
+            this.data = data;
+        }
+
+        void tick(int limit) {
+            advance();
+            if (openRegion != data.region) {
+                openRegion();
+            }
+            while (cursor >= pending.length && inFlight.isEmpty() && data.isActive()) {
+                data.nextRegion();
+                openRegion();
+            }
+            if (!data.isActive()) {
+                BlockSwap.LOGGER.info("Finished processing {}: {} chunks processed, {} skipped without loading, {} failed",
+                        level.dimension().location(), data.processed, data.skipped, data.failed);
+                data.clear();
+                reset();
+                return;
+            }
+            if (limit > 0) {
+                SwapTable table = Swapper.table(SwapPhase.RETRO);
+                boolean[] activeRules = Swapper.activeRules(table, level, SwapPhase.RETRO);
+                while (inFlight.size() < limit && cursor < pending.length) {
+                    start(pending[cursor++], table, activeRules);
+                }
+            }
+
+            if (++ticksSinceReport >= REPORT_INTERVAL_TICKS) {
+                BlockSwap.LOGGER.info("Processing {}: region {} of {}, {} chunks/s processed, {} processed, {} skipped without loading, {} failed",
+                        level.dimension().location(), data.region + 1, data.regions.length, processedSinceReport * 20 / ticksSinceReport,
+                        data.processed, data.skipped, data.failed);
+                ticksSinceReport = 0;
+                processedSinceReport = 0;
+            }
+        }
+
+        /**
+         * Releases every chunk in flight and forgets the open region.
+         */
+        void reset() {
+            for (Chunk chunk : inFlight) {
+                if (chunk.stage != Stage.READING) {
+                    level.getChunkSource().removeRegionTicket(TICKET, chunk.pos, 0, chunk.pos);
+                }
+            }
+            inFlight.clear();
+            pending = new int[0];
+            cursor = 0;
+            openRegion = -1;
+        }
+
+        private void openRegion() {
+            openRegion = data.region;
+            pending = new int[0];
+            cursor = 0;
+            if (!data.isActive()) {
+                return;
+            }
+            long region = data.regions[data.region];
+            Path file = regionDir(level).resolve("r." + ChunkPos.getX(region) + "." + ChunkPos.getZ(region) + ".mca");
+            if (!Files.isRegularFile(file)) {
+                return;
+            }
+            IntArrayList chunks = new IntArrayList();
+            try (RegionFileReader reader = RegionFileReader.open(file)) {
+                for (int index = 0; index < RegionFileReader.CHUNKS_PER_REGION; index++) {
+                    ChunkPos pos = reader.chunkPos(index);
+                    if (reader.hasChunk(index) && !data.isDone(index) && data.isInRadius(pos.x, pos.z)) {
+                        chunks.add(index);
+                    }
+                }
+            } catch (IOException e) {
+                BlockSwap.LOGGER.error("Skipping {} while processing {}: {}", file, level.dimension().location(), e.getMessage());
+            }
+            pending = chunks.toIntArray();
+        }
+
+        private void start(int index, SwapTable table, boolean[] activeRules) {
+            long region = data.regions[data.region];
+            Chunk chunk = new Chunk(index, new ChunkPos((ChunkPos.getX(region) << 5) + (index & 31), (ChunkPos.getZ(region) << 5) + (index >> 5)));
+            if (level.getChunkSource().getChunkNow(chunk.pos.x, chunk.pos.z) != null) {
+                // Already loaded, possibly with changes its saved NBT and census don't have yet
+                load(chunk);
+            } else if (!mayMatch(chunk.pos, table, activeRules)) {
+                skip(chunk);
+                return;
+            } else {
+                chunk.stage = Stage.READING;
+                chunk.read = level.getChunkSource().chunkMap.read(chunk.pos);
+            }
+            inFlight.add(chunk);
+        }
+
+        private void advance() {
+            Iterator<Chunk> iterator = inFlight.iterator();
+            while (iterator.hasNext()) {
+                Chunk chunk = iterator.next();
+                chunk.ticks++;
+                switch (chunk.stage) {
+                    case READING -> {
+                        if (!chunk.read.isDone()) {
+                            continue;
+                        }
+                        if (needsLoading(chunk)) {
+                            load(chunk);
+                        } else {
+                            iterator.remove();
+                            skip(chunk);
+                        }
+                    }
+                    case LOADING -> {
+                        LevelChunk levelChunk = level.getChunkSource().getChunkNow(chunk.pos.x, chunk.pos.z);
+                        if (levelChunk != null) {
+                            chunk.stage = Stage.PROCESSING;
+                            chunk.attempts = 1;
+                            Swapper.processExistingChunk(level, levelChunk);
+                        } else if (chunk.ticks > LOAD_TIMEOUT_TICKS) {
+                            BlockSwap.LOGGER.warn("Chunk {} of {} didn't load within {} ticks, skipping it", chunk.pos, level.dimension().location(), LOAD_TIMEOUT_TICKS);
+                            iterator.remove();
+                            fail(chunk);
+                        }
+                    }
+                    case PROCESSING -> {
+                        LevelChunk levelChunk = level.getChunkSource().getChunkNow(chunk.pos.x, chunk.pos.z);
+                        if (levelChunk == null) {
+                            // Dropped despite the ticket; wait for it to come back
+                            chunk.stage = Stage.LOADING;
+                            chunk.ticks = 0;
+                            continue;
+                        }
+                        if (ChunkScanExecutor.isInFlight(level, chunk.pos)) {
+                            continue;
+                        }
+                        if (ProcessedChunks.isProcessedUnderCurrentConfig(levelChunk)) {
+                            iterator.remove();
+                            release(chunk);
+                            data.processed++;
+                            processedSinceReport++;
+                            data.markDone(chunk.index);
+                        } else if (chunk.attempts < MAX_ATTEMPTS) {
+                            // The scan was discarded because the chunk changed while it ran
+                            chunk.attempts++;
+                            Swapper.processExistingChunk(level, levelChunk);
+                        } else {
+                            BlockSwap.LOGGER.warn("Chunk {} of {} kept changing while it was scanned, skipping it", chunk.pos, level.dimension().location());
+                            iterator.remove();
+                            fail(chunk);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Decides from a chunk's saved NBT whether it has to be loaded at all.
+         */
+        private boolean needsLoading(Chunk chunk) {
+            Optional<CompoundTag> read;
+            try {
+                read = chunk.read.join();
+            } catch (RuntimeException e) {
+                // Let the game's own loading deal with it
+                return true;
+            }
+            if (read.isEmpty()) {
+                return false;
+            }
+            CompoundTag tag = read.get();
+            if (NbtUtils.getDataVersion(tag, -1) != CURRENT_DATA_VERSION) {
+                // Its status and stamp can only be trusted once the game has upgraded it
+                return true;
+            }
+            if (ChunkSerializer.getChunkTypeFromTag(tag) != ChunkStatus.ChunkType.LEVELCHUNK) {
+                // Swapped as it finishes generating
+                return false;
+            }
+            if (ProcessedChunks.isProcessedUnderCurrentConfig(tag)) {
+                return false;
+            }
+            SwapTable table = Swapper.table(SwapPhase.RETRO);
+            boolean[] rules = Swapper.activeRules(table, level, SwapPhase.RETRO);
+            boolean[] pendingRules = ProcessedChunks.pendingRules(tag, Swapper.ruleFingerprints());
+            if (pendingRules != null) {
+                for (int ruleId = 0; ruleId < rules.length; ruleId++) {
+                    rules[ruleId] &= pendingRules[ruleId];
+                }
+            }
+            return mayMatch(chunk.pos, table, rules);
+        }
+
+        /**
+         * @return false if none of the rules can swap anything in the chunk, going by its census if it has one
+         */
+        private boolean mayMatch(ChunkPos pos, SwapTable table, boolean[] rules) {
+            boolean anyRule = false;
+            for (boolean rule : rules) {
+                anyRule |= rule;
+            }
+            if (!anyRule) {
+                return false;
+            }
+            long[] sections = ChunkCensusData.load(level).sections(pos);
+            return sections == null || BlockCensus.mayMatch(sections, table, rules, table.probabilities(level));
+        }
+
+        private void load(Chunk chunk) {
+            chunk.stage = Stage.LOADING;
+            chunk.ticks = 0;
+            level.getChunkSource().addRegionTicket(TICKET, chunk.pos, 0, chunk.pos);
+        }
+
+        private void release(Chunk chunk) {
+            level.getChunkSource().removeRegionTicket(TICKET, chunk.pos, 0, chunk.pos);
+        }
+
+        private void skip(Chunk chunk) {
+            data.skipped++;
+            data.markDone(chunk.index);
+        }
+
+        /**
+         * Gives up on a loaded chunk; retro_gen still picks it up when a player visits it.
+         */
+        private void fail(Chunk chunk) {
+            release(chunk);
+            data.failed++;
+            data.markDone(chunk.index);
+        }
+    }
+}
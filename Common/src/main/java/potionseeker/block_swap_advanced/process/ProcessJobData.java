@@ -0,0 +1,118 @@
+package potionseeker.block_swap_advanced.process;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.saveddata.SavedData;
+
+import java.util.Arrays;
+
+/**
+ * The checkpoint of a level's {@code /blockswap process} job: the regions it covers, nearest to its centre first,
+ * the region it is working on and which chunks of that region are done. It is saved with the rest of the level's data,
+ * so a server that stops or crashes picks the job up again from the same autosave as its chunks.
+ */
+public class ProcessJobData extends SavedData {
+    private static final String DATA_NAME = "block_swap_process";
+    private static final int DONE_LONGS = ChunkPos.REGION_SIZE * ChunkPos.REGION_SIZE / Long.SIZE;
+
+    int centerX;
+    int centerZ;
+    // Negative for every chunk of the dimension
+    int radius = -1;
+    int concurrency;
+    // ChunkPos.asLong(regionX, regionZ) of every region the job covers, in the order they are processed
+    long[] regions = new long[0];
+    int region;
+    final long[] done = new long[DONE_LONGS];
+    long processed;
+    long skipped;
+    long failed;
+
+    private ProcessJobData() {}
+
+    public static ProcessJobData load(ServerLevel level) {
+        return level.getDataStorage().computeIfAbsent(ProcessJobData::load, ProcessJobData::new, DATA_NAME);
+    }
+
+    private static ProcessJobData load(CompoundTag tag) {
+        ProcessJobData data = new ProcessJobData();
+        data.centerX = tag.getInt("CenterX");
+        data.centerZ = tag.getInt("CenterZ");
+        data.radius = tag.getInt("Radius");
+        data.concurrency = tag.getInt("Concurrency");
+        data.regions = tag.getLongArray("Regions");
+        data.region = tag.getInt("Region");
+        long[] done = tag.getLongArray("Done");
+        if (done.length == DONE_LONGS) {
+            System.arraycopy(done, 0, data.done, 0, DONE_LONGS);
+        }
+        data.processed = tag.getLong("Processed");
+        data.skipped = tag.getLong("Skipped");
+        data.failed = tag.getLong("Failed");
+        return data;
+    }
+
+    public boolean isActive() {
+        return region < regions.length;
+    }
+
+    void begin(ChunkPos center, int radius, int concurrency, long[] regions) {
+        this.centerX = center.x;
+        this.centerZ = center.z;
+        this.radius = radius;
+        this.concurrency = concurrency;
+        this.regions = regions;
+        this.region = 0;
+        this.processed = 0;
+        this.skipped = 0;
+        this.failed = 0;
+        clearDone();
+        setDirty();
+    }
+
+    void nextRegion() {
+        region++;
+        clearDone();
+        setDirty();
+    }
+
+    void clear() {
+        regions = new long[0];
+        region = 0;
+        clearDone();
+        setDirty();
+    }
+
+    boolean isDone(int index) {
+        return (done[index >>> 6] & 1L << index) != 0;
+    }
+
+    void markDone(int index) {
+        done[index >>> 6] |= 1L << index;
+        setDirty();
+    }
+
+    boolean isInRadius(int chunkX, int chunkZ) {
+        return radius < 0 || Math.max(Math.abs(chunkX - centerX), Math.abs(chunkZ - centerZ)) <= radius;
+    }
+
+    private void clearDone() {
+        Arrays.fill(done, 0L);
+    }
+
+    @Override
+    public CompoundTag save(CompoundTag tag) {
+        tag.putInt("CenterX", centerX);
+        tag.putInt("CenterZ", centerZ);
+        tag.putInt("Radius", radius);
+        tag.putInt("Concurrency", concurrency);
+        tag.putLongArray("Regions", regions);
+        tag.putInt("Region", region);
+        tag.putLongArray("Done", done);
+        tag.putLong("Processed", processed);
+        tag.putLong("Skipped", skipped);
+        tag.putLong("Failed", failed);
+        return tag;
+    }
+}
@@ -0,0 +1,261 @@
+package potionseeker.block_swap_advanced.region;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.world.level.ChunkPos;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads chunks out of an Anvil {@code .mca} region file without ever writing to it. Vanilla's {@code RegionFile}
+ * opens the file for writing and pads or repairs it, which an offline tool pointed at a production world must not
+ * do. Handles the gzip, zlib and uncompressed chunk formats, including chunks stored in external {@code .mcc} files.
+ * <p>
+ * A reader opened with {@code mapped} maps the whole file once and serves every read from the mapping, which saves a
+ * system call and a copy per chunk when a tool goes through every chunk of the file.
+ */
+public final class RegionFileReader implements AutoCloseable {
+    public static final int CHUNKS_PER_REGION = 32 * 32;
+    private static final int SECTOR_BYTES = 4096;
+    private static final int CHUNK_HEADER_BYTES = 5;
+    private static final int EXTERNAL_FLAG = 128;
+    private static final Pattern REGION_NAME = Pattern.compile("^r\\.(-?\\d+)\\.(-?\\d+)\\.mca$");
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int regionX;
+    private final int regionZ;
+    private final int[] offsets = new int[CHUNKS_PER_REGION];
+    private final int[] timestamps = new int[CHUNKS_PER_REGION];
+    @Nullable
+    private final ByteBuffer mapping;
+
+    private RegionFileReader(Path path, FileChannel channel, int regionX, int regionZ, boolean mapped) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.regionX = regionX;
+        this.regionZ = regionZ;
+        long size = channel.size();
+        if (mapped && size > Integer.MAX_VALUE) {
+            throw new IOException(path.getFileName() + " is too large to be a region file");
+        }
+        this.mapping = mapped ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+        ByteBuffer header = ByteBuffer.allocate(CHUNKS_PER_REGION * 8);
+        if (size >= header.capacity()) {
+            readFully(header, 0);
+            header.flip();
+            header.asIntBuffer().get(offsets).get(timestamps);
+        }
+    }
+
+    /**
+     * @throws IOException if the file name isn't {@code r.<x>.<z>.mca} or the file can't be opened
+     */
+    public static RegionFileReader open(Path path) throws IOException {
+        return open(path, false);
+    }
+
+    /**
+     * @param mapped whether to memory-map the file rather than read it chunk by chunk
+     * @throws IOException if the file name isn't {@code r.<x>.<z>.mca} or the file can't be opened
+     */
+    public static RegionFileReader open(Path path, boolean mapped) throws IOException {
+        Matcher matcher = REGION_NAME.matcher(path.getFileName().toString());
+        if (!matcher.matches()) {
+            throw new IOException("Not a region file name: " + path.getFileName());
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new RegionFileReader(path, channel, Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)), mapped);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public static boolean isRegionFile(Path path) {
+        return REGION_NAME.matcher(path.getFileName().toString()).matches();
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public int regionX() {
+        return regionX;
+    }
+
+    public int regionZ() {
+        return regionZ;
+    }
+
+    /**
+     * @param index the chunk's index in the header, {@code localX + localZ * 32}
+     */
+    public ChunkPos chunkPos(int index) {
+        return new ChunkPos((regionX << 5) + (index & 31), (regionZ << 5) + (index >> 5));
+    }
+
+    public boolean hasChunk(int index) {
+        return offsets[index] != 0;
+    }
+
+    /**
+     * @return when the chunk was last saved, in seconds since the epoch
+     */
+    public int timestamp(int index) {
+        return timestamps[index];
+    }
+
+    /**
+     * @return where the chunk's data lives if it is too large for the region file
+     */
+    public Path externalFile(int index) {
+        ChunkPos pos = chunkPos(index);
+        return path.resolveSibling("c." + pos.x + "." + pos.z + ".mcc");
+    }
+
+    /**
+     * The chunk as stored in the region file: its length, compression type and compressed data, ready to be copied into
+     * another region file as is. Chunks stored externally are only the five byte stub pointing at
+     * {@link #externalFile}. From a mapped reader the buffer is a read-only view of the mapping.
+     *
+     * @return the stored chunk, or null if the region has no chunk at that index
+     * @throws IOException if the stored length doesn't fit the chunk's sectors
+     */
+    @Nullable
+    public ByteBuffer rawChunk(int index) throws IOException {
+        int offset = offsets[index];
+        if (offset == 0) {
+            return null;
+        }
+        long start = (long) (offset >>> 8) * SECTOR_BYTES;
+        int sectors = offset & 0xFF;
+        ByteBuffer header = ByteBuffer.allocate(CHUNK_HEADER_BYTES);
+        readFully(header, start);
+        header.flip();
+        int length = header.getInt();
+        byte compression = header.get();
+        if (length <= 0 || (compression & EXTERNAL_FLAG) == 0 && length - 1 > sectors * SECTOR_BYTES - CHUNK_HEADER_BYTES) {
+            throw new IOException("Chunk " + chunkPos(index) + " in " + path.getFileName() + " has an invalid length " + length);
+        }
+        int stored = (compression & EXTERNAL_FLAG) != 0 ? CHUNK_HEADER_BYTES : CHUNK_HEADER_BYTES + length - 1;
+        if (mapping != null) {
+            if (start + stored > mapping.capacity()) {
+                throw new IOException("Unexpected end of " + path.getFileName());
+            }
+            return mapping.slice((int) start, stored).asReadOnlyBuffer();
+        }
+        ByteBuffer raw = ByteBuffer.allocate(stored);
+        readFully(raw, start);
+        return raw.flip();
+    }
+
+    /**
+     * @param index the chunk's index in the header, {@code localX + localZ * 32}
+     * @return the chunk's NBT, or null if the region has no chunk at that index
+     * @throws IOException if the chunk data is truncated, uses an unknown compression or is not valid NBT
+     */
+    @Nullable
+    public CompoundTag read(int index) throws IOException {
+        ByteBuffer stored = rawChunk(index);
+        if (stored == null) {
+            return null;
+        }
+        return read(index, stored);
+    }
+
+    /**
+     * Decodes a chunk previously returned by {@link #rawChunk}, so a tool that copies chunks doesn't read them twice.
+     */
+    public CompoundTag read(int index, ByteBuffer stored) throws IOException {
+        ByteBuffer data = stored.duplicate();
+        data.getInt();
+        byte compression = data.get();
+
+        InputStream raw;
+        if ((compression & EXTERNAL_FLAG) != 0) {
+            raw = new BufferedInputStream(Files.newInputStream(externalFile(index)));
+        } else {
+            raw = new ByteBufferInputStream(data);
+        }
+
+        try (DataInputStream input = new DataInputStream(decompress(compression & ~EXTERNAL_FLAG, raw))) {
+            return NbtIo.read(input);
+        }
+    }
+
+    private InputStream decompress(int compression, InputStream raw) throws IOException {
+        return switch (compression) {
+            case 1 -> new GZIPInputStream(raw);
+            case 2 -> new InflaterInputStream(raw);
+            case 3 -> raw;
+            default -> {
+                raw.close();
+                throw new IOException("Unknown chunk compression " + compression + " in " + path.getFileName());
+            }
+        };
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        if (mapping != null) {
+            if (position + buffer.remaining() > mapping.capacity()) {
+                throw new IOException("Unexpected end of " + path.getFileName());
+            }
+            buffer.put(mapping.slice((int) position, buffer.remaining()));
+            return;
+        }
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of " + path.getFileName());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package potionseeker.block_swap_advanced.swapper;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.core.QuartPos;
+import net.minecraft.util.Mth;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.BiomeManager;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainerRO;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The noise biomes around one chunk, copied on the server thread so chunk scans can resolve biomes on worker threads.
+ * Lookups go through the level's own {@link BiomeManager} zoom, so results match {@code Level.getBiome} exactly.
+ * The copy includes a one cell border because the zoom samples neighbouring cells, which also makes the palette the
+ * complete set of biomes any block of the chunk can resolve to.
+ */
+final class ChunkBiomeView implements BiomeManager.NoiseBiomeSource {
+    private static final int SIZE_XZ = 6;
+
+    private final int minQuartX;
+    private final int minQuartY;
+    private final int minQuartZ;
+    private final int sizeY;
+    private final short[] cells;
+    private final List<Holder<Biome>> palette = new ArrayList<>();
+    private final BiomeManager biomeManager;
+
+    private ChunkBiomeView(Level level, LevelChunk chunk) {
+        this.minQuartX = QuartPos.fromSection(chunk.getPos().x) - 1;
+        this.minQuartZ = QuartPos.fromSection(chunk.getPos().z) - 1;
+        this.minQuartY = QuartPos.fromBlock(level.getMinBuildHeight()) - 1;
+        this.sizeY = QuartPos.fromBlock(level.getHeight()) + 2;
+        this.cells = new short[SIZE_XZ * SIZE_XZ * sizeY];
+
+        // The chunk's own cells come straight from the section biome containers, one section at a time
+        LevelChunkSection[] sections = chunk.getSections();
+        for (int i = 0; i < sections.length; i++) {
+            PalettedContainerRO<Holder<Biome>> sectionBiomes = sections[i].getBiomes();
+            for (int x = 0; x < 4; x++) {
+                for (int y = 0; y < 4; y++) {
+                    for (int z = 0; z < 4; z++) {
+                        cells[index(x + 1, i * 4 + y + 1, z + 1)] = paletteId(sectionBiomes.get(x, y, z));
+                    }
+                }
+            }
+        }
+
+        // The border comes from the level, and above and below the world the nearest section is repeated like
+        // ChunkAccess.getNoiseBiome does
+        for (int x = 0; x < SIZE_XZ; x++) {
+            for (int z = 0; z < SIZE_XZ; z++) {
+                boolean insideChunk = x > 0 && x < SIZE_XZ - 1 && z > 0 && z < SIZE_XZ - 1;
+                for (int y = 0; y < sizeY; y++) {
+                    if (insideChunk && y > 0 && y < sizeY - 1) {
+                        continue;
+                    }
+                    int quartX = minQuartX + x;
+                    int quartY = minQuartY + y;
+                    int quartZ = minQuartZ + z;
+                    cells[index(x, y, z)] = paletteId(insideChunk
+                            ? chunk.getNoiseBiome(quartX, quartY, quartZ)
+                            : level.getNoiseBiome(quartX, quartY, quartZ));
+                }
+            }
+        }
+        this.biomeManager = level.getBiomeManager().withDifferentSource(this);
+    }
+
+    static ChunkBiomeView capture(Level level, LevelChunk chunk) {
+        return new ChunkBiomeView(level, chunk);
+    }
+
+    Holder<Biome> getBiome(BlockPos pos) {
+        return biomeManager.getBiome(pos);
+    }
+
+    /**
+     * @return every biome that {@link #getBiome} can return for a block of this chunk
+     */
+    List<Holder<Biome>> presentBiomes() {
+        return palette;
+    }
+
+    @Override
+    public Holder<Biome> getNoiseBiome(int quartX, int quartY, int quartZ) {
+        int x = Mth.clamp(quartX - minQuartX, 0, SIZE_XZ - 1);
+        int y = Mth.clamp(quartY - minQuartY, 0, sizeY - 1);
+        int z = Mth.clamp(quartZ - minQuartZ, 0, SIZE_XZ - 1);
+        return palette.get(cells[index(x, y, z)]);
+    }
+
+    private short paletteId(Holder<Biome> biome) {
+        for (int i = 0; i < palette.size(); i++) {
+            if (palette.get(i) == biome) {
+                return (short) i;
+            }
+        }
+        palette.add(biome);
+        return (short) (palette.size() - 1);
+    }
+
+    private int index(int x, int y, int z) {
+        return (x * SIZE_XZ + z) * sizeY + y;
+    }
+}
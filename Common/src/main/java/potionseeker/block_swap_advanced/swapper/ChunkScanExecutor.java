@@ -0,0 +1,149 @@
+package potionseeker.block_swap_advanced.swapper;
+
+import potionseeker.block_swap_advanced.BlockSwap;
+import potionseeker.block_swap_advanced.metrics.SwapMetrics;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.util.profiling.ProfilerFiller;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.chunk.LevelChunk;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs retro-gen chunk scans on a small pool of worker threads and hands the results back to the server thread.
+ * A result is only committed if the chunk is still loaded and every block it wants to swap still holds the scanned
+ * state; otherwise it is dropped and the chunk is picked up again the next time it is visited.
+ */
+public final class ChunkScanExecutor {
+    private static final Map<ResourceKey<Level>, LevelScans> IN_FLIGHT = new HashMap<>();
+    private static ExecutorService executor = null;
+    private static int poolSize = 0;
+
+    private ChunkScanExecutor() {}
+
+    public interface Commit {
+        void accept(ServerLevel level, LevelChunk chunk, SwapBatch batch);
+    }
+
+    /**
+     * Resizes the worker pool. A negative thread count picks one thread per four cores, zero scans on the server thread.
+     */
+    public static synchronized void configure(int retroGenThreads) {
+        int threads = retroGenThreads < 0 ? Math.max(1, Runtime.getRuntime().availableProcessors() / 4) : retroGenThreads;
+        if (threads == poolSize && (executor != null || threads == 0)) {
+            return;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        poolSize = threads;
+        if (threads > 0) {
+            AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "BlockSwap-Scanner-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            });
+        }
+        BlockSwap.LOGGER.debug("Using {} retro-gen scanner thread(s)", threads);
+    }
+
+    /**
+     * Stops the worker pool and forgets every scan in flight. Called when the server stops, after which the results of
+     * those scans are never committed; the next server start builds a new pool from its config.
+     */
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        poolSize = 0;
+        IN_FLIGHT.clear();
+    }
+
+    /**
+     * @return true if a scan of this chunk has been handed out and not committed yet
+     */
+    public static boolean isInFlight(ServerLevel level, ChunkPos pos) {
+        LevelScans inFlight = IN_FLIGHT.get(level.dimension());
+        return inFlight != null && inFlight.level == level && inFlight.positions.contains(pos.toLong());
+    }
+
+    /**
+     * Scans the snapshot and commits the result on the server thread. Must be called on the server thread.
+     */
+    public static void submit(ServerLevel level, LevelChunk chunk, ChunkSnapshot snapshot, Commit commit) {
+        ExecutorService pool;
+        synchronized (ChunkScanExecutor.class) {
+            pool = executor;
+        }
+        if (pool == null) {
+            commit.accept(level, chunk, ChunkScanner.scan(snapshot));
+            return;
+        }
+
+        CompletableFuture<SwapBatch> scan;
+        try {
+            scan = CompletableFuture.supplyAsync(() -> ChunkScanner.scan(snapshot), pool);
+        } catch (RejectedExecutionException e) {
+            // The pool was swapped out by a config reload
+            commit.accept(level, chunk, ChunkScanner.scan(snapshot));
+            return;
+        }
+
+        long pos = snapshot.pos().toLong();
+        LevelScans inFlight = IN_FLIGHT.get(level.dimension());
+        if (inFlight == null || inFlight.level != level) {
+            inFlight = new LevelScans(level);
+            IN_FLIGHT.put(level.dimension(), inFlight);
+        }
+        inFlight.positions.add(pos);
+        scan.whenComplete((batch, error) -> level.getServer().execute(() -> {
+            LevelScans scans = IN_FLIGHT.get(level.dimension());
+            if (scans != null && scans.level == level) {
+                scans.positions.remove(pos);
+            }
+            if (error != null) {
+                BlockSwap.LOGGER.error("Failed to scan chunk {} for block swaps", snapshot.pos(), error);
+                return;
+            }
+            if (level.getChunkSource().getChunkNow(snapshot.pos().x, snapshot.pos().z) != chunk) {
+                BlockSwap.LOGGER.debug("Discarding scan of chunk {}: chunk was unloaded", snapshot.pos());
+                SwapMetrics.scanDiscarded();
+                return;
+            }
+            if (!batch.matches(chunk)) {
+                BlockSwap.LOGGER.debug("Discarding scan of chunk {}: chunk changed while it was scanned", snapshot.pos());
+                SwapMetrics.scanDiscarded();
+                return;
+            }
+            ProfilerFiller profiler = level.getProfiler();
+            profiler.push(BlockSwap.MOD_ID + ":commit_scan");
+            commit.accept(level, chunk, batch);
+            profiler.pop();
+        }));
+    }
+
+    private static final class LevelScans {
+        // A level loaded again after a restart is a new instance, so scans handed out for the old one never match it
+        private final ServerLevel level;
+        private final LongSet positions = new LongOpenHashSet();
+
+        LevelScans(ServerLevel level) {
+            this.level = level;
+        }
+    }
+}
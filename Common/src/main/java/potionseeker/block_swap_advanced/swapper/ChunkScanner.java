@@ -0,0 +1,186 @@
+package potionseeker.block_swap_advanced.swapper;
+
+import potionseeker.block_swap_advanced.BlockSwap;
+import potionseeker.block_swap_advanced.metrics.SwapMetrics;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.minecraft.world.level.levelgen.structure.Structure;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Finds the swaps in a {@link ChunkSnapshot}. Only reads the snapshot, so it is safe to run on a worker thread.
+ */
+public final class ChunkScanner {
+    private ChunkScanner() {}
+
+    public static SwapBatch scan(ChunkSnapshot snapshot) {
+        SwapBatch batch = new SwapBatch(snapshot.phase);
+        if (snapshot.isEmpty()) {
+            return batch;
+        }
+
+        long start = System.nanoTime();
+        int sectionsScanned = 0;
+        int sectionsSkipped = 0;
+        long blocksEvaluated = 0;
+
+        SwapTable table = snapshot.table;
+        BlockPos.MutableBlockPos blockPos = new BlockPos.MutableBlockPos();
+        int minX = SectionPos.sectionToBlockCoord(snapshot.pos.x);
+        int minZ = SectionPos.sectionToBlockCoord(snapshot.pos.z);
+
+        for (int i = 0; i < snapshot.sections.length; i++) {
+            PalettedContainer<BlockState> section = snapshot.sections[i];
+            if (section == null) {
+                sectionsSkipped++;
+                continue;
+            }
+            int sectionIndex = i;
+            PaletteCandidates paletteCandidates = PaletteCandidates.collect(section, table, ruleId -> snapshot.activeRules[ruleId] && snapshot.probabilities.canSwapInSection(ruleId, sectionIndex));
+            if (paletteCandidates.isEmpty()) {
+                sectionsSkipped++;
+                continue;
+            }
+            sectionsScanned++;
+
+            int bottomY = SectionPos.sectionToBlockCoord(snapshot.minSection + i);
+            for (int x = 0; x < 16; x++) {
+                for (int y = 0; y < 16; y++) {
+                    for (int z = 0; z < 16; z++) {
+                        BlockState state = section.get(x, y, z);
+                        SwapTable.Candidates candidates = paletteCandidates.get(state);
+                        if (candidates == null) {
+                            continue;
+                        }
+
+                        blockPos.set(minX + x, bottomY + y, minZ + z);
+                        blocksEvaluated++;
+                        Biome biome = null;
+                        BlockState newState = state;
+                        int swapRuleId = -1;
+                        for (int c = 0; c < candidates.size(); c++) {
+                            int ruleId = candidates.ruleId(c);
+                            float swapProbability = snapshot.probabilities.get(ruleId, bottomY + y);
+                            if (swapProbability <= 0.0F || swapProbability < 1.0F && SwapRandom.roll(snapshot.seed, blockPos.getX(), blockPos.getY(), blockPos.getZ(), snapshot.table.fingerprint(ruleId)) >= swapProbability) {
+                                continue;
+                            }
+
+                            RuleFilters.Filter filter = snapshot.filters.get(ruleId);
+                            if (snapshot.biomeChecked[ruleId]) {
+                                if (biome == null) {
+                                    biome = snapshot.biomes.getBiome(blockPos).value();
+                                }
+                                if (!filter.allowsBiome(biome)) {
+                                    continue;
+                                }
+                            }
+
+                            if (filter.filtersStructures() && !structureAllowed(snapshot, filter, blockPos)) {
+                                BlockSwap.LOGGER.debug("Structure filter blocked {} at {}", snapshot.phase.description(), blockPos.immutable());
+                                continue;
+                            }
+
+                            newState = candidates.target(c);
+                            swapRuleId = ruleId;
+                            break;
+                        }
+
+                        if (!newState.equals(state)) {
+                            if (snapshot.verboseLogging) {
+                                BlockSwap.LOGGER.info("Swapping {} to {} at {} during {}", state, newState, blockPos.immutable(), snapshot.phase.description());
+                            }
+                            batch.add(i, x, y, z, state, newState, swapRuleId);
+                        }
+                    }
+                }
+            }
+        }
+        long scanNanos = System.nanoTime() - start;
+        batch.recordScan(blocksEvaluated, scanNanos);
+        SwapMetrics.chunkScanned(snapshot.phase, sectionsScanned, sectionsSkipped, blocksEvaluated, scanNanos);
+        return batch;
+    }
+
+    private static boolean structureAllowed(ChunkSnapshot snapshot, RuleFilters.Filter filter, BlockPos pos) {
+        boolean structureAllowed = false;
+        for (Structure structure : filter.structureWhitelist()) {
+            if (snapshot.structures.isInside(structure, pos)) {
+                structureAllowed = true;
+                break;
+            }
+        }
+        if (structureAllowed) {
+            for (Structure structure : filter.structureBlacklist()) {
+                if (snapshot.structures.isInside(structure, pos)) {
+                    return false;
+                }
+            }
+        }
+        return structureAllowed;
+    }
+
+    /**
+     * The candidate rules for each distinct state stored in a section, narrowed down to the rules active in this pass.
+     * Sections usually hold only a handful of states, so an identity scan beats hashing every block.
+     */
+    private static final class PaletteCandidates {
+        private BlockState[] states = new BlockState[4];
+        private SwapTable.Candidates[] candidates = new SwapTable.Candidates[4];
+        private int size;
+
+        static PaletteCandidates collect(PalettedContainer<BlockState> section, SwapTable table, IntPredicate ruleFilter) {
+            PaletteCandidates paletteCandidates = new PaletteCandidates();
+            // Reads the palette itself rather than every block; a palette entry that is no longer stored only costs a
+            // candidate no block matches. The global palette can't be listed, so its states are counted from the blocks
+            boolean unlisted = section.maybeHas(state -> {
+                paletteCandidates.collect(state, table, ruleFilter);
+                return false;
+            });
+            if (unlisted) {
+                section.count((state, count) -> paletteCandidates.collect(state, table, ruleFilter));
+            }
+            return paletteCandidates;
+        }
+
+        private void collect(BlockState state, SwapTable table, IntPredicate ruleFilter) {
+            SwapTable.Candidates candidates = table.get(state);
+            if (candidates != null) {
+                SwapTable.Candidates active = candidates.filter(ruleFilter);
+                if (active != null) {
+                    add(state, active);
+                }
+            }
+        }
+
+        private void add(BlockState state, SwapTable.Candidates active) {
+            if (size == states.length) {
+                states = Arrays.copyOf(states, size * 2);
+                candidates = Arrays.copyOf(candidates, size * 2);
+            }
+            states[size] = state;
+            candidates[size] = active;
+            size++;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Nullable
+        SwapTable.Candidates get(BlockState state) {
+            for (int i = 0; i < size; i++) {
+                if (states[i] == state) {
+                    return candidates[i];
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package potionseeker.block_swap_advanced.swapper;
+
+import net.minecraft.core.Holder;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.minecraft.world.level.levelgen.structure.Structure;
+
+import javax.annotation.Nullable;
+
+/**
+ * Everything a chunk scan reads, captured on the server thread. Block states are copied per section, and only for
+ * sections whose palette holds a candidate state, so workers never touch the live chunk.
+ */
+public final class ChunkSnapshot {
+    final ChunkPos pos;
+    final long seed;
+    final int minBuildHeight;
+    final int maxBuildHeight;
+    final int minSection;
+    final SwapTable table;
+    final boolean[] activeRules;
+    final boolean verboseLogging;
+    final SwapPhase phase;
+    final PalettedContainer<BlockState>[] sections;
+    @Nullable
+    final ChunkBiomeView biomes;
+    @Nullable
+    final ChunkStructureView structures;
+    final RuleFilters filters;
+    final SwapProbabilities probabilities;
+    final boolean[] biomeChecked;
+    private final boolean empty;
+
+    @SuppressWarnings("unchecked")
+    private ChunkSnapshot(LevelChunk chunk, Level level, long seed, @Nullable StructureLookup structureLookup, SwapTable table, boolean[] activeRules, boolean verboseLogging, SwapPhase phase) {
+        this.pos = chunk.getPos();
+        this.seed = seed;
+        this.minBuildHeight = level.getMinBuildHeight();
+        this.maxBuildHeight = level.getMaxBuildHeight();
+        this.minSection = chunk.getMinSection();
+        this.table = table;
+        this.activeRules = activeRules.clone();
+        this.verboseLogging = verboseLogging;
+        this.phase = phase;
+        this.probabilities = table.probabilities(level);
+
+        LevelChunkSection[] chunkSections = chunk.getSections();
+        this.sections = new PalettedContainer[chunkSections.length];
+        boolean hasSections = false;
+        for (int i = 0; i < chunkSections.length; i++) {
+            LevelChunkSection section = chunkSections[i];
+            int sectionIndex = i;
+            if (section != null && !section.hasOnlyAir() && section.maybeHas(state -> canSwapInSection(state, sectionIndex))) {
+                sections[i] = section.getStates().copy();
+                hasSections = true;
+            }
+        }
+
+        this.filters = table.filters(level.registryAccess());
+        this.biomeChecked = new boolean[this.activeRules.length];
+        boolean needsBiomes = false;
+        for (int ruleId = 0; ruleId < this.activeRules.length && hasSections; ruleId++) {
+            needsBiomes |= this.activeRules[ruleId] && filters.get(ruleId).filtersBiomes();
+        }
+        this.biomes = needsBiomes ? ChunkBiomeView.capture(level, chunk) : null;
+
+        // Biome filters are settled for the whole chunk when they accept or reject every biome the chunk can resolve to
+        boolean needsStructures = false;
+        for (int ruleId = 0; ruleId < this.activeRules.length && hasSections; ruleId++) {
+            RuleFilters.Filter filter = filters.get(ruleId);
+            if (this.activeRules[ruleId] && filter.filtersBiomes()) {
+                int allowed = 0;
+                for (Holder<Biome> biome : biomes.presentBiomes()) {
+                    if (filter.allowsBiome(biome.value())) {
+                        allowed++;
+                    }
+                }
+                this.activeRules[ruleId] = allowed > 0;
+                biomeChecked[ruleId] = allowed < biomes.presentBiomes().size();
+            }
+            needsStructures |= this.activeRules[ruleId] && filter.filtersStructures();
+        }
+
+        // Structure-filtered rules whose whitelisted structures don't reach into this chunk can't swap anything here.
+        // Without a structure lookup there are no structure starts, so they can't swap anything at all.
+        this.structures = needsStructures && structureLookup != null ? ChunkStructureView.create(structureLookup, pos) : null;
+        boolean hasActiveRules = false;
+        for (int ruleId = 0; ruleId < this.activeRules.length && hasSections; ruleId++) {
+            RuleFilters.Filter filter = filters.get(ruleId);
+            if (this.activeRules[ruleId] && filter.filtersStructures() && structures == null) {
+                this.activeRules[ruleId] = false;
+            } else if (this.activeRules[ruleId] && filter.filtersStructures()) {
+                boolean hasPieces = false;
+                for (Structure structure : filter.structureWhitelist()) {
+                    structures.capture(structure);
+                    hasPieces |= structures.hasPieces(structure);
+                }
+                if (hasPieces) {
+                    for (Structure structure : filter.structureBlacklist()) {
+                        structures.capture(structure);
+                    }
+                }
+                this.activeRules[ruleId] = hasPieces;
+            }
+            hasActiveRules |= this.activeRules[ruleId];
+        }
+        this.empty = !hasActiveRules;
+    }
+
+    public static ChunkSnapshot capture(LevelChunk chunk, ServerLevel level, SwapTable table, boolean[] activeRules, boolean verboseLogging, SwapPhase phase) {
+        return new ChunkSnapshot(chunk, level, level.getSeed(), StructureLookup.of(level), table, activeRules, verboseLogging, phase);
+    }
+
+    /**
+     * Captures a chunk of a level that isn't a server level, such as the synthetic levels of the benchmarks.
+     * Structure-filtered rules never swap in such a chunk since it has no structure starts.
+     */
+    public static ChunkSnapshot capture(LevelChunk chunk, Level level, long seed, SwapTable table, boolean[] activeRules, boolean verboseLogging, SwapPhase phase) {
+        return new ChunkSnapshot(chunk, level, seed, null, table, activeRules, verboseLogging, phase);
+    }
+
+    /**
+     * Captures a chunk of a level that isn't a server level, with structure starts answered by {@code structures}.
+     */
+    public static ChunkSnapshot capture(LevelChunk chunk, Level level, long seed, StructureLookup structures, SwapTable table, boolean[] activeRules, boolean verboseLogging, SwapPhase phase) {
+        return new ChunkSnapshot(chunk, level, seed, structures, table, activeRules, verboseLogging, phase);
+    }
+
+    /**
+     * @return true if no section of the chunk can contain a swap, in which case there is nothing to scan
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    public ChunkPos pos() {
+        return pos;
+    }
+
+    // Sections outside the Y range of every active candidate rule are never copied
+    private boolean canSwapInSection(BlockState state, int sectionIndex) {
+        SwapTable.Candidates candidates = table.get(state);
+        if (candidates == null) {
+            return false;
+        }
+        for (int c = 0; c < candidates.size(); c++) {
+            int ruleId = candidates.ruleId(c);
+            if (activeRules[ruleId] && probabilities.canSwapInSection(ruleId, sectionIndex)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,158 @@
+package potionseeker.block_swap_advanced.swapper;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+import net.minecraft.world.level.levelgen.structure.Structure;
+import net.minecraft.world.level.levelgen.structure.StructurePiece;
+import net.minecraft.world.level.levelgen.structure.StructureStart;
+
+import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The structure pieces that reach into one chunk, indexed per structure the active rules filter on.
+ * {@code StructureManager.startsForStructure} only depends on the chunk column, so the starts are collected once and
+ * every block of the chunk is answered from the piece bounding boxes, without going back to the structure manager.
+ */
+final class ChunkStructureView {
+    private static final ThreadLocal<ChunkStructureView> LAST_CHUNK = new ThreadLocal<>();
+
+    // Per-thread views outlive their server on pooled world generation threads, so they only hold on to the level
+    // weakly and query its structure manager through it; other views have a lookup instead
+    @Nullable
+    private final WeakReference<ServerLevel> level;
+    @Nullable
+    private final StructureLookup lookup;
+    private final ChunkPos chunkPos;
+    private final Map<Structure, PieceIndex> pieces = new IdentityHashMap<>();
+
+    private ChunkStructureView(@Nullable WeakReference<ServerLevel> level, @Nullable StructureLookup lookup, ChunkPos chunkPos) {
+        this.level = level;
+        this.lookup = lookup;
+        this.chunkPos = chunkPos;
+    }
+
+    static ChunkStructureView create(StructureLookup lookup, ChunkPos chunkPos) {
+        return new ChunkStructureView(null, lookup, chunkPos);
+    }
+
+    /**
+     * The view of the chunk holding {@code pos}, kept per thread so consecutive lookups in the same chunk during
+     * world generation or placement share one index.
+     */
+    static ChunkStructureView forChunkAt(ServerLevel level, BlockPos pos) {
+        ChunkStructureView view = LAST_CHUNK.get();
+        if (view == null || view.level == null || view.level.get() != level || view.chunkPos.x != SectionPos.blockToSectionCoord(pos.getX())
+                || view.chunkPos.z != SectionPos.blockToSectionCoord(pos.getZ())) {
+            view = new ChunkStructureView(new WeakReference<>(level), null, new ChunkPos(pos));
+            LAST_CHUNK.set(view);
+        }
+        return view;
+    }
+
+    /**
+     * Collects and indexes the pieces of a structure. Must be called on a thread that may query the lookup before
+     * {@link #isInside} is asked about that structure.
+     */
+    void capture(Structure structure) {
+        pieces.computeIfAbsent(structure, this::index);
+    }
+
+    /**
+     * @return true if some piece of the structure reaches into this chunk
+     */
+    boolean hasPieces(Structure structure) {
+        PieceIndex index = pieces.get(structure);
+        return index != null && index.size > 0;
+    }
+
+    /**
+     * Same answer as {@code getStructureWithPieceAt(pos, structure).isValid()}.
+     */
+    boolean isInside(Structure structure, BlockPos pos) {
+        PieceIndex index = pieces.get(structure);
+        return index != null && index.isInside(pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    private PieceIndex index(Structure structure) {
+        int minX = chunkPos.getMinBlockX();
+        int minZ = chunkPos.getMinBlockZ();
+        int maxX = chunkPos.getMaxBlockX();
+        int maxZ = chunkPos.getMaxBlockZ();
+
+        // The caller of capture still holds the level of a per-thread view
+        StructureLookup lookup = this.lookup != null ? this.lookup : StructureLookup.of(level.get());
+        PieceIndex index = new PieceIndex();
+        for (StructureStart start : lookup.startsForStructure(chunkPos, structure)) {
+            boolean valid = start.isValid();
+            for (StructurePiece piece : start.getPieces()) {
+                BoundingBox box = piece.getBoundingBox();
+                // Pieces that miss this chunk's column can never hold one of its blocks
+                if (box.intersects(minX, minZ, maxX, maxZ)) {
+                    index.add(box, valid);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Piece boxes in the order {@code getStructureWithPieceAt} visits them, with the validity of the start each one
+     * belongs to. The first box holding a position decides the answer. The union of all boxes is checked first so
+     * blocks outside the structure cost a single comparison.
+     */
+    private static final class PieceIndex {
+        private int[] boxes = new int[6 * 4];
+        private boolean[] valid = new boolean[4];
+        private int size;
+        private int minX = Integer.MAX_VALUE;
+        private int minY = Integer.MAX_VALUE;
+        private int minZ = Integer.MAX_VALUE;
+        private int maxX = Integer.MIN_VALUE;
+        private int maxY = Integer.MIN_VALUE;
+        private int maxZ = Integer.MIN_VALUE;
+
+        void add(BoundingBox box, boolean startValid) {
+            if (size == valid.length) {
+                boxes = Arrays.copyOf(boxes, size * 2 * 6);
+                valid = Arrays.copyOf(valid, size * 2);
+            }
+            int offset = size * 6;
+            boxes[offset] = box.minX();
+            boxes[offset + 1] = box.minY();
+            boxes[offset + 2] = box.minZ();
+            boxes[offset + 3] = box.maxX();
+            boxes[offset + 4] = box.maxY();
+            boxes[offset + 5] = box.maxZ();
+            valid[size] = startValid;
+            size++;
+
+            minX = Math.min(minX, box.minX());
+            minY = Math.min(minY, box.minY());
+            minZ = Math.min(minZ, box.minZ());
+            maxX = Math.max(maxX, box.maxX());
+            maxY = Math.max(maxY, box.maxY());
+            maxZ = Math.max(maxZ, box.maxZ());
+        }
+
+        boolean isInside(int x, int y, int z) {
+            if (x < minX || x > maxX || y < minY || y > maxY || z < minZ || z > maxZ) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                int offset = i * 6;
+                if (x >= boxes[offset] && y >= boxes[offset + 1] && z >= boxes[offset + 2]
+                        && x <= boxes[offset + 3] && y <= boxes[offset + 4] && z <= boxes[offset + 5]) {
+                    return valid[i];
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package potionseeker.block_swap_advanced.swapper;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.mojang.serialization.JsonOps;
+import net.minecraft.world.level.block.state.BlockState;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Content hashes of swap rules, stable across restarts and config reloads. A rule is hashed from its codec JSON with
+ * object keys sorted and default values left out (the codec already drops them), so rewording or reformatting the
+ * config file changes nothing. Block states are hashed with their properties, which the config codec doesn't write.
+ */
+public final class ConfigFingerprint {
+    private ConfigFingerprint() {}
+
+    /**
+     * @return one fingerprint per rule, in config order
+     */
+    public static long[] rules(List<Swapper.SwapEntry> entries) {
+        long[] fingerprints = new long[entries.size()];
+        for (int ruleId = 0; ruleId < fingerprints.length; ruleId++) {
+            fingerprints[ruleId] = rule(entries.get(ruleId));
+        }
+        return fingerprints;
+    }
+
+    public static long rule(Swapper.SwapEntry entry) {
+        JsonObject json = Swapper.SwapEntry.CODEC.encodeStart(JsonOps.INSTANCE, entry).getOrThrow(false, message -> {}).getAsJsonObject();
+        JsonObject core = json.getAsJsonObject("core");
+        core.add("old", state(entry.oldState()));
+        core.add("new", state(entry.newState()));
+        StringBuilder canonical = new StringBuilder();
+        write(json, canonical);
+        return Hashing.sha256().hashString(canonical, StandardCharsets.UTF_8).asLong();
+    }
+
+    /**
+     * Rule order is part of the config hash, since the first matching rule wins.
+     *
+     * @return the hash of the whole rule list
+     */
+    public static String config(long[] ruleFingerprints) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putInt(ruleFingerprints.length);
+        for (long fingerprint : ruleFingerprints) {
+            hasher.putLong(fingerprint);
+        }
+        return String.format(Locale.ROOT, "%016x", hasher.hash().asLong());
+    }
+
+    private static JsonElement state(BlockState state) {
+        return BlockState.CODEC.encodeStart(JsonOps.INSTANCE, state).getOrThrow(false, message -> {});
+    }
+
+    private static void write(JsonElement element, StringBuilder out) {
+        if (element instanceof JsonObject object) {
+            Map<String, JsonElement> sorted = new TreeMap<>();
+            for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                sorted.put(entry.getKey(), entry.getValue());
+            }
+            out.append('{');
+            for (Map.Entry<String, JsonElement> entry : sorted.entrySet()) {
+                out.append('"').append(entry.getKey()).append("\":");
+                write(entry.getValue(), out);
+                out.append(',');
+            }
+            out.append('}');
+        } else if (element instanceof JsonArray array) {
+            out.append('[');
+            for (JsonElement item : array) {
+                write(item, out);
+                out.append(',');
+            }
+            out.append(']');
+        } else {
+            out.append(element);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package potionseeker.block_swap_advanced.swapper;
+
+import com.mojang.serialization.Codec;
+import net.minecraft.util.StringRepresentable;
+
+import java.util.Arrays;
+
+/**
+ * What a block placement in an existing level comes from. Mixins mark the current thread before the calls that place
+ * blocks for each cause and unmark it after they return, so the placement hook can pick the rules that apply to that
+ * cause. A call that throws leaves its mark behind, so the server clears the marks at the start of every tick.
+ */
+public enum PlacementCause implements StringRepresentable {
+    /**
+     * Block items used by a player. Block items placed without one, such as shulker boxes from a dispenser, keep the
+     * cause of whatever placed them.
+     */
+    PLAYER("player"),
+    DISPENSER("dispenser"),
+    /**
+     * Structure templates placed into an existing level, e.g. by structure blocks or commands.
+     */
+    STRUCTURE("structure"),
+    /**
+     * Falling blocks landing.
+     */
+    PHYSICS("physics"),
+    /**
+     * Everything else: fluids, redstone, growth, commands, other mods.
+     */
+    OTHER("other");
+
+    public static final Codec<PlacementCause> CODEC = StringRepresentable.fromEnum(PlacementCause::values);
+
+    private static final ThreadLocal<Stack> CURRENT = ThreadLocal.withInitial(Stack::new);
+
+    private final String name;
+
+    PlacementCause(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getSerializedName() {
+        return name;
+    }
+
+    /**
+     * @return the innermost cause marked on this thread, or {@link #OTHER} if there is none
+     */
+    public static PlacementCause current() {
+        return CURRENT.get().peek();
+    }
+
+    public static void push(PlacementCause cause) {
+        CURRENT.get().push(cause);
+    }
+
+    public static void pop() {
+        CURRENT.get().pop();
+    }
+
+    /**
+     * Drops every cause marked on this thread, including any left behind by a placement that threw.
+     */
+    public static void reset() {
+        CURRENT.get().depth = 0;
+    }
+
+    private static final class Stack {
+        private PlacementCause[] causes = new PlacementCause[4];
+        private int depth;
+
+        PlacementCause peek() {
+            return depth == 0 ? OTHER : causes[depth - 1];
+        }
+
+        void push(PlacementCause cause) {
+            if (depth == causes.length) {
+                causes = Arrays.copyOf(causes, depth * 2);
+            }
+            causes[depth++] = cause;
+        }
+
+        void pop() {
+            if (depth > 0) {
+                depth--;
+            }
+        }
+    }
+}
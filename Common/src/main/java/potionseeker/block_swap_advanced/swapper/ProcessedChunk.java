@@ -0,0 +1,25 @@
+package potionseeker.block_swap_advanced.swapper;
+
+import javax.annotation.Nullable;
+
+/**
+ * Retro-gen state carried by every chunk, added to {@code ChunkAccess} by a mixin. Use {@link ProcessedChunks} rather
+ * than calling these directly.
+ */
+public interface ProcessedChunk {
+    /**
+     * @return the config hash the chunk was last processed under, or null if it never was
+     */
+    @Nullable
+    String blockSwap_getProcessedHash();
+
+    void blockSwap_setProcessedHash(@Nullable String configHash);
+
+    /**
+     * @return the fingerprints of the rules the chunk was last processed with, sorted, or null if they aren't known
+     */
+    @Nullable
+    long[] blockSwap_getProcessedRules();
+
+    void blockSwap_setProcessedRules(@Nullable long[] ruleFingerprints);
+}
@@ -0,0 +1,170 @@
+package potionseeker.block_swap_advanced.swapper;
+
+import potionseeker.block_swap_advanced.BlockSwap;
+import potionseeker.block_swap_advanced.ProcessedChunksData;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.ImposterProtoChunk;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Whether retro_gen and redo_gen have processed a chunk, saved in the chunk's own NBT so it loads and unloads with the
+ * chunk. Each chunk records the config hash it was processed under and the fingerprints of the rules it was processed
+ * with, sorted, so after a config change redo_gen only has to apply the rules that were added or changed wherever they
+ * sit in the config.
+ */
+public final class ProcessedChunks {
+    private static final String TAG = BlockSwap.MOD_ID + ":processed";
+
+    private ProcessedChunks() {}
+
+    /**
+     * With redo_gen on, only processing under the current config hash counts.
+     */
+    public static boolean isProcessed(ChunkAccess chunk, boolean redoGen) {
+        String processedHash = stamp(chunk).blockSwap_getProcessedHash();
+        return processedHash != null && (!redoGen || processedHash.equals(Swapper.configHash()));
+    }
+
+    /**
+     * @return true if the chunk was processed under the current config hash
+     */
+    public static boolean isProcessedUnderCurrentConfig(ChunkAccess chunk) {
+        return Swapper.configHash().equals(stamp(chunk).blockSwap_getProcessedHash());
+    }
+
+    /**
+     * A rule still needs to be applied unless the chunk was processed with an identical rule. Rules are matched by
+     * fingerprint rather than position, so inserting, removing or moving a rule leaves the others alone; their
+     * probability rolls are keyed by fingerprint too and come out the same.
+     *
+     * @return the rules that still need to be applied to the chunk, indexed by rule id, or null for all of them
+     */
+    @Nullable
+    public static boolean[] pendingRules(ChunkAccess chunk, long[] ruleFingerprints) {
+        ProcessedChunk stamp = stamp(chunk);
+        return pendingRules(stamp.blockSwap_getProcessedHash(), stamp.blockSwap_getProcessedRules(), ruleFingerprints);
+    }
+
+    /**
+     * {@link #pendingRules(ChunkAccess, long[])} for a saved chunk that isn't loaded.
+     */
+    @Nullable
+    public static boolean[] pendingRules(CompoundTag chunkTag, long[] ruleFingerprints) {
+        CompoundTag tag = chunkTag.getCompound(TAG);
+        return pendingRules(processedHash(tag), processedRules(tag), ruleFingerprints);
+    }
+
+    @Nullable
+    private static boolean[] pendingRules(@Nullable String processedHash, @Nullable long[] processedRules, long[] ruleFingerprints) {
+        if (processedHash == null || processedRules == null) {
+            return null;
+        }
+        // Chunks stamped before the fingerprints were stored sorted have them in config order
+        long[] processed = processedRules.clone();
+        Arrays.sort(processed);
+        boolean[] pending = new boolean[ruleFingerprints.length];
+        for (int ruleId = 0; ruleId < ruleFingerprints.length; ruleId++) {
+            pending[ruleId] = Arrays.binarySearch(processed, ruleFingerprints[ruleId]) < 0;
+        }
+        return pending;
+    }
+
+    /**
+     * {@link #isProcessedUnderCurrentConfig(ChunkAccess)} for a saved chunk that isn't loaded.
+     */
+    public static boolean isProcessedUnderCurrentConfig(CompoundTag chunkTag) {
+        return Swapper.configHash().equals(processedHash(chunkTag.getCompound(TAG)));
+    }
+
+    /**
+     * Stamps a saved chunk that isn't loaded as processed under the current config.
+     */
+    public static void markProcessed(CompoundTag chunkTag) {
+        write(Swapper.configHash(), sorted(Swapper.ruleFingerprints()), chunkTag);
+    }
+
+    public static void markProcessed(ChunkAccess chunk) {
+        ProcessedChunk stamp = stamp(chunk);
+        String configHash = Swapper.configHash();
+        if (!configHash.equals(stamp.blockSwap_getProcessedHash())) {
+            stamp.blockSwap_setProcessedHash(configHash);
+            stamp.blockSwap_setProcessedRules(sorted(Swapper.ruleFingerprints()));
+            chunk.setUnsaved(true);
+        }
+    }
+
+    /**
+     * Called when a chunk is saved. Once the state is in the chunk's own NBT, the level's {@link ProcessedChunksData}
+     * no longer needs to remember the chunk.
+     */
+    public static void write(ServerLevel level, ChunkAccess chunk, CompoundTag chunkTag) {
+        ProcessedChunk stamp = stamp(chunk);
+        if (stamp.blockSwap_getProcessedHash() != null) {
+            write(stamp.blockSwap_getProcessedHash(), stamp.blockSwap_getProcessedRules(), chunkTag);
+            ProcessedChunksData.load(level).forget(chunk.getPos());
+        }
+    }
+
+    private static void write(String configHash, @Nullable long[] ruleFingerprints, CompoundTag chunkTag) {
+        CompoundTag tag = new CompoundTag();
+        tag.putString("ConfigHash", configHash);
+        if (ruleFingerprints != null) {
+            tag.putLongArray("Rules", ruleFingerprints);
+        }
+        chunkTag.put(TAG, tag);
+    }
+
+    /**
+     * Called when a chunk is loaded. Chunks saved before the state moved into chunk NBT fall back to the level's
+     * {@link ProcessedChunksData}, and keep its answer from their next save on.
+     */
+    public static void read(ServerLevel level, ChunkAccess chunk, CompoundTag chunkTag) {
+        ProcessedChunk stamp = stamp(chunk);
+        if (chunkTag.contains(TAG, Tag.TAG_COMPOUND)) {
+            CompoundTag tag = chunkTag.getCompound(TAG);
+            stamp.blockSwap_setProcessedHash(processedHash(tag));
+            stamp.blockSwap_setProcessedRules(processedRules(tag));
+            return;
+        }
+        ProcessedChunksData legacy = ProcessedChunksData.load(level);
+        if (legacy.isChunkProcessed(chunk.getPos())) {
+            stamp.blockSwap_setProcessedHash(legacy.getConfigHash());
+        }
+    }
+
+    /**
+     * Hands the state of a proto chunk on to the level chunk it becomes.
+     */
+    public static void transfer(ChunkAccess from, ChunkAccess to) {
+        ProcessedChunk source = stamp(from);
+        ProcessedChunk target = stamp(to);
+        target.blockSwap_setProcessedHash(source.blockSwap_getProcessedHash());
+        target.blockSwap_setProcessedRules(source.blockSwap_getProcessedRules());
+    }
+
+    private static long[] sorted(long[] ruleFingerprints) {
+        long[] sorted = ruleFingerprints.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    @Nullable
+    private static String processedHash(CompoundTag tag) {
+        return tag.contains("ConfigHash", Tag.TAG_STRING) ? tag.getString("ConfigHash") : null;
+    }
+
+    @Nullable
+    private static long[] processedRules(CompoundTag tag) {
+        return tag.contains("Rules", Tag.TAG_LONG_ARRAY) ? tag.getLongArray("Rules") : null;
+    }
+
+    // Full chunks loaded from disk come back wrapped in an ImposterProtoChunk; the state belongs to the level chunk
+    private static ProcessedChunk stamp(ChunkAccess chunk) {
+        return (ProcessedChunk) (chunk instanceof ImposterProtoChunk imposter ? imposter.getWrapped() : chunk);
+    }
+}
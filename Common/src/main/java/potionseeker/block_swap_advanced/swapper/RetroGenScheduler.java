@@ -0,0 +1,188 @@
+package potionseeker.block_swap_advanced.swapper;
+
+import potionseeker.block_swap_advanced.BlockSwap;
+import potionseeker.block_swap_advanced.config.BlockSwapConfig;
+import potionseeker.block_swap_advanced.metrics.SwapMetrics;
+
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import net.minecraft.core.SectionPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.util.Mth;
+import net.minecraft.util.profiling.ProfilerFiller;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.chunk.LevelChunk;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Spreads retro-gen and redo-gen work over server ticks. Chunks are queued when they are visited and handed to
+ * {@link Swapper#runRetroGenerator} from the level tick, nearest to a player first, until the tick's time budget is
+ * used up. The budget shrinks as MSPT gets close to 50 ms so a lagging server only drains one chunk per tick.
+ */
+public final class RetroGenScheduler {
+    private static final Map<ResourceKey<Level>, LevelQueue> QUEUES = new HashMap<>();
+    private static final float FULL_BUDGET_MSPT = 35.0F;
+    private static final float TARGET_MSPT = 50.0F;
+    private static final int RESORT_INTERVAL_TICKS = 10;
+    private static final int REPORT_INTERVAL_TICKS = 600;
+
+    private RetroGenScheduler() {}
+
+    /**
+     * Queues a chunk for retro-gen. Chunks that are already queued keep their place.
+     */
+    public static void enqueue(ServerLevel level, LevelChunk chunk) {
+        if (ChunkScanExecutor.isInFlight(level, chunk.getPos())) {
+            return;
+        }
+        queue(level).add(chunk.getPos().toLong());
+    }
+
+    public static int queueDepth(ServerLevel level) {
+        LevelQueue queue = QUEUES.get(level.dimension());
+        return queue == null || queue.level != level ? 0 : queue.pending.size();
+    }
+
+    public static boolean isQueued(ServerLevel level, ChunkPos pos) {
+        LevelQueue queue = QUEUES.get(level.dimension());
+        return queue != null && queue.level == level && queue.pending.contains(pos.toLong());
+    }
+
+    /**
+     * Drains queued chunks for this tick. Called at the end of every level tick.
+     */
+    public static void tick(ServerLevel level) {
+        LevelQueue queue = QUEUES.get(level.dimension());
+        if (queue == null || queue.level != level) {
+            return;
+        }
+        ProfilerFiller profiler = level.getProfiler();
+        profiler.push(BlockSwap.MOD_ID + ":retro_gen");
+        queue.tick(tickBudgetNanos(level));
+        profiler.pop();
+    }
+
+    /**
+     * Forgets every level's queue. Called when the server stops; unprocessed chunks are queued again when they are
+     * next visited.
+     */
+    public static void clear() {
+        QUEUES.clear();
+    }
+
+    private static LevelQueue queue(ServerLevel level) {
+        LevelQueue queue = QUEUES.get(level.dimension());
+        if (queue == null || queue.level != level) {
+            queue = new LevelQueue(level);
+            QUEUES.put(level.dimension(), queue);
+        }
+        return queue;
+    }
+
+    private static long tickBudgetNanos(ServerLevel level) {
+        int budgetMs = BlockSwapConfig.getConfig(false).retroGenTickBudgetMs();
+        if (budgetMs < 0) {
+            return Long.MAX_VALUE;
+        }
+        float mspt = level.getServer().getAverageTickTime();
+        float scale = Mth.clamp((TARGET_MSPT - mspt) / (TARGET_MSPT - FULL_BUDGET_MSPT), 0.0F, 1.0F);
+        return (long) (budgetMs * 1_000_000L * scale);
+    }
+
+    private static final class LevelQueue {
+        private final ServerLevel level;
+        private final LongLinkedOpenHashSet pending = new LongLinkedOpenHashSet();
+        private long[] order = LongArrays.EMPTY_ARRAY;
+        private int cursor;
+        private boolean dirty;
+        private int ticksSinceSort;
+        private int ticksSinceReport;
+        private int drainedSinceReport;
+
+        LevelQueue(ServerLevel level) {
+            this.level = level;
+        }
+
+        void add(long pos) {
+            if (pending.add(pos)) {
+                SwapMetrics.chunkQueued();
+                dirty = true;
+            }
+        }
+
+        void tick(long budgetNanos) {
+            ticksSinceSort++;
+            ticksSinceReport++;
+            if (!pending.isEmpty()) {
+                if (cursor >= order.length || dirty && ticksSinceSort >= RESORT_INTERVAL_TICKS) {
+                    sortByPlayerDistance();
+                }
+                drain(budgetNanos);
+            }
+            if (ticksSinceReport >= REPORT_INTERVAL_TICKS) {
+                if (drainedSinceReport > 0 || !pending.isEmpty()) {
+                    BlockSwap.LOGGER.info("Retro-gen queue for {}: {} chunks pending, {} chunks/s processed",
+                            level.dimension().location(), pending.size(), drainedSinceReport * 20 / ticksSinceReport);
+                }
+                ticksSinceReport = 0;
+                drainedSinceReport = 0;
+            }
+        }
+
+        private void drain(long budgetNanos) {
+            long start = System.nanoTime();
+            boolean first = true;
+            while (cursor < order.length) {
+                if (!first && System.nanoTime() - start >= budgetNanos) {
+                    return;
+                }
+                long pos = order[cursor++];
+                if (!pending.remove(pos)) {
+                    continue;
+                }
+                first = false;
+                LevelChunk chunk = level.getChunkSource().getChunkNow(ChunkPos.getX(pos), ChunkPos.getZ(pos));
+                if (chunk == null) {
+                    // Unloaded while queued; it is queued again the next time it is loaded
+                    continue;
+                }
+                Swapper.runRetroGenerator(chunk);
+                drainedSinceReport++;
+            }
+        }
+
+        private void sortByPlayerDistance() {
+            long[] positions = pending.toLongArray();
+            long[] keys = new long[positions.length];
+            for (int i = 0; i < positions.length; i++) {
+                keys[i] = (long) distanceToNearestPlayer(positions[i]) << 32 | i;
+            }
+            LongArrays.radixSort(keys);
+            order = new long[positions.length];
+            for (int i = 0; i < keys.length; i++) {
+                order[i] = positions[(int) keys[i]];
+            }
+            cursor = 0;
+            dirty = false;
+            ticksSinceSort = 0;
+        }
+
+        private int distanceToNearestPlayer(long pos) {
+            int chunkX = ChunkPos.getX(pos);
+            int chunkZ = ChunkPos.getZ(pos);
+            int nearest = Integer.MAX_VALUE;
+            for (ServerPlayer player : level.players()) {
+                int distance = Math.max(
+                        Math.abs(SectionPos.blockToSectionCoord(player.getBlockX()) - chunkX),
+                        Math.abs(SectionPos.blockToSectionCoord(player.getBlockZ()) - chunkZ));
+                nearest = Math.min(nearest, distance);
+            }
+            return nearest;
+        }
+    }
+}
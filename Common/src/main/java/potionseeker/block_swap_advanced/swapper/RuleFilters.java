@@ -0,0 +1,156 @@
+package potionseeker.block_swap_advanced.swapper;
+
+import potionseeker.block_swap_advanced.BlockSwap;
+
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.minecraft.core.Registry;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.levelgen.structure.Structure;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The dimension, biome and structure filters of every rule in a {@link SwapTable}, resolved against one
+ * {@link RegistryAccess}. Ids are parsed and looked up once, so filter checks on the hot paths are identity lookups.
+ * Ids that don't resolve are reported once when the filters are built.
+ */
+public final class RuleFilters {
+    final RegistryAccess registryAccess;
+    private final Filter[] filters;
+
+    private RuleFilters(RegistryAccess registryAccess, Filter[] filters) {
+        this.registryAccess = registryAccess;
+        this.filters = filters;
+    }
+
+    public Filter get(int ruleId) {
+        return filters[ruleId];
+    }
+
+    public static final class Filter {
+        private final boolean hasDimensionWhitelist;
+        private final Set<ResourceKey<Level>> dimensionWhitelist;
+        private final Set<ResourceKey<Level>> dimensionBlacklist;
+        private final boolean hasBiomeWhitelist;
+        private final Set<Biome> biomeWhitelist;
+        private final Set<Biome> biomeBlacklist;
+        @Nullable
+        private final Structure[] structureWhitelist;
+        @Nullable
+        private final Structure[] structureBlacklist;
+
+        private Filter(boolean hasDimensionWhitelist, Set<ResourceKey<Level>> dimensionWhitelist, Set<ResourceKey<Level>> dimensionBlacklist,
+                       boolean hasBiomeWhitelist, Set<Biome> biomeWhitelist, Set<Biome> biomeBlacklist,
+                       @Nullable Structure[] structureWhitelist, @Nullable Structure[] structureBlacklist) {
+            this.hasDimensionWhitelist = hasDimensionWhitelist;
+            this.dimensionWhitelist = dimensionWhitelist;
+            this.dimensionBlacklist = dimensionBlacklist;
+            this.hasBiomeWhitelist = hasBiomeWhitelist;
+            this.biomeWhitelist = biomeWhitelist;
+            this.biomeBlacklist = biomeBlacklist;
+            this.structureWhitelist = structureWhitelist;
+            this.structureBlacklist = structureBlacklist;
+        }
+
+        public boolean allowsDimension(ResourceKey<Level> dimension) {
+            return (!hasDimensionWhitelist || dimensionWhitelist.contains(dimension)) && !dimensionBlacklist.contains(dimension);
+        }
+
+        public boolean filtersBiomes() {
+            return hasBiomeWhitelist || !biomeBlacklist.isEmpty();
+        }
+
+        public boolean allowsBiome(Biome biome) {
+            return (!hasBiomeWhitelist || biomeWhitelist.contains(biome)) && !biomeBlacklist.contains(biome);
+        }
+
+        public boolean filtersStructures() {
+            return structureWhitelist != null;
+        }
+
+        /**
+         * @return the whitelisted structures that exist, or null if the rule has no structure filter
+         */
+        @Nullable
+        public Structure[] structureWhitelist() {
+            return structureWhitelist;
+        }
+
+        /**
+         * @return the blacklisted structures that exist, or null if the rule has no structure filter
+         */
+        @Nullable
+        public Structure[] structureBlacklist() {
+            return structureBlacklist;
+        }
+    }
+
+    static RuleFilters resolve(SwapTable table, RegistryAccess registryAccess) {
+        Registry<Biome> biomes = registryAccess.registryOrThrow(Registries.BIOME);
+        Registry<Structure> structures = registryAccess.registryOrThrow(Registries.STRUCTURE);
+        Set<ResourceLocation> dimensions = registryAccess.registryOrThrow(Registries.LEVEL_STEM).keySet();
+
+        Filter[] filters = new Filter[table.ruleCount()];
+        for (int ruleId = 0; ruleId < filters.length; ruleId++) {
+            Swapper.SwapEntry entry = table.rule(ruleId);
+            boolean filtersStructures = !entry.structures_whitelist().isEmpty() || !entry.structures_blacklist().isEmpty();
+            filters[ruleId] = new Filter(
+                    !entry.dimensions_whitelist().isEmpty(),
+                    resolveDimensions(entry.dimensions_whitelist(), dimensions, ruleId),
+                    resolveDimensions(entry.dimensions_blacklist(), dimensions, ruleId),
+                    !entry.biomes_whitelist().isEmpty(),
+                    resolve(entry.biomes_whitelist(), biomes, "biome", ruleId),
+                    resolve(entry.biomes_blacklist(), biomes, "biome", ruleId),
+                    filtersStructures ? resolve(entry.structures_whitelist(), structures, "structure", ruleId).toArray(new Structure[0]) : null,
+                    filtersStructures ? resolve(entry.structures_blacklist(), structures, "structure", ruleId).toArray(new Structure[0]) : null
+            );
+        }
+        return new RuleFilters(registryAccess, filters);
+    }
+
+    private static Set<ResourceKey<Level>> resolveDimensions(List<String> ids, Set<ResourceLocation> dimensions, int ruleId) {
+        Set<ResourceKey<Level>> keys = new ReferenceOpenHashSet<>();
+        for (ResourceLocation location : parse(ids, "dimension", ruleId)) {
+            if (!dimensions.contains(location)) {
+                // Dimensions can be added later by datapacks, so the key is kept
+                BlockSwap.LOGGER.warn("Swap rule #{} filters on unknown dimension {}", ruleId, location);
+            }
+            keys.add(ResourceKey.create(Registries.DIMENSION, location));
+        }
+        return keys;
+    }
+
+    private static <T> Set<T> resolve(List<String> ids, Registry<T> registry, String kind, int ruleId) {
+        Set<T> values = new ReferenceOpenHashSet<>();
+        for (ResourceLocation location : parse(ids, kind, ruleId)) {
+            T value = registry.get(location);
+            if (value == null) {
+                BlockSwap.LOGGER.warn("Swap rule #{} filters on unknown {} {}, ignoring it", ruleId, kind, location);
+            } else {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    private static List<ResourceLocation> parse(List<String> ids, String kind, int ruleId) {
+        List<ResourceLocation> locations = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            ResourceLocation location = ResourceLocation.tryParse(id);
+            if (location == null) {
+                BlockSwap.LOGGER.warn("Swap rule #{} has an invalid {} id '{}', ignoring it", ruleId, kind, id);
+            } else {
+                locations.add(location);
+            }
+        }
+        return locations;
+    }
+}
@@ -0,0 +1,24 @@
+package potionseeker.block_swap_advanced.swapper;
+
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.levelgen.structure.Structure;
+import net.minecraft.world.level.levelgen.structure.StructureStart;
+
+/**
+ * Where structure filters get the starts of a structure that reach into a chunk. On a server that is the level's
+ * structure manager; offline tools can answer from saved chunk data instead.
+ */
+@FunctionalInterface
+public interface StructureLookup {
+    /**
+     * @return the valid starts of {@code structure} referenced by the chunk, in the order the structure manager
+     * returns them
+     */
+    Iterable<StructureStart> startsForStructure(ChunkPos chunkPos, Structure structure);
+
+    static StructureLookup of(ServerLevel level) {
+        return (chunkPos, structure) -> level.structureManager().startsForStructure(SectionPos.of(chunkPos, 0), structure);
+    }
+}
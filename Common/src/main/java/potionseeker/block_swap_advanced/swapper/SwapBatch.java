@@ -0,0 +1,195 @@
+package potionseeker.block_swap_advanced.swapper;
+
+import potionseeker.block_swap_advanced.BlockSwap;
+import potionseeker.block_swap_advanced.metrics.SwapMetrics;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.levelgen.Heightmap;
+
+import java.util.Arrays;
+
+/**
+ * The swaps found in one chunk, written straight into its sections instead of going through {@code Level.setBlock}
+ * once per block. Heightmaps are only touched for the types whose opacity actually changed, and client updates are
+ * queued through {@code ChunkHolder.blockChanged} so each section goes out as a single section update packet.
+ * Swaps that involve block entities, change lighting or turn air into a block or back take the regular
+ * {@code setBlock} path.
+ */
+public final class SwapBatch {
+    private static final Heightmap.Types[] HEIGHTMAP_TYPES = {
+            Heightmap.Types.MOTION_BLOCKING,
+            Heightmap.Types.MOTION_BLOCKING_NO_LEAVES,
+            Heightmap.Types.OCEAN_FLOOR,
+            Heightmap.Types.WORLD_SURFACE
+    };
+
+    private final SwapPhase phase;
+    private int[] positions = new int[64];
+    private BlockState[] oldStates = new BlockState[64];
+    private BlockState[] newStates = new BlockState[64];
+    private int[] ruleIds = new int[64];
+    private int size;
+    private long blocksEvaluated;
+    private long scanNanos;
+
+    public SwapBatch(SwapPhase phase) {
+        this.phase = phase;
+    }
+
+    public void add(int sectionIndex, int x, int y, int z, BlockState oldState, BlockState newState, int ruleId) {
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, size * 2);
+            oldStates = Arrays.copyOf(oldStates, size * 2);
+            newStates = Arrays.copyOf(newStates, size * 2);
+            ruleIds = Arrays.copyOf(ruleIds, size * 2);
+        }
+        positions[size] = sectionIndex << 12 | y << 8 | z << 4 | x;
+        oldStates[size] = oldState;
+        newStates[size] = newState;
+        ruleIds[size] = ruleId;
+        size++;
+    }
+
+    void recordScan(long blocksEvaluated, long scanNanos) {
+        this.blocksEvaluated = blocksEvaluated;
+        this.scanNanos = scanNanos;
+    }
+
+    /**
+     * @return the number of blocks the scan checked against a candidate rule
+     */
+    public long blocksEvaluated() {
+        return blocksEvaluated;
+    }
+
+    /**
+     * @return how long the scan that found these swaps took
+     */
+    public long scanNanos() {
+        return scanNanos;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the id of the rule behind the swap at {@code index}
+     */
+    public int ruleId(int index) {
+        return ruleIds[index];
+    }
+
+    /**
+     * @return where the swap at {@code index} happens, packed as {@code sectionIndex << 12 | y << 8 | z << 4 | x}
+     * with chunk-local coordinates
+     */
+    public int packedPosition(int index) {
+        return positions[index];
+    }
+
+    public BlockState newState(int index) {
+        return newStates[index];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return true if every block in the batch still holds the state it was scanned with
+     */
+    public boolean matches(LevelChunk chunk) {
+        for (int i = 0; i < size; i++) {
+            int packed = positions[i];
+            LevelChunkSection section = chunk.getSection(packed >>> 12);
+            if (section.getBlockState(packed & 15, packed >>> 8 & 15, packed >>> 4 & 15) != oldStates[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applies every swap whose block still holds the state it was scanned with.
+     *
+     * @return the number of blocks that were swapped
+     */
+    public int apply(ServerLevel level, LevelChunk chunk) {
+        if (size == 0) {
+            return 0;
+        }
+
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        int minX = SectionPos.sectionToBlockCoord(chunk.getPos().x);
+        int minZ = SectionPos.sectionToBlockCoord(chunk.getPos().z);
+        int applied = 0;
+        int slowPath = 0;
+
+        for (int i = 0; i < size; i++) {
+            int packed = positions[i];
+            int sectionIndex = packed >>> 12;
+            int x = packed & 15;
+            int z = packed >>> 4 & 15;
+            int y = packed >>> 8 & 15;
+            int blockY = SectionPos.sectionToBlockCoord(chunk.getSectionYFromSectionIndex(sectionIndex)) + y;
+            pos.set(minX + x, blockY, minZ + z);
+
+            LevelChunkSection section = chunk.getSection(sectionIndex);
+            BlockState oldState = section.getBlockState(x, y, z);
+            BlockState newState = newStates[i];
+            if (oldState != oldStates[i]) {
+                continue;
+            }
+
+            // Swaps to or from air can flip the section's hasOnlyAir, which the light engine has to hear about
+            if (oldState.hasBlockEntity() || newState.hasBlockEntity() || oldState.isAir() != newState.isAir()
+                    || changesLight(chunk, pos, oldState, newState)) {
+                if (level.setBlock(pos, newState, 2)) {
+                    SwapMetrics.swapApplied(phase, ruleIds[i]);
+                    applied++;
+                    slowPath++;
+                }
+                continue;
+            }
+
+            section.setBlockState(x, y, z, newState, false);
+            for (Heightmap.Types type : HEIGHTMAP_TYPES) {
+                if (type.isOpaque().test(oldState) != type.isOpaque().test(newState)) {
+                    chunk.getOrCreateHeightmapUnprimed(type).update(x, blockY, z, newState);
+                }
+            }
+
+            oldState.onRemove(level, pos, newState, false);
+            if (section.getBlockState(x, y, z).is(newState.getBlock())) {
+                newState.onPlace(level, pos, oldState, false);
+            }
+
+            level.sendBlockUpdated(pos, oldState, newState, 2);
+            oldState.updateIndirectNeighbourShapes(level, pos, 2, 511);
+            newState.updateNeighbourShapes(level, pos, 2, 511);
+            newState.updateIndirectNeighbourShapes(level, pos, 2, 511);
+            level.onBlockStateChange(pos, oldState, newState);
+            SwapMetrics.swapApplied(phase, ruleIds[i]);
+            applied++;
+        }
+
+        if (applied > slowPath) {
+            chunk.setUnsaved(true);
+        }
+        BlockSwap.LOGGER.debug("Applied {} of {} swaps in chunk {} ({} through setBlock)", applied, size, chunk.getPos(), slowPath);
+        return applied;
+    }
+
+    private static boolean changesLight(LevelChunk chunk, BlockPos pos, BlockState oldState, BlockState newState) {
+        return oldState.getLightEmission() != newState.getLightEmission()
+                || oldState.getLightBlock(chunk, pos) != newState.getLightBlock(chunk, pos)
+                || oldState.useShapeForLightOcclusion()
+                || newState.useShapeForLightOcclusion();
+    }
+}
@@ -0,0 +1,45 @@
+package potionseeker.block_swap_advanced.swapper;
+
+/**
+ * The passes a swap rule can fire in. Each pass gets its own {@link SwapTable} holding only the rules that apply to it.
+ */
+public enum SwapPhase {
+    /**
+     * Blocks set while a chunk generates. Deferred rules fire here as well as in {@link #DEFERRED}.
+     */
+    GENERATION("world generation"),
+    /**
+     * Blocks set in an existing level, such as player placement.
+     */
+    PLACEMENT("placement"),
+    /**
+     * Retro-gen and redo-gen scans of existing chunks.
+     */
+    RETRO("retroGen or redoGen"),
+    /**
+     * The scan of a freshly generated chunk once it is promoted to a full chunk.
+     */
+    DEFERRED("deferred swap");
+
+    private final String description;
+
+    SwapPhase(String description) {
+        this.description = description;
+    }
+
+    /**
+     * @return how the phase is referred to in log messages
+     */
+    public String description() {
+        return description;
+    }
+
+    public boolean includes(Swapper.SwapEntry entry) {
+        return switch (this) {
+            case GENERATION -> !entry.only_replace_placements();
+            case PLACEMENT -> entry.replacePlacement();
+            case RETRO -> !entry.only_replace_placements() && !entry.defer_swap();
+            case DEFERRED -> entry.defer_swap();
+        };
+    }
+}
@@ -0,0 +1,92 @@
+package potionseeker.block_swap_advanced.swapper;
+
+import net.minecraft.core.SectionPos;
+
+/**
+ * The swap probability of every rule at every Y level of one build height, with the Y range, buffer zones and
+ * {@code block_swap_rand} already folded in. Also keeps the highest probability per section so scans can skip
+ * sections a rule can't swap in at all.
+ */
+public final class SwapProbabilities {
+    final int minBuildHeight;
+    final int maxBuildHeight;
+    private final Swapper.SwapEntry[] rules;
+    private final float[][] byY;
+    private final boolean[][] bySection;
+
+    private SwapProbabilities(Swapper.SwapEntry[] rules, int minBuildHeight, int maxBuildHeight) {
+        this.minBuildHeight = minBuildHeight;
+        this.maxBuildHeight = maxBuildHeight;
+        this.rules = rules;
+        this.byY = new float[rules.length][];
+        this.bySection = new boolean[rules.length][];
+
+        int height = maxBuildHeight - minBuildHeight;
+        int sectionCount = SectionPos.blockToSectionCoord(height - 1) + 1;
+        for (int ruleId = 0; ruleId < rules.length; ruleId++) {
+            float[] probabilities = new float[height];
+            boolean[] sections = new boolean[sectionCount];
+            for (int i = 0; i < height; i++) {
+                probabilities[i] = probability(rules[ruleId], minBuildHeight + i, minBuildHeight, maxBuildHeight);
+                if (probabilities[i] > 0.0F) {
+                    sections[i >> 4] = true;
+                }
+            }
+            byY[ruleId] = probabilities;
+            bySection[ruleId] = sections;
+        }
+    }
+
+    static SwapProbabilities compute(Swapper.SwapEntry[] rules, int minBuildHeight, int maxBuildHeight) {
+        return new SwapProbabilities(rules, minBuildHeight, maxBuildHeight);
+    }
+
+    public float get(int ruleId, int y) {
+        int index = y - minBuildHeight;
+        if (index < 0 || index >= byY[ruleId].length) {
+            return probability(rules[ruleId], y, minBuildHeight, maxBuildHeight);
+        }
+        return byY[ruleId][index];
+    }
+
+    /**
+     * @param sectionIndex the index of the section counted from the bottom of the build height
+     * @return true if the rule has a non-zero probability somewhere in the section
+     */
+    public boolean canSwapInSection(int ruleId, int sectionIndex) {
+        boolean[] sections = bySection[ruleId];
+        return sectionIndex >= 0 && sectionIndex < sections.length && sections[sectionIndex];
+    }
+
+    private static float probability(Swapper.SwapEntry entry, int blockY, int minBuildHeight, int maxBuildHeight) {
+        int effectiveMinY = entry.minY() == Integer.MIN_VALUE ? minBuildHeight : entry.minY();
+        int effectiveMaxY = entry.maxY() == Integer.MAX_VALUE ? maxBuildHeight : entry.maxY();
+        float swapProbability = entry.blockSwapRand();
+        if (blockY < effectiveMinY) {
+            if (entry.minYBufferZone() > 0) {
+                int bufferStart = effectiveMinY;
+                int bufferEnd = effectiveMinY - entry.minYBufferZone();
+                if (blockY >= bufferEnd && blockY < bufferStart) {
+                    swapProbability *= (float)(blockY - bufferEnd) / (bufferStart - bufferEnd);
+                } else {
+                    swapProbability = 0.0F;
+                }
+            } else {
+                swapProbability = 0.0F;
+            }
+        } else if (blockY > effectiveMaxY) {
+            if (entry.maxYBufferZone() > 0) {
+                int bufferStart = effectiveMaxY;
+                int bufferEnd = effectiveMaxY + entry.maxYBufferZone();
+                if (blockY > bufferStart && blockY <= bufferEnd) {
+                    swapProbability *= (float)(bufferEnd - blockY) / (bufferEnd - bufferStart);
+                } else {
+                    swapProbability = 0.0F;
+                }
+            } else {
+                swapProbability = 0.0F;
+            }
+        }
+        return swapProbability;
+    }
+}
@@ -0,0 +1,29 @@
+package potionseeker.block_swap_advanced.swapper;
+
+/**
+ * Stateless randomness for swap probabilities. Each roll is a hash of the world seed, the block position and the rule's
+ * fingerprint, so the same block gets the same answer whether it is swapped during world generation, retro-gen or
+ * redo-gen, regardless of the order blocks are visited in, and regardless of where the rule sits in the config.
+ */
+public final class SwapRandom {
+    private SwapRandom() {}
+
+    /**
+     * @return a value in [0, 1) that only depends on the arguments
+     */
+    public static float roll(long seed, int x, int y, int z, long ruleFingerprint) {
+        long hash = seed;
+        hash = mix(hash ^ x * 0x9E3779B97F4A7C15L);
+        hash = mix(hash ^ y * 0xC2B2AE3D27D4EB4FL);
+        hash = mix(hash ^ z * 0x165667B19E3779F9L);
+        hash = mix(hash ^ ruleFingerprint);
+        return (hash >>> 40) * 0x1.0p-24F;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long value) {
+        value = (value ^ value >>> 30) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ value >>> 27) * 0x94D049BB133111EBL;
+        return value ^ value >>> 31;
+    }
+}
@@ -0,0 +1,308 @@
+package potionseeker.block_swap_advanced.swapper;
+
+import potionseeker.block_swap_advanced.BlockSwap;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.world.level.LevelHeightAccessor;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.block.state.properties.Property;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Swap rules compiled against every possible state of their old block, indexed by {@link Block#BLOCK_STATE_REGISTRY} id.
+ * Property matching and carrying properties over to the new state happen once here instead of per block.
+ * Rule ids always refer to the full config list, also in the filtered tables from {@link #forPhase} and
+ * {@link #forPlacementCause}.
+ */
+public final class SwapTable {
+    public static final SwapTable EMPTY = new SwapTable(new Swapper.SwapEntry[0], new long[0], new Candidates[0], new DerivedCache());
+
+    private final Swapper.SwapEntry[] rules;
+    private final long[] fingerprints;
+    private final Candidates[] byStateId;
+    private final long[] candidateBits;
+    private final boolean empty;
+    private final DerivedCache derivedCache;
+
+    private SwapTable(Swapper.SwapEntry[] rules, long[] fingerprints, Candidates[] byStateId, DerivedCache derivedCache) {
+        this.rules = rules;
+        this.fingerprints = fingerprints;
+        this.byStateId = byStateId;
+        this.derivedCache = derivedCache;
+        this.candidateBits = new long[(byStateId.length + 63) >> 6];
+        boolean hasCandidates = false;
+        for (int stateId = 0; stateId < byStateId.length; stateId++) {
+            if (byStateId[stateId] != null) {
+                candidateBits[stateId >> 6] |= 1L << stateId;
+                hasCandidates = true;
+            }
+        }
+        this.empty = !hasCandidates;
+    }
+
+    // Shared by a table and its phase tables so filters and probabilities are only built once per config
+    private static final class DerivedCache {
+        @Nullable
+        private volatile RuleFilters filters;
+        private volatile SwapProbabilities[] probabilities = new SwapProbabilities[0];
+    }
+
+    /**
+     * The rules that can fire for one block state, in config order, with the state each of them would produce.
+     */
+    public record Candidates(int[] ruleIds, BlockState[] targets) {
+        public int size() {
+            return ruleIds.length;
+        }
+
+        public int ruleId(int index) {
+            return ruleIds[index];
+        }
+
+        public BlockState target(int index) {
+            return targets[index];
+        }
+
+        /**
+         * @return the candidates whose rule passes {@code ruleFilter}, this instance if all of them do, or null if none do
+         */
+        @Nullable
+        public Candidates filter(IntPredicate ruleFilter) {
+            int kept = 0;
+            for (int ruleId : ruleIds) {
+                if (ruleFilter.test(ruleId)) {
+                    kept++;
+                }
+            }
+            if (kept == ruleIds.length) {
+                return this;
+            }
+            if (kept == 0) {
+                return null;
+            }
+
+            int[] keptRuleIds = new int[kept];
+            BlockState[] keptTargets = new BlockState[kept];
+            int index = 0;
+            for (int i = 0; i < ruleIds.length; i++) {
+                if (ruleFilter.test(ruleIds[i])) {
+                    keptRuleIds[index] = ruleIds[i];
+                    keptTargets[index] = targets[i];
+                    index++;
+                }
+            }
+            return new Candidates(keptRuleIds, keptTargets);
+        }
+    }
+
+    public static SwapTable compile(List<Swapper.SwapEntry> entries) {
+        return compile(entries, ConfigFingerprint.rules(entries));
+    }
+
+    /**
+     * @param fingerprints the {@link ConfigFingerprint#rules fingerprints} of {@code entries}, if already computed
+     */
+    public static SwapTable compile(List<Swapper.SwapEntry> entries, long[] fingerprints) {
+        if (entries.isEmpty()) {
+            return EMPTY;
+        }
+
+        Swapper.SwapEntry[] rules = entries.toArray(new Swapper.SwapEntry[0]);
+        List<IntArrayList> ruleIds = new ArrayList<>();
+        List<List<BlockState>> targets = new ArrayList<>();
+        int stateCount = Block.BLOCK_STATE_REGISTRY.size();
+        for (int i = 0; i < stateCount; i++) {
+            ruleIds.add(null);
+            targets.add(null);
+        }
+
+        Int2ObjectOpenHashMap<Property<?>> newStateProperties = new Int2ObjectOpenHashMap<>();
+        for (int ruleId = 0; ruleId < rules.length; ruleId++) {
+            Swapper.SwapEntry entry = rules[ruleId];
+            newStateProperties.clear();
+            for (Property<?> property : entry.newState().getProperties()) {
+                newStateProperties.put(property.generateHashCode(), property);
+            }
+
+            for (BlockState state : entry.oldState().getBlock().getStateDefinition().getPossibleStates()) {
+                if (!propertiesMatch(entry, state)) {
+                    continue;
+                }
+                int stateId = Block.BLOCK_STATE_REGISTRY.getId(state);
+                if (stateId < 0 || stateId >= stateCount) {
+                    continue;
+                }
+
+                BlockState target;
+                try {
+                    target = carryProperties(state, entry.newState(), newStateProperties);
+                } catch (IllegalArgumentException e) {
+                    BlockSwap.LOGGER.error("Could not carry properties of {} over to {}: {}", state, entry.newState(), e.getMessage());
+                    continue;
+                }
+
+                if (ruleIds.get(stateId) == null) {
+                    ruleIds.set(stateId, new IntArrayList(1));
+                    targets.set(stateId, new ArrayList<>(1));
+                }
+                ruleIds.get(stateId).add(ruleId);
+                targets.get(stateId).add(target);
+            }
+        }
+
+        Candidates[] byStateId = new Candidates[stateCount];
+        int compiledStates = 0;
+        for (int stateId = 0; stateId < stateCount; stateId++) {
+            IntArrayList stateRuleIds = ruleIds.get(stateId);
+            if (stateRuleIds != null) {
+                byStateId[stateId] = new Candidates(stateRuleIds.toIntArray(), targets.get(stateId).toArray(new BlockState[0]));
+                compiledStates++;
+            }
+        }
+        BlockSwap.LOGGER.debug("Compiled {} swap rules into {} candidate block states", rules.length, compiledStates);
+        return new SwapTable(rules, fingerprints, byStateId, new DerivedCache());
+    }
+
+    /**
+     * @return a table holding only the candidates whose rule can fire in {@code phase}
+     */
+    public SwapTable forPhase(SwapPhase phase) {
+        return filter(ruleId -> phase.includes(rules[ruleId]));
+    }
+
+    /**
+     * @return a table holding only the candidates whose rule applies to placements from {@code cause}
+     */
+    public SwapTable forPlacementCause(PlacementCause cause) {
+        return filter(ruleId -> rules[ruleId].placementCauses().contains(cause));
+    }
+
+    private SwapTable filter(IntPredicate ruleFilter) {
+        if (empty) {
+            return this;
+        }
+        Candidates[] filteredByStateId = new Candidates[byStateId.length];
+        for (int stateId = 0; stateId < byStateId.length; stateId++) {
+            if (byStateId[stateId] != null) {
+                filteredByStateId[stateId] = byStateId[stateId].filter(ruleFilter);
+            }
+        }
+        return new SwapTable(rules, fingerprints, filteredByStateId, derivedCache);
+    }
+
+    @Nullable
+    public Candidates get(BlockState state) {
+        int stateId = Block.BLOCK_STATE_REGISTRY.getId(state);
+        return stateId >= 0 && stateId < byStateId.length ? byStateId[stateId] : null;
+    }
+
+    /**
+     * A single bit test, for hooks that run on every block change and mostly see states no rule cares about.
+     */
+    public boolean hasCandidates(BlockState state) {
+        if (empty) {
+            return false;
+        }
+        int stateId = Block.BLOCK_STATE_REGISTRY.getId(state);
+        return stateId >= 0 && stateId < byStateId.length && (candidateBits[stateId >> 6] & 1L << stateId) != 0;
+    }
+
+    public Swapper.SwapEntry rule(int ruleId) {
+        return rules[ruleId];
+    }
+
+    /**
+     * @return the rule's content fingerprint, which its probability rolls are keyed by
+     */
+    public long fingerprint(int ruleId) {
+        return fingerprints[ruleId];
+    }
+
+    public int ruleCount() {
+        return rules.length;
+    }
+
+    /**
+     * @return true if no block state has a candidate rule in this table
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * @return the rule filters resolved against {@code registryAccess}, resolving them on first use
+     */
+    public RuleFilters filters(RegistryAccess registryAccess) {
+        RuleFilters resolved = derivedCache.filters;
+        if (resolved != null && resolved.registryAccess == registryAccess) {
+            return resolved;
+        }
+        synchronized (derivedCache) {
+            resolved = derivedCache.filters;
+            if (resolved == null || resolved.registryAccess != registryAccess) {
+                resolved = RuleFilters.resolve(this, registryAccess);
+                derivedCache.filters = resolved;
+            }
+            return resolved;
+        }
+    }
+
+    /**
+     * @return the per-Y swap probabilities for the build height of {@code level}, computing them on first use
+     */
+    public SwapProbabilities probabilities(LevelHeightAccessor level) {
+        int minBuildHeight = level.getMinBuildHeight();
+        int maxBuildHeight = level.getMaxBuildHeight();
+        for (SwapProbabilities probabilities : derivedCache.probabilities) {
+            if (probabilities.minBuildHeight == minBuildHeight && probabilities.maxBuildHeight == maxBuildHeight) {
+                return probabilities;
+            }
+        }
+        synchronized (derivedCache) {
+            SwapProbabilities[] cached = derivedCache.probabilities;
+            for (SwapProbabilities probabilities : cached) {
+                if (probabilities.minBuildHeight == minBuildHeight && probabilities.maxBuildHeight == maxBuildHeight) {
+                    return probabilities;
+                }
+            }
+            SwapProbabilities probabilities = SwapProbabilities.compute(rules, minBuildHeight, maxBuildHeight);
+            SwapProbabilities[] updated = Arrays.copyOf(cached, cached.length + 1);
+            updated[cached.length] = probabilities;
+            derivedCache.probabilities = updated;
+            return probabilities;
+        }
+    }
+
+    private static boolean propertiesMatch(Swapper.SwapEntry entry, BlockState state) {
+        BlockState oldState = entry.oldState();
+        if (entry.ignoreBlockProperties() || oldState.getValues().isEmpty()) {
+            return true;
+        }
+        for (Property<?> property : oldState.getValues().keySet()) {
+            if (!state.hasProperty(property) || !state.getValue(property).equals(oldState.getValue(property))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static BlockState carryProperties(BlockState incomingState, BlockState newState, Int2ObjectOpenHashMap<Property<?>> newStateProperties) {
+        BlockState result = newState;
+        for (Property<?> property : incomingState.getProperties()) {
+            Property newProperty = newStateProperties.get(property.generateHashCode());
+            if (newProperty != null) {
+                result = result.setValue(newProperty, incomingState.getValue((Property) newProperty));
+            }
+        }
+        return result;
+    }
+}
@@ -5,30 +5,24 @@ import com.mojang.serialization.codecs.RecordCodecBuilder;
 import net.minecraft.world.level.ChunkPos;
 import potionseeker.block_swap_advanced.BlockSwap;
 import potionseeker.block_swap_advanced.config.BlockSwapConfig;
-import potionseeker.block_swap_advanced.ProcessedChunksData;
+import potionseeker.block_swap_advanced.metrics.BlockSwapEvent;
+import potionseeker.block_swap_advanced.metrics.ChunkSwapEvent;
+import potionseeker.block_swap_advanced.metrics.ConfigReloadEvent;
+import potionseeker.block_swap_advanced.metrics.SwapMetrics;
 
 import potionseeker.block_swap_advanced.serialization.CodecUtil;
 import potionseeker.block_swap_advanced.serialization.CommentedCodec;
 
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
-import net.minecraft.Util;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Registry;
-import net.minecraft.core.SectionPos;
-import net.minecraft.core.registries.Registries;
-import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.util.profiling.ProfilerFiller;
 import net.minecraft.world.level.Level;
-import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.biome.Biome;
 import net.minecraft.world.level.block.state.BlockState;
-import net.minecraft.world.level.block.state.properties.Property;
 import net.minecraft.world.level.chunk.LevelChunk;
-import net.minecraft.world.level.chunk.LevelChunkSection;
 import net.minecraft.world.level.levelgen.structure.Structure;
-import net.minecraft.world.level.levelgen.structure.StructureStart;
 
 import java.util.*;
 import java.util.function.Supplier;
@@ -40,6 +34,7 @@ public class Swapper {
             BlockState oldState,
             BlockState newState,
             boolean replacePlacement,
+            List<PlacementCause> placementCauses,
             int minY,
             int maxY,
             float blockSwapRand,
@@ -52,6 +47,7 @@ public class Swapper {
                         COMMENTED_STATE_CODEC.fieldOf("old").forGetter(CoreSwapEntry::oldState),
                         COMMENTED_STATE_CODEC.fieldOf("new").forGetter(CoreSwapEntry::newState),
                         Codec.BOOL.optionalFieldOf("replace_placement", true).forGetter(CoreSwapEntry::replacePlacement),
+                        PlacementCause.CODEC.listOf().optionalFieldOf("placement_causes", List.of(PlacementCause.values())).forGetter(CoreSwapEntry::placementCauses),
                         Codec.INT.optionalFieldOf("min_y", Integer.MIN_VALUE).forGetter(CoreSwapEntry::minY),
                         Codec.INT.optionalFieldOf("max_y", Integer.MAX_VALUE).forGetter(CoreSwapEntry::maxY),
                         Codec.floatRange(0.0F, 1.0F).optionalFieldOf("block_swap_rand", 1.0F).forGetter(CoreSwapEntry::blockSwapRand),
@@ -107,6 +103,7 @@ public class Swapper {
         public BlockState oldState() { return core.oldState(); }
         public BlockState newState() { return core.newState(); }
         public boolean replacePlacement() { return core.replacePlacement(); }
+        public List<PlacementCause> placementCauses() { return core.placementCauses(); }
         public int minY() { return core.minY(); }
         public int maxY() { return core.maxY(); }
         public float blockSwapRand() { return core.blockSwapRand(); }
@@ -126,32 +123,84 @@ public class Swapper {
     public static final Supplier<Codec<List<SwapEntry>>> SWAP_ENTRY_CODEC = () -> SwapEntry.CODEC.listOf();
 
     private static BlockSwapConfig CONFIG = null;
-    private static Object2ObjectOpenHashMap<Block, List<SwapEntry>> BLOCK_TO_ENTRIES = new Object2ObjectOpenHashMap<>();
-    private static Reference2ReferenceOpenHashMap<Block, Int2ObjectOpenHashMap<Property<?>>> PROPERTY_CACHE = new Reference2ReferenceOpenHashMap<>();
-    private static String LAST_CONFIG_HASH = "";
+    private static volatile Map<SwapPhase, SwapTable> TABLES = phaseTables(SwapTable.EMPTY);
+    private static volatile Map<PlacementCause, SwapTable> PLACEMENT_TABLES = placementTables(SwapTable.EMPTY);
+    private static volatile String CONFIG_HASH = "";
+    private static volatile long[] RULE_FINGERPRINTS = new long[0];
 
     public static void updateConfig(BlockSwapConfig config) {
-        String newConfigHash = Integer.toString(config.swapEntries().hashCode());
-        if (config.redoGen() && !newConfigHash.equals(LAST_CONFIG_HASH)) {
-            LAST_CONFIG_HASH = newConfigHash;
-            BlockSwap.LOGGER.debug("Config hash changed to {}, will update ProcessedChunksData when a ServerLevel is available", newConfigHash);
+        ConfigReloadEvent event = new ConfigReloadEvent();
+        event.begin();
+        long[] ruleFingerprints = ConfigFingerprint.rules(config.swapEntries());
+        String newConfigHash = ConfigFingerprint.config(ruleFingerprints);
+        RULE_FINGERPRINTS = ruleFingerprints;
+        if (!newConfigHash.equals(CONFIG_HASH)) {
+            CONFIG_HASH = newConfigHash;
+            BlockSwap.LOGGER.debug("Config hash changed to {}", newConfigHash);
         }
 
         CONFIG = config;
-        BLOCK_TO_ENTRIES.clear();
-        PROPERTY_CACHE.clear();
-        BlockSwap.LOGGER.debug("Updating BLOCK_TO_ENTRIES with {} swap entries", config.swapEntries().size());
+        BlockSwap.LOGGER.debug("Compiling swap table for {} swap entries", config.swapEntries().size());
         for (SwapEntry entry : config.swapEntries()) {
-            Block block = entry.oldState().getBlock();
-            BLOCK_TO_ENTRIES.computeIfAbsent(block, k -> new ArrayList<>()).add(entry);
             BlockSwap.LOGGER.debug("Registered SwapEntry: oldState={}, newState={}, replacePlacement={}, blockSwapRand={}",
                     entry.oldState(), entry.newState(), entry.replacePlacement(), entry.blockSwapRand());
         }
-        BlockSwap.LOGGER.info("Updated BLOCK_TO_ENTRIES with {} blocks", BLOCK_TO_ENTRIES.size());
+        TABLES = phaseTables(SwapTable.compile(config.swapEntries(), ruleFingerprints));
+        SwapMetrics.configure(config.swapEntries());
+        PLACEMENT_TABLES = placementTables(TABLES.get(SwapPhase.PLACEMENT));
+        ChunkScanExecutor.configure(config.retroGenThreads());
+        BlockSwap.LOGGER.info("Updated swap table with {} swap entries", config.swapEntries().size());
+        event.complete(config.swapEntries().size());
     }
 
-    public static List<SwapEntry> getEntriesForBlock(Block block) {
-        return BLOCK_TO_ENTRIES.get(block);
+    private static Map<SwapPhase, SwapTable> phaseTables(SwapTable table) {
+        Map<SwapPhase, SwapTable> tables = new EnumMap<>(SwapPhase.class);
+        for (SwapPhase phase : SwapPhase.values()) {
+            tables.put(phase, table.forPhase(phase));
+        }
+        return tables;
+    }
+
+    private static Map<PlacementCause, SwapTable> placementTables(SwapTable placementTable) {
+        Map<PlacementCause, SwapTable> tables = new EnumMap<>(PlacementCause.class);
+        for (PlacementCause cause : PlacementCause.values()) {
+            tables.put(cause, placementTable.forPlacementCause(cause));
+        }
+        return tables;
+    }
+
+    /**
+     * @return the hash of the current swap entries, which chunks record when they are processed
+     */
+    public static String configHash() {
+        if (CONFIG == null) {
+            BlockSwap.LOGGER.debug("CONFIG is null, loading config");
+            updateConfig(BlockSwapConfig.getConfig(true));
+        }
+        return CONFIG_HASH;
+    }
+
+    /**
+     * @return the fingerprint of every current swap entry, indexed by rule id; not to be modified
+     */
+    public static long[] ruleFingerprints() {
+        configHash();
+        return RULE_FINGERPRINTS;
+    }
+
+    public static SwapTable table(SwapPhase phase) {
+        return TABLES.get(phase);
+    }
+
+    public static boolean isSwapCandidate(BlockState state) {
+        return table(SwapPhase.GENERATION).hasCandidates(state);
+    }
+
+    /**
+     * True if a rule swaps the state for at least one placement cause. Cheap enough to run on every block change.
+     */
+    public static boolean isPlacementCandidate(BlockState state) {
+        return table(SwapPhase.PLACEMENT).hasCandidates(state);
     }
 
     public static boolean isWithinChunkSwapRange(ServerLevel serverLevel, ChunkPos chunkPos, int chunkSwapRange) {
@@ -171,135 +220,101 @@ public class Swapper {
         return false; // No players within chunk range
     }
 
-    @SuppressWarnings({"unchecked", "rawtypes"})
     public static BlockState remapState(BlockState incomingState, Level world, BlockPos pos, boolean isPlacement) {
         if (CONFIG == null) {
             BlockSwap.LOGGER.debug("CONFIG is null, loading config");
             updateConfig(BlockSwapConfig.getConfig(true));
         }
+        SwapPhase phase = isPlacement ? SwapPhase.PLACEMENT : SwapPhase.GENERATION;
+        return remap(table(phase), phase, incomingState, world, pos);
+    }
+
+    /**
+     * Swaps a block placed in an existing level, using only the rules that apply to the {@link PlacementCause} marked
+     * on the current thread.
+     */
+    public static BlockState remapPlacement(BlockState incomingState, Level world, BlockPos pos) {
+        if (CONFIG == null) {
+            BlockSwap.LOGGER.debug("CONFIG is null, loading config");
+            updateConfig(BlockSwapConfig.getConfig(true));
+        }
+        return remap(PLACEMENT_TABLES.get(PlacementCause.current()), SwapPhase.PLACEMENT, incomingState, world, pos);
+    }
 
-        Block block = incomingState.getBlock();
-        List<SwapEntry> entries = BLOCK_TO_ENTRIES.get(block);
-        if (entries == null || entries.isEmpty()) {
-            BlockSwap.LOGGER.debug("No SwapEntry found for block: {}", block);
+    private static BlockState remap(SwapTable table, SwapPhase phase, BlockState incomingState, Level world, BlockPos pos) {
+        SwapTable.Candidates candidates = table.get(incomingState);
+        if (candidates == null) {
+            BlockSwap.LOGGER.debug("No SwapEntry found for state: {}", incomingState);
             return incomingState;
         }
 
-        String dimensionId = world.dimension().location().toString();
-        ResourceLocation biomeId = world.registryAccess()
-                .registryOrThrow(Registries.BIOME)
-                .getKey(world.getBiome(pos).value());
-        Random random = new Random(pos.asLong());
-
-        BlockSwap.LOGGER.debug("Checking {} SwapEntry(s) for state={} at pos={}", entries.size(), incomingState, pos);
-        for (SwapEntry entry : entries) {
-            // Skip generation swaps if only_replace_placements
-            if (entry.only_replace_placements() && !isPlacement) {
-                BlockSwap.LOGGER.debug("Skipping SwapEntry due to only_replace_placements: oldState={}", entry.oldState());
-                continue;
-            }
-            // Skip placement swaps if replace_placement is false
-            if (!entry.replacePlacement() && isPlacement) {
-                BlockSwap.LOGGER.debug("Skipping SwapEntry due to replacePlacement=false: oldState={}", entry.oldState());
-                continue;
-            }
+        SwapMetrics.blockEvaluated(phase);
+        // Placements are rare enough to time every one; generation evaluations are sampled
+        if (phase == SwapPhase.GENERATION && !SwapMetrics.sampleBlock()) {
+            return findSwap(table, phase, candidates, incomingState, world, pos);
+        }
+        BlockSwapEvent event = new BlockSwapEvent();
+        event.begin();
+        long start = System.nanoTime();
+        BlockState newState = findSwap(table, phase, candidates, incomingState, world, pos);
+        SwapMetrics.blockTimed(phase, System.nanoTime() - start);
+        event.complete(world, pos, phase, newState != incomingState);
+        return newState;
+    }
 
-            BlockState oldState = entry.oldState();
-            boolean propertiesMatch = true;
-            if (!entry.ignoreBlockProperties() && !oldState.getValues().isEmpty()) {
-                for (Property<?> property : oldState.getValues().keySet()) {
-                    if (!incomingState.hasProperty(property) || !incomingState.getValue(property).equals(oldState.getValue(property))) {
-                        propertiesMatch = false;
-                        break;
-                    }
-                }
-            }
-            if (!propertiesMatch) {
-                BlockSwap.LOGGER.debug("Properties do not match for SwapEntry: oldState={}, incomingState={}", oldState, incomingState);
-                continue;
-            }
+    private static BlockState findSwap(SwapTable table, SwapPhase phase, SwapTable.Candidates candidates, BlockState incomingState, Level world, BlockPos pos) {
+        RuleFilters filters = table.filters(world.registryAccess());
+        SwapProbabilities probabilities = table.probabilities(world);
+        Biome biome = null;
+        long seed = world instanceof ServerLevel serverLevel ? serverLevel.getSeed() : 0L;
 
-            int effectiveMinY = entry.minY() == Integer.MIN_VALUE ? world.getMinBuildHeight() : entry.minY();
-            int effectiveMaxY = entry.maxY() == Integer.MAX_VALUE ? world.getMaxBuildHeight() : entry.maxY();
-            float swapProbability = entry.blockSwapRand();
-            int blockY = pos.getY();
-            if (blockY < effectiveMinY) {
-                if (entry.minYBufferZone() > 0) {
-                    int bufferStart = effectiveMinY;
-                    int bufferEnd = effectiveMinY - entry.minYBufferZone();
-                    if (blockY >= bufferEnd && blockY < bufferStart) {
-                        swapProbability *= (float)(blockY - bufferEnd) / (bufferStart - bufferEnd);
-                    } else {
-                        swapProbability = 0.0F;
-                    }
-                } else {
-                    swapProbability = 0.0F;
-                }
-            } else if (blockY > effectiveMaxY) {
-                if (entry.maxYBufferZone() > 0) {
-                    int bufferStart = effectiveMaxY;
-                    int bufferEnd = effectiveMaxY + entry.maxYBufferZone();
-                    if (blockY > bufferStart && blockY <= bufferEnd) {
-                        swapProbability *= (float)(bufferEnd - blockY) / (bufferEnd - bufferStart);
-                    } else {
-                        swapProbability = 0.0F;
-                    }
-                } else {
-                    swapProbability = 0.0F;
-                }
-            }
+        BlockSwap.LOGGER.debug("Checking {} SwapEntry(s) for state={} at pos={}", candidates.size(), incomingState, pos);
+        for (int c = 0; c < candidates.size(); c++) {
+            int ruleId = candidates.ruleId(c);
+            RuleFilters.Filter filter = filters.get(ruleId);
 
-            if (swapProbability < 1.0F && random.nextFloat() > swapProbability) {
-                BlockSwap.LOGGER.debug("Swap skipped due to randomization: swapProbability={}, random={}", swapProbability, random.nextFloat());
+            float swapProbability = probabilities.get(ruleId, pos.getY());
+            if (swapProbability <= 0.0F || swapProbability < 1.0F && SwapRandom.roll(seed, pos.getX(), pos.getY(), pos.getZ(), table.fingerprint(ruleId)) >= swapProbability) {
+                BlockSwap.LOGGER.debug("Swap skipped due to randomization: swapProbability={}", swapProbability);
                 continue;
             }
 
-            boolean dimensionAllowed = entry.dimensions_whitelist().isEmpty() || entry.dimensions_whitelist().contains(dimensionId);
-            if (dimensionAllowed && entry.dimensions_blacklist().contains(dimensionId)) {
-                dimensionAllowed = false;
-            }
-            if (!dimensionAllowed) {
-                BlockSwap.LOGGER.debug("Swap skipped due to dimension filter: dimensionId={}", dimensionId);
+            if (!filter.allowsDimension(world.dimension())) {
+                BlockSwap.LOGGER.debug("Swap skipped due to dimension filter: dimensionId={}", world.dimension().location());
                 continue;
             }
 
             // Biome checks
-            boolean biomeAllowed = entry.biomes_whitelist().isEmpty() || entry.biomes_whitelist().contains(biomeId.toString());
-            if (biomeAllowed && entry.biomes_blacklist().contains(biomeId.toString())) {
-                biomeAllowed = false;
-            }
-            if (!biomeAllowed) {
-                BlockSwap.LOGGER.debug("Swap skipped due to biome filter: biomeId={}", biomeId);
-                continue;
+            if (filter.filtersBiomes()) {
+                if (biome == null) {
+                    biome = world.getBiome(pos).value();
+                }
+                if (!filter.allowsBiome(biome)) {
+                    BlockSwap.LOGGER.debug("Swap skipped due to biome filter at {}", pos);
+                    continue;
+                }
             }
 
             // Structure checks (ServerLevel only)
             boolean structureAllowed = true;
-            if (world instanceof ServerLevel serverWorld && (!entry.structures_whitelist().isEmpty() || !entry.structures_blacklist().isEmpty())) {
+            if (world instanceof ServerLevel serverWorld && filter.filtersStructures()) {
+                ChunkStructureView structures = ChunkStructureView.forChunkAt(serverWorld, pos);
                 structureAllowed = false;
                 // Check whitelist
-                for (String structStr : entry.structures_whitelist()) {
-                    ResourceLocation structId = new ResourceLocation(structStr);
-                    Structure structure = serverWorld.registryAccess().registryOrThrow(Registries.STRUCTURE).get(structId);
-                    if (structure != null) {
-                        StructureStart start = serverWorld.structureManager().getStructureWithPieceAt(pos, structure);
-                        if (start != null && start.isValid()) {
-                            structureAllowed = true;
-                            break;
-                        }
+                for (Structure structure : filter.structureWhitelist()) {
+                    structures.capture(structure);
+                    if (structures.isInside(structure, pos)) {
+                        structureAllowed = true;
+                        break;
                     }
                 }
                 // Check blacklist if whitelisted
-                if (structureAllowed && !entry.structures_blacklist().isEmpty()) {
-                    for (String structStr : entry.structures_blacklist()) {
-                        ResourceLocation structId = new ResourceLocation(structStr);
-                        Structure structure = serverWorld.registryAccess().registryOrThrow(Registries.STRUCTURE).get(structId);
-                        if (structure != null) {
-                            StructureStart start = serverWorld.structureManager().getStructureWithPieceAt(pos, structure);
-                            if (start != null && start.isValid()) {
-                                structureAllowed = false;
-                                break;
-                            }
+                if (structureAllowed) {
+                    for (Structure structure : filter.structureBlacklist()) {
+                        structures.capture(structure);
+                        if (structures.isInside(structure, pos)) {
+                            structureAllowed = false;
+                            break;
                         }
                     }
                 }
@@ -309,24 +324,11 @@ public class Swapper {
                 continue;
             }
 
-            final BlockState finalNewState = entry.newState();
-            Int2ObjectOpenHashMap<Property<?>> newStateProperties = PROPERTY_CACHE.computeIfAbsent(finalNewState.getBlock(), (block1) -> Util.make(new Int2ObjectOpenHashMap<>(), (set) -> {
-                for (Property<?> property : finalNewState.getProperties()) {
-                    set.put(property.generateHashCode(), property);
-                }
-            }));
-
-            BlockState newState = finalNewState;
-            for (Property<?> property : incomingState.getProperties()) {
-                Property newProperty = newStateProperties.get(property.generateHashCode());
-                if (newProperty != null) {
-                    newState = newState.setValue(newProperty, incomingState.getValue((Property) newProperty));
-                }
-            }
-
+            BlockState newState = candidates.target(c);
             if (CONFIG.verboseLogging()) {
-                BlockSwap.LOGGER.info("Swapping {} to {} at {} during world generation or placement", incomingState, newState, pos);
+                BlockSwap.LOGGER.info("Swapping {} to {} at {} during {}", incomingState, newState, pos, phase.description());
             }
+            SwapMetrics.swapApplied(phase, ruleId);
             return newState;
         }
         return incomingState;
@@ -353,187 +355,70 @@ public class Swapper {
             BlockSwap.LOGGER.debug("Chunk swap skipped for {}: outside chunk_swap_range", chunkPos);
             return;
         }
+        if (ChunkScanExecutor.isInFlight(serverLevel, chunkPos)) {
+            return;
+        }
 
-        ProcessedChunksData data = ProcessedChunksData.load(serverLevel);
-        String newConfigHash = Integer.toString(CONFIG.swapEntries().hashCode());
-        boolean isProcessed = data.isChunkProcessed(chunkPos);
-        if (!CONFIG.redoGen() && isProcessed && newConfigHash.equals(data.getConfigHash())) {
+        if (!CONFIG.redoGen() && ProcessedChunks.isProcessedUnderCurrentConfig(chunk)) {
             BlockSwap.LOGGER.debug("Skipping chunk {}: already processed and config unchanged", chunkPos);
             return;
         }
 
-        if (!newConfigHash.equals(data.getConfigHash()) && CONFIG.redoGen()) {
-            data.updateConfigHash(newConfigHash);
-            BlockSwap.LOGGER.debug("Updated config hash to {}, clearing processed chunks for redoGen", newConfigHash);
+        BlockSwap.LOGGER.debug("Swapping existing chunk: {} (retroGen={}, redoGen={})", chunkPos, CONFIG.retroGen(), CONFIG.redoGen());
+        retroSwap(serverLevel, chunk);
+    }
+
+    /**
+     * Runs the retro pass on a chunk whatever retro_gen, redo_gen and chunk_swap_range say, for chunks an operator
+     * asked to have processed. The pass is done once the chunk is marked processed under the current config; a scan
+     * that was discarded because the chunk changed leaves it unmarked.
+     */
+    public static void processExistingChunk(ServerLevel level, LevelChunk chunk) {
+        if (CONFIG == null) {
+            BlockSwap.LOGGER.debug("CONFIG is null, loading config");
+            updateConfig(BlockSwapConfig.getConfig(true));
+        }
+        if (ChunkScanExecutor.isInFlight(level, chunk.getPos()) || ProcessedChunks.isProcessedUnderCurrentConfig(chunk)) {
+            return;
         }
+        retroSwap(level, chunk);
+    }
 
-        BlockSwap.LOGGER.debug("Swapping existing chunk: {} (retroGen={}, redoGen={})", chunkPos, CONFIG.retroGen(), CONFIG.redoGen());
-        Level world = chunk.getLevel();
-        LevelChunkSection[] sections = chunk.getSections();
-        Random random = new Random(chunkPos.toLong());
-        String dimensionId = world.dimension().location().toString();
-        Object2ObjectOpenHashMap<BlockPos, ResourceLocation> biomeIdCache = new Object2ObjectOpenHashMap<>();
-
-        for (int i = 0; i < sections.length; i++) {
-            LevelChunkSection section = sections[i];
-            if (section != null) {
-                int bottomY = SectionPos.sectionToBlockCoord(chunk.getSectionYFromSectionIndex(i));
-                for (int x = 0; x < 16; x++) {
-                    for (int y = 0; y < 16; y++) {
-                        for (int z = 0; z < 16; z++) {
-                            BlockPos blockPos = new BlockPos(
-                                    SectionPos.sectionToBlockCoord(chunkPos.x) + x,
-                                    bottomY + y,
-                                    SectionPos.sectionToBlockCoord(chunkPos.z) + z
-                            );
-
-                            BlockState state = section.getBlockState(x, y, z);
-                            List<SwapEntry> entries = BLOCK_TO_ENTRIES.get(state.getBlock());
-                            if (entries == null) {
-                                continue;
-                            }
-
-                            BlockState newState = state;
-                            for (SwapEntry entry : entries) {
-                                if (entry.only_replace_placements() || entry.defer_swap()) {
-                                    continue;
-                                }
-
-                                BlockState oldState = entry.oldState();
-                                boolean propertiesMatch = true;
-                                if (!entry.ignoreBlockProperties() && !oldState.getValues().isEmpty()) {
-                                    for (Property<?> property : oldState.getValues().keySet()) {
-                                        if (!state.hasProperty(property) || !state.getValue(property).equals(oldState.getValue(property))) {
-                                            propertiesMatch = false;
-                                            break;
-                                        }
-                                    }
-                                }
-                                if (!propertiesMatch) {
-                                    continue;
-                                }
-
-                                int effectiveMinY = entry.minY() == Integer.MIN_VALUE ? world.getMinBuildHeight() : entry.minY();
-                                int effectiveMaxY = entry.maxY() == Integer.MAX_VALUE ? world.getMaxBuildHeight() : entry.maxY();
-                                float swapProbability = entry.blockSwapRand();
-                                int blockY = blockPos.getY();
-                                if (blockY < effectiveMinY) {
-                                    if (entry.minYBufferZone() > 0) {
-                                        int bufferStart = effectiveMinY;
-                                        int bufferEnd = effectiveMinY - entry.minYBufferZone();
-                                        if (blockY >= bufferEnd && blockY < bufferStart) {
-                                            swapProbability *= (float)(blockY - bufferEnd) / (bufferStart - bufferEnd);
-                                        } else {
-                                            swapProbability = 0.0F;
-                                        }
-                                    } else {
-                                        swapProbability = 0.0F;
-                                    }
-                                } else if (blockY > effectiveMaxY) {
-                                    if (entry.maxYBufferZone() > 0) {
-                                        int bufferStart = effectiveMaxY;
-                                        int bufferEnd = effectiveMaxY + entry.maxYBufferZone();
-                                        if (blockY > bufferStart && blockY <= bufferEnd) {
-                                            swapProbability *= (float)(bufferEnd - blockY) / (bufferEnd - bufferStart);
-                                        } else {
-                                            swapProbability = 0.0F;
-                                        }
-                                    } else {
-                                        swapProbability = 0.0F;
-                                    }
-                                }
-
-                                if (swapProbability < 1.0F && random.nextFloat() > swapProbability) {
-                                    continue;
-                                }
-
-                                boolean dimensionAllowed = entry.dimensions_whitelist().isEmpty() || entry.dimensions_whitelist().contains(dimensionId);
-                                if (dimensionAllowed && entry.dimensions_blacklist().contains(dimensionId)) {
-                                    dimensionAllowed = false;
-                                }
-                                if (!dimensionAllowed) {
-                                    continue;
-                                }
-
-                                ResourceLocation cachedBiomeId = biomeIdCache.get(blockPos);
-                                if (cachedBiomeId == null) {
-                                    cachedBiomeId = world.registryAccess()
-                                            .registryOrThrow(Registries.BIOME)
-                                            .getKey(world.getBiome(blockPos).value());
-                                    biomeIdCache.put(blockPos, cachedBiomeId);
-                                }
-                                boolean biomeAllowed = entry.biomes_whitelist().isEmpty() || entry.biomes_whitelist().contains(cachedBiomeId.toString());
-                                if (biomeAllowed && entry.biomes_blacklist().contains(cachedBiomeId.toString())) {
-                                    biomeAllowed = false;
-                                }
-                                if (!biomeAllowed) {
-                                    continue;
-                                }
-
-                                boolean structureAllowed = true;
-                                if (world instanceof ServerLevel serverWorld && (!entry.structures_whitelist().isEmpty() || !entry.structures_blacklist().isEmpty())) {
-                                    structureAllowed = false;
-                                    for (String structStr : entry.structures_whitelist()) {
-                                        ResourceLocation structId = new ResourceLocation(structStr);
-                                        Structure structure = serverWorld.registryAccess().registryOrThrow(Registries.STRUCTURE).get(structId);
-                                        if (structure != null) {
-                                            StructureStart start = serverWorld.structureManager().getStructureWithPieceAt(blockPos, structure);
-                                            if (start != null && start.isValid()) {
-                                                structureAllowed = true;
-                                                break;
-                                            }
-                                        }
-                                    }
-                                    if (structureAllowed && !entry.structures_blacklist().isEmpty()) {
-                                        for (String structStr : entry.structures_blacklist()) {
-                                            ResourceLocation structId = new ResourceLocation(structStr);
-                                            Structure structure = serverWorld.registryAccess().registryOrThrow(Registries.STRUCTURE).get(structId);
-                                            if (structure != null) {
-                                                StructureStart start = serverWorld.structureManager().getStructureWithPieceAt(blockPos, structure);
-                                                if (start != null && start.isValid()) {
-                                                    structureAllowed = false;
-                                                    break;
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-                                if (!structureAllowed) {
-                                    BlockSwap.LOGGER.debug("Structure filter blocked retro-swap at {}", blockPos);
-                                    continue;
-                                }
-
-                                final BlockState finalNewState = entry.newState();
-                                Int2ObjectOpenHashMap<Property<?>> newStateProperties = PROPERTY_CACHE.computeIfAbsent(finalNewState.getBlock(), (block1) -> Util.make(new Int2ObjectOpenHashMap<>(), (set) -> {
-                                    for (Property<?> property : finalNewState.getProperties()) {
-                                        set.put(property.generateHashCode(), property);
-                                    }
-                                }));
-
-                                newState = finalNewState;
-                                for (Property<?> property : state.getProperties()) {
-                                    Property newProperty = newStateProperties.get(property.generateHashCode());
-                                    if (newProperty != null) {
-                                        newState = newState.setValue(newProperty, state.getValue((Property) newProperty));
-                                    }
-                                }
-                                break;
-                            }
-
-                            if (!newState.equals(state) && CONFIG.verboseLogging()) {
-                                BlockSwap.LOGGER.info("Swapping {} to {} at {} during retroGen or redoGen", state, newState, blockPos);
-                            }
-                            if (!newState.equals(state)) {
-                                world.setBlock(blockPos, newState, 2);
-                            }
-                        }
-                    }
-                }
+    private static void retroSwap(ServerLevel serverLevel, LevelChunk chunk) {
+        if (table(SwapPhase.RETRO).isEmpty()) {
+            SwapMetrics.chunkSkipped(SwapPhase.RETRO);
+            markProcessed(chunk);
+            return;
+        }
+        // A chunk processed under an earlier config only needs the rules that changed since; unchanged rules already
+        // had their turn, and their probability rolls come out the same every time. Chunks whose palettes hold no
+        // source block of a changed rule end up with an empty snapshot and aren't scanned at all.
+        SwapTable table = table(SwapPhase.RETRO);
+        boolean[] activeRules = activeRules(table, serverLevel, SwapPhase.RETRO);
+        boolean[] pendingRules = ProcessedChunks.pendingRules(chunk, RULE_FINGERPRINTS);
+        if (pendingRules != null) {
+            for (int ruleId = 0; ruleId < activeRules.length; ruleId++) {
+                activeRules[ruleId] &= pendingRules[ruleId];
             }
         }
-        data.markChunkProcessed(chunkPos);
-        data.markProcessedThisSession(chunkPos);
-        BlockSwap.LOGGER.debug("Marked chunk {} as processed for retroGen/redoGen", chunkPos);
+        ChunkSnapshot snapshot = ChunkSnapshot.capture(chunk, serverLevel, table, activeRules, CONFIG.verboseLogging(), SwapPhase.RETRO);
+        if (snapshot.isEmpty()) {
+            SwapMetrics.chunkSkipped(SwapPhase.RETRO);
+            markProcessed(chunk);
+            return;
+        }
+        ChunkScanExecutor.submit(serverLevel, chunk, snapshot, (level, scannedChunk, batch) -> {
+            ChunkSwapEvent event = new ChunkSwapEvent();
+            event.begin();
+            int applied = batch.apply(level, scannedChunk);
+            markProcessed(scannedChunk);
+            event.complete(level, scannedChunk.getPos(), SwapPhase.RETRO, batch.blocksEvaluated(), applied, batch.scanNanos());
+        });
+    }
+
+    private static void markProcessed(LevelChunk chunk) {
+        ProcessedChunks.markProcessed(chunk);
+        BlockSwap.LOGGER.debug("Marked chunk {} as processed for retroGen/redoGen", chunk.getPos());
     }
 
     public static void runDeferredSwaps(LevelChunk chunk) {
@@ -544,6 +429,9 @@ public class Swapper {
         if (!(chunk.getLevel() instanceof ServerLevel serverLevel)) {
             return; // Server-side only
         }
+        if (table(SwapPhase.DEFERRED).isEmpty()) {
+            return;
+        }
 
         ChunkPos chunkPos = chunk.getPos();
         if (!isWithinChunkSwapRange(serverLevel, chunkPos, CONFIG.chunkSwapRange())) {
@@ -551,176 +439,39 @@ public class Swapper {
             return;
         }
 
-        ProcessedChunksData data = ProcessedChunksData.load(serverLevel);
-        String newConfigHash = Integer.toString(CONFIG.swapEntries().hashCode());
-        if (CONFIG.redoGen() && !newConfigHash.equals(data.getConfigHash())) {
-            data.updateConfigHash(newConfigHash);
-            BlockSwap.LOGGER.debug("Updated config hash to {} during deferred swap for {}", newConfigHash, chunkPos);
+        // Deferred swaps belong to chunk generation, so they are applied right away rather than handed to the scanner pool
+        BlockSwap.LOGGER.debug("Running deferred swaps for chunk {}", chunkPos);
+        ProfilerFiller profiler = serverLevel.getProfiler();
+        profiler.push(BlockSwap.MOD_ID + ":deferred_swap");
+        ChunkSwapEvent event = new ChunkSwapEvent();
+        event.begin();
+        ChunkSnapshot snapshot = capture(chunk, serverLevel, SwapPhase.DEFERRED);
+        if (snapshot.isEmpty()) {
+            SwapMetrics.chunkSkipped(SwapPhase.DEFERRED);
+        } else {
+            SwapBatch batch = ChunkScanner.scan(snapshot);
+            int applied = batch.apply(serverLevel, chunk);
+            event.complete(serverLevel, chunkPos, SwapPhase.DEFERRED, batch.blocksEvaluated(), applied, batch.scanNanos());
         }
+        profiler.pop();
+    }
 
-        BlockSwap.LOGGER.debug("Running deferred swaps for chunk {}", chunkPos);
-        Level world = chunk.getLevel();
-        LevelChunkSection[] sections = chunk.getSections();
-        Random random = new Random(chunkPos.toLong());
-        Object2ObjectOpenHashMap<BlockPos, ResourceLocation> biomeIdCache = new Object2ObjectOpenHashMap<>();
-        String dimensionId = world.dimension().location().toString();
-
-        for (int i = 0; i < sections.length; i++) {
-            LevelChunkSection section = sections[i];
-            if (section != null) {
-                int bottomY = SectionPos.sectionToBlockCoord(chunk.getSectionYFromSectionIndex(i));
-                for (int x = 0; x < 16; x++) {
-                    for (int y = 0; y < 16; y++) {
-                        for (int z = 0; z < 16; z++) {
-                            BlockPos blockPos = new BlockPos(
-                                    SectionPos.sectionToBlockCoord(chunkPos.x) + x,
-                                    bottomY + y,
-                                    SectionPos.sectionToBlockCoord(chunkPos.z) + z
-                            );
-
-                            BlockState state = section.getBlockState(x, y, z);
-                            List<SwapEntry> entries = BLOCK_TO_ENTRIES.get(state.getBlock());
-                            if (entries == null) {
-                                continue;
-                            }
-
-                            BlockState newState = state;
-                            for (SwapEntry entry : entries) {
-                                if (!entry.defer_swap()) {
-                                    continue;
-                                }
-
-                                BlockState oldState = entry.oldState();
-                                boolean propertiesMatch = true;
-                                if (!entry.ignoreBlockProperties() && !oldState.getValues().isEmpty()) {
-                                    for (Property<?> property : oldState.getValues().keySet()) {
-                                        if (!state.hasProperty(property) || !state.getValue(property).equals(oldState.getValue(property))) {
-                                            propertiesMatch = false;
-                                            break;
-                                        }
-                                    }
-                                }
-                                if (!propertiesMatch) {
-                                    continue;
-                                }
-
-                                int effectiveMinY = entry.minY() == Integer.MIN_VALUE ? world.getMinBuildHeight() : entry.minY();
-                                int effectiveMaxY = entry.maxY() == Integer.MAX_VALUE ? world.getMaxBuildHeight() : entry.maxY();
-                                float swapProbability = entry.blockSwapRand();
-                                int blockY = blockPos.getY();
-                                if (blockY < effectiveMinY) {
-                                    if (entry.minYBufferZone() > 0) {
-                                        int bufferStart = effectiveMinY;
-                                        int bufferEnd = effectiveMinY - entry.minYBufferZone();
-                                        if (blockY >= bufferEnd && blockY < bufferStart) {
-                                            swapProbability *= (float)(blockY - bufferEnd) / (bufferStart - bufferEnd);
-                                        } else {
-                                            swapProbability = 0.0F;
-                                        }
-                                    } else {
-                                        swapProbability = 0.0F;
-                                    }
-                                } else if (blockY > effectiveMaxY) {
-                                    if (entry.maxYBufferZone() > 0) {
-                                        int bufferStart = effectiveMaxY;
-                                        int bufferEnd = effectiveMaxY + entry.maxYBufferZone();
-                                        if (blockY > bufferStart && blockY <= bufferEnd) {
-                                            swapProbability *= (float)(bufferEnd - blockY) / (bufferEnd - bufferStart);
-                                        } else {
-                                            swapProbability = 0.0F;
-                                        }
-                                    } else {
-                                        swapProbability = 0.0F;
-                                    }
-                                }
-
-                                if (swapProbability < 1.0F && random.nextFloat() > swapProbability) {
-                                    continue;
-                                }
-
-                                boolean dimensionAllowed = entry.dimensions_whitelist().isEmpty() || entry.dimensions_whitelist().contains(dimensionId);
-                                if (dimensionAllowed && entry.dimensions_blacklist().contains(dimensionId)) {
-                                    dimensionAllowed = false;
-                                }
-                                if (!dimensionAllowed) {
-                                    continue;
-                                }
-
-                                ResourceLocation cachedBiomeId = biomeIdCache.get(blockPos);
-                                if (cachedBiomeId == null) {
-                                    cachedBiomeId = world.registryAccess()
-                                            .registryOrThrow(Registries.BIOME)
-                                            .getKey(world.getBiome(blockPos).value());
-                                    biomeIdCache.put(blockPos, cachedBiomeId);
-                                }
-                                boolean biomeAllowed = entry.biomes_whitelist().isEmpty() || entry.biomes_whitelist().contains(cachedBiomeId.toString());
-                                if (biomeAllowed && entry.biomes_blacklist().contains(cachedBiomeId.toString())) {
-                                    biomeAllowed = false;
-                                }
-                                if (!biomeAllowed) {
-                                    continue;
-                                }
-
-                                boolean structureAllowed = true;
-                                if (world instanceof ServerLevel serverWorld && (!entry.structures_whitelist().isEmpty() || !entry.structures_blacklist().isEmpty())) {
-                                    structureAllowed = false;
-                                    for (String structStr : entry.structures_whitelist()) {
-                                        ResourceLocation structId = new ResourceLocation(structStr);
-                                        Structure structure = serverWorld.registryAccess().registryOrThrow(Registries.STRUCTURE).get(structId);
-                                        if (structure != null) {
-                                            StructureStart start = serverWorld.structureManager().getStructureWithPieceAt(blockPos, structure);
-                                            if (start != null && start.isValid()) {
-                                                structureAllowed = true;
-                                                break;
-                                            }
-                                        }
-                                    }
-                                    if (structureAllowed && !entry.structures_blacklist().isEmpty()) {
-                                        for (String structStr : entry.structures_blacklist()) {
-                                            ResourceLocation structId = new ResourceLocation(structStr);
-                                            Structure structure = serverWorld.registryAccess().registryOrThrow(Registries.STRUCTURE).get(structId);
-                                            if (structure != null) {
-                                                StructureStart start = serverWorld.structureManager().getStructureWithPieceAt(blockPos, structure);
-                                                if (start != null && start.isValid()) {
-                                                    structureAllowed = false;
-                                                    break;
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-                                if (!structureAllowed) {
-                                    BlockSwap.LOGGER.debug("Structure filter blocked deferred swap at {}", blockPos);
-                                    continue;
-                                }
-
-                                final BlockState finalNewState = entry.newState();
-                                Int2ObjectOpenHashMap<Property<?>> newStateProperties = PROPERTY_CACHE.computeIfAbsent(finalNewState.getBlock(), (block1) -> Util.make(new Int2ObjectOpenHashMap<>(), (set) -> {
-                                    for (Property<?> property : finalNewState.getProperties()) {
-                                        set.put(property.generateHashCode(), property);
-                                    }
-                                }));
-
-                                newState = finalNewState;
-                                for (Property<?> property : state.getProperties()) {
-                                    Property newProperty = newStateProperties.get(property.generateHashCode());
-                                    if (newProperty != null) {
-                                        newState = newState.setValue(newProperty, state.getValue((Property) newProperty));
-                                    }
-                                }
-                                break;
-                            }
-
-                            if (!newState.equals(state) && CONFIG.verboseLogging()) {
-                                BlockSwap.LOGGER.info("Swapping {} to {} at {} during deferred swap", state, newState, blockPos);
-                            }
-                            if (!newState.equals(state)) {
-                                world.setBlock(blockPos, newState, 2);
-                            }
-                        }
-                    }
-                }
-            }
+    private static ChunkSnapshot capture(LevelChunk chunk, ServerLevel world, SwapPhase phase) {
+        SwapTable table = table(phase);
+        return ChunkSnapshot.capture(chunk, world, table, activeRules(table, world, phase), CONFIG.verboseLogging(), phase);
+    }
+
+    /**
+     * Phase and dimension filters don't depend on the block position, so they are resolved once per chunk.
+     *
+     * @return the rules of {@code table} that take part in {@code phase} in {@code world}, indexed by rule id
+     */
+    public static boolean[] activeRules(SwapTable table, Level world, SwapPhase phase) {
+        RuleFilters filters = table.filters(world.registryAccess());
+        boolean[] activeRules = new boolean[table.ruleCount()];
+        for (int ruleId = 0; ruleId < activeRules.length; ruleId++) {
+            activeRules[ruleId] = phase.includes(table.rule(ruleId)) && filters.get(ruleId).allowsDimension(world.dimension());
         }
+        return activeRules;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,31 @@
+package potionseeker.block_swap_advanced.swapper;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.util.RandomSource;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.StructureManager;
+import net.minecraft.world.level.WorldGenLevel;
+import net.minecraft.world.level.chunk.ChunkGenerator;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+import net.minecraft.world.level.levelgen.structure.StructurePiece;
+import net.minecraft.world.level.levelgen.structure.pieces.StructurePieceSerializationContext;
+import net.minecraft.world.level.levelgen.structure.pieces.StructurePieceType;
+
+/**
+ * A structure piece that is nothing but its bounding box, which is all structure filters look at.
+ */
+final class BoxPiece extends StructurePiece {
+    BoxPiece(StructurePieceType type, int genDepth, BoundingBox boundingBox) {
+        super(type, genDepth, boundingBox);
+    }
+
+    @Override
+    protected void addAdditionalSaveData(StructurePieceSerializationContext context, CompoundTag tag) {
+    }
+
+    @Override
+    public void postProcess(WorldGenLevel level, StructureManager structureManager, ChunkGenerator generator, RandomSource random, BoundingBox box, ChunkPos chunkPos, BlockPos pos) {
+        throw new UnsupportedOperationException("Test structure pieces only carry their bounding box");
+    }
+}
@@ -0,0 +1,56 @@
+package potionseeker.block_swap_advanced.swapper;
+
+import net.minecraft.SharedConstants;
+import net.minecraft.core.Holder;
+import net.minecraft.core.LayeredRegistryAccess;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.RegistryDataLoader;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.server.RegistryLayer;
+import net.minecraft.server.packs.PackType;
+import net.minecraft.server.packs.repository.PackRepository;
+import net.minecraft.server.packs.repository.ServerPacksSource;
+import net.minecraft.server.packs.resources.CloseableResourceManager;
+import net.minecraft.server.packs.resources.MultiPackResourceManager;
+import net.minecraft.world.level.dimension.BuiltinDimensionTypes;
+import net.minecraft.world.level.dimension.DimensionType;
+
+import java.util.List;
+
+/**
+ * Bootstraps the vanilla registries without a server, like the converter's {@code OfflineRegistries}. The worldgen
+ * registries (biomes, structures, dimension types) are loaded from the vanilla data pack the same way
+ * {@code WorldLoader} does, so rule filters resolve against the real entries.
+ */
+final class OfflineRegistries {
+    private static RegistryAccess.Frozen registryAccess = null;
+
+    private OfflineRegistries() {}
+
+    static synchronized RegistryAccess.Frozen registryAccess() {
+        if (registryAccess == null) {
+            SharedConstants.tryDetectVersion();
+            Bootstrap.bootStrap();
+            registryAccess = loadWorldgenRegistries();
+        }
+        return registryAccess;
+    }
+
+    static Holder<DimensionType> overworldType() {
+        return registryAccess().registryOrThrow(Registries.DIMENSION_TYPE).getHolderOrThrow(BuiltinDimensionTypes.OVERWORLD);
+    }
+
+    private static RegistryAccess.Frozen loadWorldgenRegistries() {
+        PackRepository packs = new PackRepository(new ServerPacksSource());
+        packs.reload();
+        packs.setSelected(List.of("vanilla"));
+        try (CloseableResourceManager resources = new MultiPackResourceManager(PackType.SERVER_DATA, packs.openAllSelected())) {
+            LayeredRegistryAccess<RegistryLayer> layers = RegistryLayer.createRegistryAccess();
+            RegistryAccess.Frozen worldgen = RegistryDataLoader.load(resources, layers.getAccessForLoading(RegistryLayer.WORLDGEN), RegistryDataLoader.WORLDGEN_REGISTRIES);
+            layers = layers.replaceFrom(RegistryLayer.WORLDGEN, worldgen);
+            RegistryAccess.Frozen dimensions = RegistryDataLoader.load(resources, layers.getAccessForLoading(RegistryLayer.DIMENSIONS), RegistryDataLoader.DIMENSION_REGISTRIES);
+            return layers.replaceFrom(RegistryLayer.DIMENSIONS, dimensions).compositeAccess();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package potionseeker.block_swap_advanced.swapper;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.block.state.properties.Property;
+import net.minecraft.world.level.levelgen.structure.Structure;
+import net.minecraft.world.level.levelgen.structure.StructurePiece;
+import net.minecraft.world.level.levelgen.structure.StructureStart;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * The swap semantics written out the slow, obvious way: every rule in config order, every check done per block
+ * straight from the config entry, with no compiled tables, palettes, section skipping or caches. The optimized engine
+ * must pick the same state for every block; {@link SwapEngineFuzzTest} checks that it does.
+ * <p>
+ * Keep this in step with intended behaviour changes, never with optimizations.
+ */
+final class ReferenceSwapEngine {
+    private ReferenceSwapEngine() {}
+
+    /**
+     * @param cause the placement cause, only used in {@link SwapPhase#PLACEMENT}
+     * @param structures the structure starts to filter on, or null if there are none
+     * @param structureFiltersApply false to let structure-filtered rules through unchecked, which is what single
+     *                              block swaps do outside a server level
+     * @return the state the block ends up as
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static BlockState remap(List<Swapper.SwapEntry> rules, SwapPhase phase, PlacementCause cause, BlockState incomingState,
+                            Level level, BlockPos pos, long seed, @Nullable StructureLookup structures, boolean structureFiltersApply) {
+        String dimensionId = level.dimension().location().toString();
+        for (int ruleId = 0; ruleId < rules.size(); ruleId++) {
+            Swapper.SwapEntry entry = rules.get(ruleId);
+            boolean inPhase = switch (phase) {
+                case GENERATION -> !entry.only_replace_placements();
+                case PLACEMENT -> entry.replacePlacement() && entry.placementCauses().contains(cause);
+                case RETRO -> !entry.only_replace_placements() && !entry.defer_swap();
+                case DEFERRED -> entry.defer_swap();
+            };
+            if (!inPhase || incomingState.getBlock() != entry.oldState().getBlock() || !propertiesMatch(entry, incomingState)) {
+                continue;
+            }
+
+            float swapProbability = probability(entry, pos.getY(), level.getMinBuildHeight(), level.getMaxBuildHeight());
+            if (swapProbability <= 0.0F || swapProbability < 1.0F && SwapRandom.roll(seed, pos.getX(), pos.getY(), pos.getZ(), ConfigFingerprint.rule(entry)) >= swapProbability) {
+                continue;
+            }
+
+            if (!entry.dimensions_whitelist().isEmpty() && !entry.dimensions_whitelist().contains(dimensionId)
+                    || entry.dimensions_blacklist().contains(dimensionId)) {
+                continue;
+            }
+
+            if (!entry.biomes_whitelist().isEmpty() || !entry.biomes_blacklist().isEmpty()) {
+                ResourceLocation biomeId = level.registryAccess().registryOrThrow(Registries.BIOME).getKey(level.getBiome(pos).value());
+                String biome = String.valueOf(biomeId);
+                if (!entry.biomes_whitelist().isEmpty() && !entry.biomes_whitelist().contains(biome) || entry.biomes_blacklist().contains(biome)) {
+                    continue;
+                }
+            }
+
+            if (structureFiltersApply && (!entry.structures_whitelist().isEmpty() || !entry.structures_blacklist().isEmpty())) {
+                boolean allowed = false;
+                for (String id : entry.structures_whitelist()) {
+                    if (insideStructure(level, structures, id, pos)) {
+                        allowed = true;
+                        break;
+                    }
+                }
+                if (allowed) {
+                    for (String id : entry.structures_blacklist()) {
+                        if (insideStructure(level, structures, id, pos)) {
+                            allowed = false;
+                            break;
+                        }
+                    }
+                }
+                if (!allowed) {
+                    continue;
+                }
+            }
+
+            Int2ObjectOpenHashMap<Property<?>> newStateProperties = new Int2ObjectOpenHashMap<>();
+            for (Property<?> property : entry.newState().getProperties()) {
+                newStateProperties.put(property.generateHashCode(), property);
+            }
+            BlockState newState = entry.newState();
+            try {
+                for (Property<?> property : incomingState.getProperties()) {
+                    Property newProperty = newStateProperties.get(property.generateHashCode());
+                    if (newProperty != null) {
+                        newState = newState.setValue(newProperty, incomingState.getValue((Property) newProperty));
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                // A property with the same name but other values can't be carried over; the rule doesn't apply
+                continue;
+            }
+            return newState;
+        }
+        return incomingState;
+    }
+
+    private static boolean propertiesMatch(Swapper.SwapEntry entry, BlockState state) {
+        BlockState oldState = entry.oldState();
+        if (entry.ignoreBlockProperties()) {
+            return true;
+        }
+        for (Property<?> property : oldState.getValues().keySet()) {
+            if (!state.hasProperty(property) || !state.getValue(property).equals(oldState.getValue(property))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static float probability(Swapper.SwapEntry entry, int blockY, int minBuildHeight, int maxBuildHeight) {
+        int minY = entry.minY() == Integer.MIN_VALUE ? minBuildHeight : entry.minY();
+        int maxY = entry.maxY() == Integer.MAX_VALUE ? maxBuildHeight : entry.maxY();
+        float probability = entry.blockSwapRand();
+        if (blockY < minY) {
+            int bufferEnd = minY - entry.minYBufferZone();
+            return entry.minYBufferZone() > 0 && blockY >= bufferEnd ? probability * ((float) (blockY - bufferEnd) / (minY - bufferEnd)) : 0.0F;
+        }
+        if (blockY > maxY) {
+            int bufferEnd = maxY + entry.maxYBufferZone();
+            return entry.maxYBufferZone() > 0 && blockY <= bufferEnd ? probability * ((float) (bufferEnd - blockY) / (bufferEnd - maxY)) : 0.0F;
+        }
+        return probability;
+    }
+
+    // StructureManager.getStructureWithPieceAt(pos, structure).isValid()
+    private static boolean insideStructure(Level level, @Nullable StructureLookup structures, String id, BlockPos pos) {
+        ResourceLocation location = ResourceLocation.tryParse(id);
+        Structure structure = location == null ? null : level.registryAccess().registryOrThrow(Registries.STRUCTURE).get(location);
+        if (structure == null || structures == null) {
+            return false;
+        }
+        for (StructureStart start : structures.startsForStructure(new ChunkPos(pos), structure)) {
+            for (StructurePiece piece : start.getPieces()) {
+                if (piece.getBoundingBox().isInside(pos)) {
+                    return start.isValid();
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,281 @@
+package potionseeker.block_swap_advanced.swapper;
+
+import potionseeker.block_swap_advanced.config.BlockSwapConfig;
+
+import com.mojang.serialization.JsonOps;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+import net.minecraft.world.level.levelgen.structure.Structure;
+import net.minecraft.world.level.levelgen.structure.StructurePiece;
+import net.minecraft.world.level.levelgen.structure.StructureStart;
+import net.minecraft.world.level.levelgen.structure.pieces.PiecesContainer;
+import net.minecraft.world.level.levelgen.structure.pieces.StructurePieceType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Differential check of the optimized swap engine against {@link ReferenceSwapEngine}. Each case is a random config
+ * (Y ranges, buffer zones, probabilities, property matching, phase flags, placement causes, dimension, biome and
+ * structure filters) and a random chunk with random structure pieces; every block must end up in the same state
+ * through the chunk scans, {@code remapState} and {@code remapPlacement} as through the reference.
+ * <p>
+ * Runs with a fixed seed as part of {@code ./gradlew :Common:test}. {@code -PfuzzCases=<n>} and
+ * {@code -PfuzzSeed=<seed>} change the number of cases and the seed, e.g. to explore further or reproduce a failure.
+ */
+class SwapEngineFuzzTest {
+    private static final long DEFAULT_SEED = 0x5EEDB10C5A9L;
+    private static final int DEFAULT_CASES = 200;
+    private static final int MAX_REPORTED_MISMATCHES = 20;
+    // Blocks with and without properties, including ones whose properties partly overlap with the targets'
+    private static final Block[] OLD_BLOCKS = {
+            Blocks.STONE, Blocks.DEEPSLATE, Blocks.OAK_LOG, Blocks.GRASS_BLOCK, Blocks.OAK_STAIRS, Blocks.FURNACE,
+            Blocks.REDSTONE_ORE, Blocks.WHEAT, Blocks.DIRT, Blocks.IRON_ORE
+    };
+    private static final Block[] NEW_BLOCKS = {
+            Blocks.COBBLESTONE, Blocks.BASALT, Blocks.PODZOL, Blocks.SPRUCE_STAIRS, Blocks.BLAST_FURNACE,
+            Blocks.DEEPSLATE_REDSTONE_ORE, Blocks.BEETROOTS, Blocks.STRIPPED_OAK_LOG, Blocks.GLASS, Blocks.RAW_IRON_BLOCK
+    };
+    private static final String[] DIMENSIONS = {"minecraft:overworld", "minecraft:the_nether", "block_swap_advanced:missing"};
+    private static final String[] BIOMES = {"minecraft:plains", "minecraft:forest", "minecraft:desert", "minecraft:dripstone_caves", "minecraft:taiga", "block_swap_advanced:missing"};
+    private static final String[] STRUCTURES = {"minecraft:village_plains", "minecraft:mineshaft", "minecraft:stronghold", "block_swap_advanced:missing"};
+
+    private Random random;
+    private SyntheticLevel level;
+    private final List<BlockState> statePool = new ArrayList<>();
+    private final List<String> mismatches = new ArrayList<>();
+    private int mismatchCount;
+
+    @Test
+    void matchesReferenceEngine() {
+        long seed = Long.getLong("block_swap_advanced.fuzz.seed", DEFAULT_SEED);
+        int cases = Integer.getInteger("block_swap_advanced.fuzz.cases", DEFAULT_CASES);
+        random = new Random(seed);
+        level = new SyntheticLevel(OfflineRegistries.registryAccess());
+        for (Block block : OLD_BLOCKS) {
+            statePool.addAll(block.getStateDefinition().getPossibleStates());
+        }
+        statePool.add(Blocks.AIR.defaultBlockState());
+        statePool.add(Blocks.GRANITE.defaultBlockState());
+
+        for (int i = 0; i < cases && mismatchCount == 0; i++) {
+            runCase(i);
+        }
+        if (mismatchCount > 0) {
+            fail("Swap engine differs from the reference in " + mismatchCount + " block(s) with seed " + seed + ":\n"
+                    + String.join("\n", mismatches));
+        }
+    }
+
+    private void runCase(int index) {
+        List<Swapper.SwapEntry> rules = rules();
+        BlockSwapConfig config = new BlockSwapConfig(rules, true, false, false, false, -1, 0, -1);
+        Swapper.updateConfig(config);
+        long seed = random.nextLong();
+        LevelChunk chunk = level.createChunk(new ChunkPos(random.nextInt(17) - 8, random.nextInt(17) - 8));
+        fill(chunk);
+        StructureLookup structures = structures(chunk.getPos());
+
+        for (SwapPhase phase : new SwapPhase[]{SwapPhase.RETRO, SwapPhase.DEFERRED}) {
+            checkScan(index, config, phase, chunk, seed, structures);
+            checkScan(index, config, phase, chunk, seed, null);
+        }
+        checkSingleBlocks(index, config, chunk);
+    }
+
+    // The snapshot and scan retro-gen and deferred swaps run, against the reference for every block of the chunk
+    private void checkScan(int index, BlockSwapConfig config, SwapPhase phase, LevelChunk chunk, long seed, StructureLookup structures) {
+        SwapTable table = Swapper.table(phase);
+        boolean[] activeRules = Swapper.activeRules(table, level, phase);
+        ChunkSnapshot snapshot = structures == null
+                ? ChunkSnapshot.capture(chunk, level, seed, table, activeRules, false, phase)
+                : ChunkSnapshot.capture(chunk, level, seed, structures, table, activeRules, false, phase);
+        SwapBatch batch = snapshot.isEmpty() ? new SwapBatch(phase) : ChunkScanner.scan(snapshot);
+
+        LevelChunkSection[] sections = chunk.getSections();
+        BlockState[][] actual = new BlockState[sections.length][];
+        for (int i = 0; i < batch.size(); i++) {
+            int packed = batch.packedPosition(i);
+            int sectionIndex = packed >>> 12;
+            if (actual[sectionIndex] == null) {
+                actual[sectionIndex] = new BlockState[4096];
+            }
+            actual[sectionIndex][packed & 4095] = batch.newState(i);
+        }
+
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        for (int sectionIndex = 0; sectionIndex < sections.length; sectionIndex++) {
+            LevelChunkSection section = sections[sectionIndex];
+            int bottomY = SectionPos.sectionToBlockCoord(chunk.getSectionYFromSectionIndex(sectionIndex));
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    for (int x = 0; x < 16; x++) {
+                        BlockState state = section.getBlockState(x, y, z);
+                        pos.set(chunk.getPos().getMinBlockX() + x, bottomY + y, chunk.getPos().getMinBlockZ() + z);
+                        BlockState expected = ReferenceSwapEngine.remap(config.swapEntries(), phase, PlacementCause.OTHER, state, level, pos, seed, structures, true);
+                        BlockState swapped = actual[sectionIndex] == null ? null : actual[sectionIndex][y << 8 | z << 4 | x];
+                        BlockState result = swapped == null ? state : swapped;
+                        if (result != expected) {
+                            report(index, config, phase + (structures == null ? " scan without structures" : " scan"), pos, state, expected, result);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // remapState for world generation and remapPlacement for every cause, on a sample of the chunk's blocks
+    private void checkSingleBlocks(int index, BlockSwapConfig config, LevelChunk chunk) {
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        for (int i = 0; i < 4096; i++) {
+            pos.set(chunk.getPos().getMinBlockX() + random.nextInt(16), level.getMinBuildHeight() + random.nextInt(level.getHeight()), chunk.getPos().getMinBlockZ() + random.nextInt(16));
+            BlockState state = chunk.getBlockState(pos);
+
+            BlockState expected = ReferenceSwapEngine.remap(config.swapEntries(), SwapPhase.GENERATION, PlacementCause.OTHER, state, level, pos, 0L, null, false);
+            BlockState result = Swapper.remapState(state, level, pos, false);
+            if (result != expected) {
+                report(index, config, "remapState", pos, state, expected, result);
+            }
+
+            PlacementCause cause = PlacementCause.values()[random.nextInt(PlacementCause.values().length)];
+            expected = ReferenceSwapEngine.remap(config.swapEntries(), SwapPhase.PLACEMENT, cause, state, level, pos, 0L, null, false);
+            PlacementCause.push(cause);
+            try {
+                result = Swapper.remapPlacement(state, level, pos);
+            } finally {
+                PlacementCause.pop();
+            }
+            if (result != expected) {
+                report(index, config, "remapPlacement from " + cause.getSerializedName(), pos, state, expected, result);
+            }
+        }
+    }
+
+    private void report(int index, BlockSwapConfig config, String path, BlockPos pos, BlockState state, BlockState expected, BlockState actual) {
+        mismatchCount++;
+        if (mismatchCount > MAX_REPORTED_MISMATCHES) {
+            return;
+        }
+        if (mismatchCount == 1) {
+            mismatches.add("Config of case " + index + ": " + BlockSwapConfig.CODEC.encodeStart(JsonOps.INSTANCE, config).result().map(Object::toString).orElse("?"));
+        }
+        mismatches.add(String.format("Case %d, %s at %s: %s should become %s, got %s", index, path, pos.immutable(), state, expected, actual));
+    }
+
+    private List<Swapper.SwapEntry> rules() {
+        int ruleCount = 1 + random.nextInt(12);
+        List<Swapper.SwapEntry> rules = new ArrayList<>(ruleCount);
+        for (int i = 0; i < ruleCount; i++) {
+            Block oldBlock = OLD_BLOCKS[random.nextInt(OLD_BLOCKS.length)];
+            Block newBlock = NEW_BLOCKS[random.nextInt(NEW_BLOCKS.length)];
+            BlockState oldState = random.nextBoolean() ? oldBlock.defaultBlockState() : randomState(oldBlock);
+            List<PlacementCause> causes = new ArrayList<>();
+            for (PlacementCause cause : PlacementCause.values()) {
+                if (random.nextInt(4) != 0) {
+                    causes.add(cause);
+                }
+            }
+            Swapper.CoreSwapEntry core = new Swapper.CoreSwapEntry(
+                    oldState,
+                    randomState(newBlock),
+                    random.nextInt(4) != 0,
+                    causes,
+                    random.nextInt(3) == 0 ? Integer.MIN_VALUE : random.nextInt(400) - 80,
+                    random.nextInt(3) == 0 ? Integer.MAX_VALUE : random.nextInt(400) - 80,
+                    switch (random.nextInt(4)) {
+                        case 0 -> 1.0F;
+                        case 1 -> 0.0F;
+                        case 2 -> 0.5F;
+                        default -> random.nextFloat();
+                    },
+                    random.nextBoolean() ? 0 : random.nextInt(24),
+                    random.nextBoolean() ? 0 : random.nextInt(24),
+                    random.nextInt(3) == 0
+            );
+            Swapper.FilterEntry filter = new Swapper.FilterEntry(
+                    ids(DIMENSIONS, 5), ids(DIMENSIONS, 8), ids(BIOMES, 3), ids(BIOMES, 4), ids(STRUCTURES, 4), ids(STRUCTURES, 6));
+            rules.add(new Swapper.SwapEntry(core, filter, random.nextInt(6) == 0, random.nextInt(4) == 0));
+        }
+        return rules;
+    }
+
+    private BlockState randomState(Block block) {
+        List<BlockState> states = block.getStateDefinition().getPossibleStates();
+        return states.get(random.nextInt(states.size()));
+    }
+
+    // Empty for all but one in {@code oneIn} rules
+    private List<String> ids(String[] pool, int oneIn) {
+        if (random.nextInt(oneIn) != 0) {
+            return List.of();
+        }
+        List<String> ids = new ArrayList<>();
+        for (String id : pool) {
+            if (random.nextInt(3) == 0) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    // Sections are single states, a few states or a noisy mix, so palettes of every size show up
+    private void fill(LevelChunk chunk) {
+        for (LevelChunkSection section : chunk.getSections()) {
+            int kind = random.nextInt(4);
+            BlockState[] palette = new BlockState[kind == 0 ? 1 : kind == 1 ? 1 + random.nextInt(4) : 8 + random.nextInt(24)];
+            for (int i = 0; i < palette.length; i++) {
+                palette[i] = statePool.get(random.nextInt(statePool.size()));
+            }
+            if (kind == 3 && random.nextBoolean()) {
+                continue; // all air
+            }
+            for (int x = 0; x < 16; x++) {
+                for (int y = 0; y < 16; y++) {
+                    for (int z = 0; z < 16; z++) {
+                        section.setBlockState(x, y, z, palette[random.nextInt(palette.length)], false);
+                    }
+                }
+            }
+        }
+    }
+
+    // Up to two starts per structure with pieces around the chunk, some reaching into it and some not
+    private StructureLookup structures(ChunkPos chunkPos) {
+        Map<Structure, List<StructureStart>> starts = new IdentityHashMap<>();
+        for (String id : STRUCTURES) {
+            Structure structure = level.registryAccess().registryOrThrow(Registries.STRUCTURE).get(ResourceLocation.tryParse(id));
+            if (structure == null) {
+                continue;
+            }
+            List<StructureStart> structureStarts = new ArrayList<>();
+            for (int s = random.nextInt(3); s > 0; s--) {
+                List<StructurePiece> pieces = new ArrayList<>();
+                for (int p = 1 + random.nextInt(4); p > 0; p--) {
+                    int minX = chunkPos.getMinBlockX() - 8 + random.nextInt(24);
+                    int minY = level.getMinBuildHeight() + random.nextInt(level.getHeight() - 32);
+                    int minZ = chunkPos.getMinBlockZ() - 8 + random.nextInt(24);
+                    pieces.add(new BoxPiece(StructurePieceType.JIGSAW, 0,
+                            new BoundingBox(minX, minY, minZ, minX + random.nextInt(12), minY + random.nextInt(32), minZ + random.nextInt(12))));
+                }
+                structureStarts.add(new StructureStart(structure, chunkPos, 0, new PiecesContainer(pieces)));
+            }
+            starts.put(structure, structureStarts);
+        }
+        return (pos, structure) -> starts.getOrDefault(structure, List.of());
+    }
+}
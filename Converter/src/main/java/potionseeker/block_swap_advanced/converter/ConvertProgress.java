@@ -0,0 +1,75 @@
+package potionseeker.block_swap_advanced.converter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The regions a conversion has finished, one file name per line after a header naming the dimension and config hash
+ * the conversion runs with. A region is only listed once its new file is in place, so a conversion that is killed
+ * picks up again at the first region it hadn't finished; a listing for another dimension or config is discarded.
+ */
+final class ConvertProgress implements AutoCloseable {
+    private final Path file;
+    private final Set<String> finished;
+    private final BufferedWriter writer;
+
+    private ConvertProgress(Path file, Set<String> finished, BufferedWriter writer) {
+        this.file = file;
+        this.finished = finished;
+        this.writer = writer;
+    }
+
+    static ConvertProgress open(Path file, String dimension, String configHash) throws IOException {
+        String header = "# " + dimension + " " + configHash;
+        Set<String> finished = new HashSet<>();
+        if (Files.isRegularFile(file)) {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (!lines.isEmpty() && lines.get(0).equals(header)) {
+                finished.addAll(lines.subList(1, lines.size()));
+                finished.remove("");
+                return new ConvertProgress(file, finished, Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND));
+            }
+        }
+        BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        writer.write(header);
+        writer.newLine();
+        writer.flush();
+        return new ConvertProgress(file, finished, writer);
+    }
+
+    synchronized boolean isFinished(String regionFile) {
+        return finished.contains(regionFile);
+    }
+
+    synchronized int finishedCount() {
+        return finished.size();
+    }
+
+    synchronized void markFinished(String regionFile) throws IOException {
+        if (finished.add(regionFile)) {
+            writer.write(regionFile);
+            writer.newLine();
+            writer.flush();
+        }
+    }
+
+    /**
+     * Called once every region is converted; the next conversion starts from scratch.
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
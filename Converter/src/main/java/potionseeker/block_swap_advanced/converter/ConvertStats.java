@@ -0,0 +1,73 @@
+package potionseeker.block_swap_advanced.converter;
+
+import potionseeker.block_swap_advanced.swapper.SwapBatch;
+import potionseeker.block_swap_advanced.swapper.SwapTable;
+import potionseeker.block_swap_advanced.swapper.Swapper;
+
+import net.minecraft.core.registries.BuiltInRegistries;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters shared by every worker of a conversion.
+ */
+final class ConvertStats {
+    final LongAdder regionsConverted = new LongAdder();
+    final LongAdder regionsFailed = new LongAdder();
+    final LongAdder chunksRead = new LongAdder();
+    final LongAdder chunksSwapped = new LongAdder();
+    final LongAdder chunksStamped = new LongAdder();
+    final LongAdder chunksAlreadyProcessed = new LongAdder();
+    final LongAdder chunksNotGenerated = new LongAdder();
+    final LongAdder chunksOutdated = new LongAdder();
+    final LongAdder chunksDeferred = new LongAdder();
+    final LongAdder chunksFailed = new LongAdder();
+    final LongAdder bytesRead = new LongAdder();
+    final LongAdder swaps = new LongAdder();
+    private final AtomicLongArray ruleSwaps;
+    private final long startNanos = System.nanoTime();
+
+    ConvertStats(int ruleCount) {
+        this.ruleSwaps = new AtomicLongArray(ruleCount);
+    }
+
+    void recordSwaps(SwapBatch batch) {
+        swaps.add(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            ruleSwaps.incrementAndGet(batch.ruleId(i));
+        }
+    }
+
+    void printProgress(PrintStream out, int regionsToConvert) {
+        double seconds = (System.nanoTime() - startNanos) / 1.0E9;
+        long regionsDone = regionsConverted.sum() + regionsFailed.sum();
+        long chunks = chunksRead.sum();
+        String eta = regionsDone == 0 ? "?" : formatDuration(seconds / regionsDone * (regionsToConvert - regionsDone));
+        out.printf(Locale.ROOT, "[%d/%d regions] %d chunks, %.1f chunks/s, %.1f MB/s read, %d swaps, %s elapsed, %s left%n",
+                regionsDone, regionsToConvert, chunks, chunks / seconds, bytesRead.sum() / 1.0E6 / seconds, swaps.sum(),
+                formatDuration(seconds), eta);
+    }
+
+    void printSummary(PrintStream out, SwapTable table) {
+        double seconds = (System.nanoTime() - startNanos) / 1.0E9;
+        out.printf(Locale.ROOT, "Converted %d regions in %s (%d failed), %.1f chunks/s, %.1f MB/s read%n",
+                regionsConverted.sum(), formatDuration(seconds), regionsFailed.sum(), chunksRead.sum() / seconds, bytesRead.sum() / 1.0E6 / seconds);
+        out.printf(Locale.ROOT, "  %d chunks read: %d with swaps, %d stamped without swaps, %d already processed, %d not fully generated%n",
+                chunksRead.sum(), chunksSwapped.sum(), chunksStamped.sum(), chunksAlreadyProcessed.sum(), chunksNotGenerated.sum());
+        out.printf(Locale.ROOT, "  Left for retro_gen: %d saved by an older version, %d with swaps involving block entities, %d unreadable%n",
+                chunksOutdated.sum(), chunksDeferred.sum(), chunksFailed.sum());
+        for (int ruleId = 0; ruleId < ruleSwaps.length(); ruleId++) {
+            Swapper.SwapEntry rule = table.rule(ruleId);
+            out.printf(Locale.ROOT, "  Rule #%d (%s -> %s): %d swaps%n", ruleId,
+                    BuiltInRegistries.BLOCK.getKey(rule.oldState().getBlock()), BuiltInRegistries.BLOCK.getKey(rule.newState().getBlock()), ruleSwaps.get(ruleId));
+        }
+    }
+
+    private static String formatDuration(double seconds) {
+        long total = Math.round(seconds);
+        return String.format(Locale.ROOT, "%d:%02d:%02d", total / 3600, total / 60 % 60, total % 60);
+    }
+}
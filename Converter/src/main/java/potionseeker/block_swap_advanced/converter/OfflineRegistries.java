@@ -0,0 +1,72 @@
+package potionseeker.block_swap_advanced.converter;
+
+import net.minecraft.SharedConstants;
+import net.minecraft.core.Holder;
+import net.minecraft.core.LayeredRegistryAccess;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.resources.RegistryDataLoader;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.server.RegistryLayer;
+import net.minecraft.server.packs.PackType;
+import net.minecraft.server.packs.repository.PackRepository;
+import net.minecraft.server.packs.repository.ServerPacksSource;
+import net.minecraft.server.packs.resources.CloseableResourceManager;
+import net.minecraft.server.packs.resources.MultiPackResourceManager;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.dimension.BuiltinDimensionTypes;
+import net.minecraft.world.level.dimension.DimensionType;
+
+import java.util.List;
+
+/**
+ * Bootstraps the vanilla registries without a server, for the converter and the benchmarks. The worldgen registries
+ * (biomes, structures, dimension types) are loaded from the vanilla data pack the same way {@code WorldLoader} does,
+ * so rule filters resolve against the real entries.
+ */
+public final class OfflineRegistries {
+    private static RegistryAccess.Frozen registryAccess = null;
+
+    private OfflineRegistries() {}
+
+    public static synchronized RegistryAccess.Frozen registryAccess() {
+        if (registryAccess == null) {
+            SharedConstants.tryDetectVersion();
+            Bootstrap.bootStrap();
+            registryAccess = loadWorldgenRegistries();
+        }
+        return registryAccess;
+    }
+
+    public static Holder<DimensionType> overworldType() {
+        return registryAccess().registryOrThrow(Registries.DIMENSION_TYPE).getHolderOrThrow(BuiltinDimensionTypes.OVERWORLD);
+    }
+
+    /**
+     * @param worldGenSettings the {@code WorldGenSettings} of a world's {@code level.dat}
+     * @return the type of one of the world's dimensions, or the overworld's if the world doesn't say
+     */
+    public static Holder<DimensionType> dimensionType(CompoundTag worldGenSettings, ResourceKey<Level> dimension) {
+        String type = worldGenSettings.getCompound("dimensions").getCompound(dimension.location().toString()).getString("type");
+        ResourceLocation typeId = ResourceLocation.tryParse(type);
+        return registryAccess().registryOrThrow(Registries.DIMENSION_TYPE)
+                .getHolder(ResourceKey.create(Registries.DIMENSION_TYPE, typeId != null && !type.isEmpty() ? typeId : BuiltinDimensionTypes.OVERWORLD.location()))
+                .orElseGet(OfflineRegistries::overworldType);
+    }
+
+    private static RegistryAccess.Frozen loadWorldgenRegistries() {
+        PackRepository packs = new PackRepository(new ServerPacksSource());
+        packs.reload();
+        packs.setSelected(List.of("vanilla"));
+        try (CloseableResourceManager resources = new MultiPackResourceManager(PackType.SERVER_DATA, packs.openAllSelected())) {
+            LayeredRegistryAccess<RegistryLayer> layers = RegistryLayer.createRegistryAccess();
+            RegistryAccess.Frozen worldgen = RegistryDataLoader.load(resources, layers.getAccessForLoading(RegistryLayer.WORLDGEN), RegistryDataLoader.WORLDGEN_REGISTRIES);
+            layers = layers.replaceFrom(RegistryLayer.WORLDGEN, worldgen);
+            RegistryAccess.Frozen dimensions = RegistryDataLoader.load(resources, layers.getAccessForLoading(RegistryLayer.DIMENSIONS), RegistryDataLoader.DIMENSION_REGISTRIES);
+            return layers.replaceFrom(RegistryLayer.DIMENSIONS, dimensions).compositeAccess();
+        }
+    }
+}
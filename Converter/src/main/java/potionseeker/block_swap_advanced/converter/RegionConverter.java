@@ -0,0 +1,243 @@
+package potionseeker.block_swap_advanced.converter;
+
+import potionseeker.block_swap_advanced.census.BlockCensus;
+import potionseeker.block_swap_advanced.census.ChunkCensusData;
+import potionseeker.block_swap_advanced.region.RegionFileReader;
+import potionseeker.block_swap_advanced.swapper.ChunkScanner;
+import potionseeker.block_swap_advanced.swapper.ChunkSnapshot;
+import potionseeker.block_swap_advanced.swapper.ProcessedChunks;
+import potionseeker.block_swap_advanced.swapper.StructureLookup;
+import potionseeker.block_swap_advanced.swapper.SwapBatch;
+import potionseeker.block_swap_advanced.swapper.SwapPhase;
+import potionseeker.block_swap_advanced.swapper.SwapTable;
+import potionseeker.block_swap_advanced.swapper.Swapper;
+
+import net.minecraft.SharedConstants;
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtUtils;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.EmptyBlockGetter;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.ChunkStatus;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.storage.ChunkSerializer;
+import net.minecraft.world.level.levelgen.Heightmap;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Converts region files one at a time on the calling thread: every fully generated chunk goes through the snapshot and
+ * scan {@code Swapper.swapExistingChunk} uses, with the rules retro_gen would apply to it, and the swaps are written
+ * straight into its sections. Each converted chunk is stamped as processed, so retro_gen leaves it alone once the
+ * world runs again, and its block census is refreshed.
+ * <p>
+ * Chunks this can't convert the way the server would are copied unchanged and left for retro_gen: chunks saved by an
+ * older version, which need the game's own upgrade, and chunks where a swap involves a block entity. Neighbour shape
+ * updates are not run; light and the affected heightmaps are dropped from a chunk whose swaps change them, and the
+ * game recomputes them when the chunk next loads.
+ */
+final class RegionConverter {
+    private static final int CURRENT_DATA_VERSION = SharedConstants.getCurrentVersion().getDataVersion().getVersion();
+    private static final int EXTERNAL_FLAG = 128;
+    private static final Heightmap.Types[] HEIGHTMAP_TYPES = {
+            Heightmap.Types.MOTION_BLOCKING,
+            Heightmap.Types.MOTION_BLOCKING_NO_LEAVES,
+            Heightmap.Types.OCEAN_FLOOR,
+            Heightmap.Types.WORLD_SURFACE
+    };
+
+    private final ReplayLevel level;
+    private final long seed;
+    private final SwapTable table;
+    private final boolean[] activeRules;
+    private final ConvertStats stats;
+    private final boolean mapped;
+
+    RegionConverter(ReplayLevel level, long seed, ConvertStats stats, boolean mapped) {
+        this.level = level;
+        this.seed = seed;
+        this.table = Swapper.table(SwapPhase.RETRO);
+        this.activeRules = Swapper.activeRules(table, level, SwapPhase.RETRO);
+        this.stats = stats;
+        this.mapped = mapped;
+    }
+
+    /**
+     * Writes the converted region to {@code outputDir}, replacing the file there in one step once it is complete. With
+     * {@code outputDir} the region's own directory, the region is converted in place.
+     *
+     * @param censusDir       the census of the input world
+     * @param outputCensusDir where the refreshed census goes
+     * @throws IOException if the region can't be read or written; the output is left as it was
+     */
+    void convert(Path regionFile, Path outputDir, Path censusDir, Path outputCensusDir) throws IOException {
+        Path target = outputDir.resolve(regionFile.getFileName());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        boolean inPlace = Files.isSameFile(regionFile.getParent(), outputDir);
+        int now = (int) (System.currentTimeMillis() / 1000L);
+        ChunkCensusData.Region census;
+        Path censusFile;
+        Path outputCensusFile;
+        boolean censusChanged = false;
+        RegionFileWriter writer = new RegionFileWriter(temp);
+        try (writer; RegionFileReader reader = RegionFileReader.open(regionFile, mapped)) {
+            censusFile = ChunkCensusData.regionFile(censusDir, reader.regionX(), reader.regionZ());
+            outputCensusFile = ChunkCensusData.regionFile(outputCensusDir, reader.regionX(), reader.regionZ());
+            census = ChunkCensusData.readRegion(censusFile, level.getSectionsCount());
+            for (int index = 0; index < RegionFileReader.CHUNKS_PER_REGION; index++) {
+                ByteBuffer stored = reader.rawChunk(index);
+                if (stored == null) {
+                    continue;
+                }
+                stats.chunksRead.increment();
+                stats.bytesRead.add(stored.remaining());
+                Path externalFile = outputDir.resolve(reader.externalFile(index).getFileName());
+                CompoundTag converted = convert(reader, index, stored, census);
+                if (converted != null) {
+                    censusChanged = true;
+                    writer.write(index, converted, now, externalFile);
+                    continue;
+                }
+                writer.copy(index, stored, reader.timestamp(index));
+                if ((stored.get(4) & EXTERNAL_FLAG) != 0 && !inPlace) {
+                    Files.copy(reader.externalFile(index), externalFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            writer.finish();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            writer.discardExternalFiles();
+            throw e;
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        writer.replaceExternalFiles();
+        // A census that didn't change still has to come along to a new output world
+        if (censusChanged || !inPlace && Files.exists(censusFile)) {
+            ChunkCensusData.writeRegion(outputCensusFile, census);
+        }
+        stats.regionsConverted.increment();
+    }
+
+    /**
+     * @return the chunk's new NBT, or null to copy it unchanged
+     */
+    @Nullable
+    private CompoundTag convert(RegionFileReader reader, int index, ByteBuffer stored, ChunkCensusData.Region census) {
+        ChunkPos pos = reader.chunkPos(index);
+        CompoundTag tag;
+        LevelChunk chunk;
+        try {
+            tag = reader.read(index, stored);
+            if (NbtUtils.getDataVersion(tag, -1) != CURRENT_DATA_VERSION) {
+                stats.chunksOutdated.increment();
+                return null;
+            }
+            if (ChunkSerializer.getChunkTypeFromTag(tag) != ChunkStatus.ChunkType.LEVELCHUNK) {
+                stats.chunksNotGenerated.increment();
+                return null;
+            }
+            if (ProcessedChunks.isProcessedUnderCurrentConfig(tag)) {
+                stats.chunksAlreadyProcessed.increment();
+                return null;
+            }
+            chunk = level.load(pos, tag).chunk();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Copying unreadable chunk " + pos + " in " + reader.path().getFileName() + " as is: " + e.getMessage());
+            stats.chunksFailed.increment();
+            return null;
+        }
+        if (chunk == null) {
+            // Cached from an earlier read that failed
+            stats.chunksFailed.increment();
+            return null;
+        }
+
+        // The biome zoom samples across the chunk's border, and structure filters need the starts it references
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                level.load(pos.x + dx, pos.z + dz);
+            }
+        }
+        StructureLookup structures = SavedStructures.resolve(level, level.load(pos.x, pos.z));
+        boolean[] rules = activeRules.clone();
+        boolean[] pendingRules = ProcessedChunks.pendingRules(tag, Swapper.ruleFingerprints());
+        if (pendingRules != null) {
+            for (int ruleId = 0; ruleId < rules.length; ruleId++) {
+                rules[ruleId] &= pendingRules[ruleId];
+            }
+        }
+        ChunkSnapshot snapshot = ChunkSnapshot.capture(chunk, level, seed, structures, table, rules, false, SwapPhase.RETRO);
+        if (snapshot.isEmpty()) {
+            stats.chunksStamped.increment();
+        } else {
+            SwapBatch batch = ChunkScanner.scan(snapshot);
+            if (!apply(chunk, batch, tag)) {
+                stats.chunksDeferred.increment();
+                return null;
+            }
+            if (batch.isEmpty()) {
+                stats.chunksStamped.increment();
+            } else {
+                stats.chunksSwapped.increment();
+                stats.recordSwaps(batch);
+            }
+        }
+        census.update(pos, BlockCensus.chunkMasks(chunk));
+        ProcessedChunks.markProcessed(tag);
+        return tag;
+    }
+
+    /**
+     * @return false, with nothing changed, if a swap involves a block entity
+     */
+    private boolean apply(LevelChunk chunk, SwapBatch batch, CompoundTag tag) {
+        for (int i = 0; i < batch.size(); i++) {
+            int packed = batch.packedPosition(i);
+            BlockState oldState = chunk.getSection(packed >>> 12).getBlockState(packed & 15, packed >>> 8 & 15, packed >>> 4 & 15);
+            if (oldState.hasBlockEntity() || batch.newState(i).hasBlockEntity()) {
+                return false;
+            }
+        }
+
+        boolean[] changedSections = new boolean[chunk.getSectionsCount()];
+        boolean[] changedHeightmaps = new boolean[HEIGHTMAP_TYPES.length];
+        boolean changesLight = false;
+        for (int i = 0; i < batch.size(); i++) {
+            int packed = batch.packedPosition(i);
+            LevelChunkSection section = chunk.getSection(packed >>> 12);
+            BlockState newState = batch.newState(i);
+            BlockState oldState = section.setBlockState(packed & 15, packed >>> 8 & 15, packed >>> 4 & 15, newState, false);
+            changedSections[packed >>> 12] = true;
+            changesLight |= changesLight(oldState, newState);
+            for (int type = 0; type < HEIGHTMAP_TYPES.length; type++) {
+                changedHeightmaps[type] |= HEIGHTMAP_TYPES[type].isOpaque().test(oldState) != HEIGHTMAP_TYPES[type].isOpaque().test(newState);
+            }
+        }
+
+        level.writeSections(chunk, changedSections, tag);
+        if (changesLight) {
+            tag.putBoolean("isLightOn", false);
+        }
+        CompoundTag heightmaps = tag.getCompound("Heightmaps");
+        for (int type = 0; type < HEIGHTMAP_TYPES.length; type++) {
+            if (changedHeightmaps[type]) {
+                heightmaps.remove(HEIGHTMAP_TYPES[type].getSerializationKey());
+            }
+        }
+        return true;
+    }
+
+    private static boolean changesLight(BlockState oldState, BlockState newState) {
+        return oldState.getLightEmission() != newState.getLightEmission()
+                || oldState.getLightBlock(EmptyBlockGetter.INSTANCE, BlockPos.ZERO) != newState.getLightBlock(EmptyBlockGetter.INSTANCE, BlockPos.ZERO)
+                || oldState.useShapeForLightOcclusion()
+                || newState.useShapeForLightOcclusion();
+    }
+}
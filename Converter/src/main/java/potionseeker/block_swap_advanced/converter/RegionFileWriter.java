@@ -0,0 +1,149 @@
+package potionseeker.block_swap_advanced.converter;
+
+import potionseeker.block_swap_advanced.region.RegionFileReader;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a fresh Anvil region file, chunk by chunk, in the layout vanilla's {@code RegionFile} reads: two header
+ * sectors of offsets and timestamps, then every chunk in whole 4 KiB sectors. Chunks that come out larger than 255
+ * sectors go to an external {@code .mcc} file next to the region, as vanilla does; those are written under temporary
+ * names and only take the place of the live ones in {@link #replaceExternalFiles}. Unchanged chunks are copied as
+ * stored, so only the chunks that were actually rewritten are compressed again.
+ */
+final class RegionFileWriter implements AutoCloseable {
+    private static final int SECTOR_BYTES = 4096;
+    private static final int HEADER_SECTORS = 2;
+    private static final int MAX_SECTORS = 255;
+    private static final int CHUNK_HEADER_BYTES = 5;
+    private static final byte ZLIB = 2;
+    private static final byte EXTERNAL_FLAG = (byte) 128;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int[] offsets = new int[RegionFileReader.CHUNKS_PER_REGION];
+    private final int[] timestamps = new int[RegionFileReader.CHUNKS_PER_REGION];
+    // External chunk files written under a temporary name, and the files they replace
+    private final List<Path> writtenExternalFiles = new ArrayList<>();
+    private final List<Path> externalFiles = new ArrayList<>();
+    private final List<Path> staleExternalFiles = new ArrayList<>();
+    private int nextSector = HEADER_SECTORS;
+
+    /**
+     * @param path the file to write, replaced if it exists; external chunks go to the same directory
+     */
+    RegionFileWriter(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Copies a chunk exactly as {@link RegionFileReader#rawChunk} returned it.
+     */
+    void copy(int index, ByteBuffer stored, int timestamp) throws IOException {
+        write(index, stored.duplicate(), timestamp);
+    }
+
+    /**
+     * Compresses and writes a chunk.
+     *
+     * @param externalFile where the chunk goes if it is too large for the region file
+     */
+    void write(int index, CompoundTag tag, int timestamp, Path externalFile) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(16 * 1024);
+        try (DataOutputStream output = new DataOutputStream(new DeflaterOutputStream(compressed))) {
+            NbtIo.write(tag, output);
+        }
+        byte[] data = compressed.toByteArray();
+        ByteBuffer stored;
+        if (sectors(CHUNK_HEADER_BYTES + data.length) > MAX_SECTORS) {
+            Path temp = externalFile.resolveSibling(externalFile.getFileName() + ".tmp");
+            Files.write(temp, data);
+            writtenExternalFiles.add(temp);
+            externalFiles.add(externalFile);
+            stored = ByteBuffer.allocate(CHUNK_HEADER_BYTES).putInt(1).put((byte) (ZLIB | EXTERNAL_FLAG)).flip();
+        } else {
+            if (Files.exists(externalFile)) {
+                staleExternalFiles.add(externalFile);
+            }
+            stored = ByteBuffer.allocate(CHUNK_HEADER_BYTES + data.length).putInt(data.length + 1).put(ZLIB).put(data).flip();
+        }
+        write(index, stored, timestamp);
+    }
+
+    private void write(int index, ByteBuffer stored, int timestamp) throws IOException {
+        int sectors = sectors(stored.remaining());
+        long position = (long) nextSector * SECTOR_BYTES;
+        while (stored.hasRemaining()) {
+            position += channel.write(stored, position);
+        }
+        offsets[index] = nextSector << 8 | sectors;
+        timestamps[index] = timestamp;
+        nextSector += sectors;
+    }
+
+    /**
+     * Writes the header and pads the file to whole sectors. The file is complete and flushed to disk once this returns.
+     */
+    void finish() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SECTORS * SECTOR_BYTES);
+        header.asIntBuffer().put(offsets).put(timestamps);
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        long size = (long) nextSector * SECTOR_BYTES;
+        if (channel.size() < size) {
+            channel.write(ByteBuffer.allocate(1), size - 1);
+        }
+        channel.force(true);
+    }
+
+    Path path() {
+        return path;
+    }
+
+    /**
+     * Moves the external chunk files of the written region into place and deletes the ones it no longer uses. The
+     * region being replaced may still point at the old files, so call this only once the new region is in place.
+     */
+    void replaceExternalFiles() throws IOException {
+        for (int i = 0; i < writtenExternalFiles.size(); i++) {
+            Files.move(writtenExternalFiles.get(i), externalFiles.get(i), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        for (Path stale : staleExternalFiles) {
+            Files.deleteIfExists(stale);
+        }
+    }
+
+    /**
+     * Deletes the external chunk files written so far, for a region that won't be put in place.
+     */
+    void discardExternalFiles() throws IOException {
+        for (Path temp : writtenExternalFiles) {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static int sectors(int bytes) {
+        return (bytes + SECTOR_BYTES - 1) / SECTOR_BYTES;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,276 @@
+package potionseeker.block_swap_advanced.converter;
+
+import potionseeker.block_swap_advanced.config.MissingBlockIDsConfig;
+import potionseeker.block_swap_advanced.region.RegionFileReader;
+
+import com.mojang.serialization.Codec;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import net.minecraft.SharedConstants;
+import net.minecraft.core.Holder;
+import net.minecraft.core.Registry;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.nbt.NbtUtils;
+import net.minecraft.nbt.Tag;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.util.datafix.DataFixTypes;
+import net.minecraft.util.datafix.DataFixers;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.Biomes;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.ChunkStatus;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.minecraft.world.level.chunk.PalettedContainerRO;
+import net.minecraft.world.level.chunk.UpgradeData;
+import net.minecraft.world.level.chunk.storage.ChunkSerializer;
+import net.minecraft.world.level.dimension.DimensionType;
+import net.minecraft.world.ticks.LevelChunkTicks;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A level backed by the region files of a saved dimension, read-only. Chunks are decoded on demand and kept in a
+ * bounded cache, so neighbouring chunks are there when the biome zoom of a scanned chunk samples across its border.
+ * Biomes of chunks that were never generated fall back to plains, since there is no generator to ask. Block ids are
+ * repaired through the world's {@code missing_block_ids.json5} on the way in, as they would be by the server.
+ * <p>
+ * Not thread-safe; give every thread its own level.
+ */
+public class ReplayLevel extends SyntheticLevel {
+    private static final int OPEN_REGIONS = 16;
+    private static final Codec<PalettedContainer<BlockState>> BLOCK_STATE_CODEC = PalettedContainer.codecRW(
+            Block.BLOCK_STATE_REGISTRY, BlockState.CODEC, PalettedContainer.Strategy.SECTION_STATES, Blocks.AIR.defaultBlockState());
+
+    private final Path regionDir;
+    private final MissingBlockIDsConfig missingBlockIds;
+    private final int cachedChunks;
+    private final Registry<Biome> biomes;
+    private final Holder<Biome> plains;
+    private final Codec<PalettedContainerRO<Holder<Biome>>> biomeCodec;
+    private final Long2ObjectLinkedOpenHashMap<SavedChunk> chunks = new Long2ObjectLinkedOpenHashMap<>();
+    private final Long2ObjectLinkedOpenHashMap<RegionFileReader> regions = new Long2ObjectLinkedOpenHashMap<>();
+    private int failedChunks;
+
+    /**
+     * A chunk as stored on disk: the decoded chunk if it finished generating, and its structure data either way.
+     */
+    public record SavedChunk(@Nullable LevelChunk chunk, CompoundTag structures) {
+        static final SavedChunk MISSING = new SavedChunk(null, new CompoundTag());
+    }
+
+    /**
+     * @param cachedChunks how many decoded chunks to keep; the biome zoom needs at least the neighbours of the chunks
+     *                     being scanned
+     */
+    public ReplayLevel(RegistryAccess registryAccess, ResourceKey<Level> dimension, Holder<DimensionType> dimensionType, long biomeZoomSeed,
+                       Path regionDir, MissingBlockIDsConfig missingBlockIds, int cachedChunks) {
+        super(registryAccess, dimension, dimensionType, biomeZoomSeed);
+        this.regionDir = regionDir;
+        this.missingBlockIds = missingBlockIds;
+        this.cachedChunks = cachedChunks;
+        this.biomes = registryAccess.registryOrThrow(Registries.BIOME);
+        this.plains = biomes.getHolderOrThrow(Biomes.PLAINS);
+        this.biomeCodec = PalettedContainer.codecRO(biomes.asHolderIdMap(), biomes.holderByNameCodec(), PalettedContainer.Strategy.SECTION_BIOMES, plains);
+    }
+
+    /**
+     * @return the saved chunk at the position, reading and decoding it if it isn't cached
+     */
+    public SavedChunk load(int chunkX, int chunkZ) {
+        long pos = ChunkPos.asLong(chunkX, chunkZ);
+        SavedChunk saved = chunks.getAndMoveToLast(pos);
+        if (saved == null) {
+            saved = read(new ChunkPos(chunkX, chunkZ));
+            cache(pos, saved);
+        }
+        return saved;
+    }
+
+    /**
+     * Like {@link #load(int, int)}, for a caller that already read the chunk's NBT at the current data version. The
+     * chunk is decoded from {@code tag} unless it is cached already, and its palettes in {@code tag} are repaired if
+     * it is decoded.
+     *
+     * @throws RuntimeException if the chunk's sections can't be decoded
+     */
+    public SavedChunk load(ChunkPos pos, CompoundTag tag) {
+        SavedChunk saved = chunks.getAndMoveToLast(pos.toLong());
+        if (saved == null) {
+            saved = saved(pos, tag);
+            cache(pos.toLong(), saved);
+        }
+        return saved;
+    }
+
+    /**
+     * Writes the block states of the chunk's sections marked in {@code changedSections} back into its NBT, the same
+     * way {@code ChunkSerializer.write} does.
+     */
+    public void writeSections(LevelChunk chunk, boolean[] changedSections, CompoundTag tag) {
+        ListTag sectionTags = tag.getList("sections", Tag.TAG_COMPOUND);
+        boolean[] written = new boolean[changedSections.length];
+        for (int i = 0; i < sectionTags.size(); i++) {
+            CompoundTag sectionTag = sectionTags.getCompound(i);
+            int sectionIndex = getSectionIndexFromSectionY(sectionTag.getByte("Y"));
+            if (sectionIndex >= 0 && sectionIndex < changedSections.length && changedSections[sectionIndex]) {
+                sectionTag.put("block_states", encodeStates(chunk.getSection(sectionIndex)));
+                written[sectionIndex] = true;
+            }
+        }
+        // Sections that were all air and had no light data aren't saved at all
+        for (int sectionIndex = 0; sectionIndex < changedSections.length; sectionIndex++) {
+            if (changedSections[sectionIndex] && !written[sectionIndex]) {
+                LevelChunkSection section = chunk.getSection(sectionIndex);
+                CompoundTag sectionTag = new CompoundTag();
+                sectionTag.putByte("Y", (byte) getSectionYFromSectionIndex(sectionIndex));
+                sectionTag.put("block_states", encodeStates(section));
+                sectionTag.put("biomes", biomeCodec.encodeStart(NbtOps.INSTANCE, section.getBiomes()).getOrThrow(false, message -> {}));
+                sectionTags.add(sectionTag);
+            }
+        }
+        tag.put("sections", sectionTags);
+    }
+
+    private static Tag encodeStates(LevelChunkSection section) {
+        return BLOCK_STATE_CODEC.encodeStart(NbtOps.INSTANCE, section.getStates()).getOrThrow(false, message -> {});
+    }
+
+    private void cache(long pos, SavedChunk saved) {
+        chunks.putAndMoveToLast(pos, saved);
+        if (chunks.size() > cachedChunks) {
+            chunks.removeFirst();
+        }
+    }
+
+    /**
+     * @return the number of chunks that could not be read or decoded so far
+     */
+    public int failedChunks() {
+        return failedChunks;
+    }
+
+    private SavedChunk read(ChunkPos pos) {
+        RegionFileReader region = region(pos.getRegionX(), pos.getRegionZ());
+        if (region == null) {
+            return SavedChunk.MISSING;
+        }
+        try {
+            CompoundTag tag = region.read(pos.getRegionLocalX() + pos.getRegionLocalZ() * 32);
+            if (tag == null) {
+                return SavedChunk.MISSING;
+            }
+            int version = NbtUtils.getDataVersion(tag, -1);
+            if (version < SharedConstants.getCurrentVersion().getDataVersion().getVersion()) {
+                tag = DataFixTypes.CHUNK.updateToCurrentVersion(DataFixers.getDataFixer(), tag, version);
+            }
+            return saved(pos, tag);
+        } catch (IOException | RuntimeException e) {
+            failedChunks++;
+            System.err.println("Skipping chunk " + pos + " in " + region.path().getFileName() + ": " + e.getMessage());
+            return SavedChunk.MISSING;
+        }
+    }
+
+    private SavedChunk saved(ChunkPos pos, CompoundTag tag) {
+        CompoundTag structures = tag.getCompound("structures");
+        if (ChunkSerializer.getChunkTypeFromTag(tag) != ChunkStatus.ChunkType.LEVELCHUNK) {
+            return new SavedChunk(null, structures);
+        }
+        return new SavedChunk(decode(pos, tag), structures);
+    }
+
+    // The section part of ChunkSerializer.read, which itself needs a server level with a POI manager and light engine
+    private LevelChunk decode(ChunkPos pos, CompoundTag tag) {
+        LevelChunkSection[] sections = new LevelChunkSection[getSectionsCount()];
+        ListTag sectionTags = tag.getList("sections", Tag.TAG_COMPOUND);
+        for (int i = 0; i < sectionTags.size(); i++) {
+            CompoundTag sectionTag = sectionTags.getCompound(i);
+            int sectionIndex = getSectionIndexFromSectionY(sectionTag.getByte("Y"));
+            if (sectionIndex < 0 || sectionIndex >= sections.length) {
+                continue;
+            }
+            if (sectionTag.contains("block_states", Tag.TAG_COMPOUND)) {
+                missingBlockIds.repairPalette(sectionTag.getCompound("block_states"));
+            }
+            PalettedContainer<BlockState> states = sectionTag.contains("block_states", Tag.TAG_COMPOUND)
+                    ? BLOCK_STATE_CODEC.parse(NbtOps.INSTANCE, sectionTag.getCompound("block_states")).getOrThrow(false, message -> {})
+                    : new PalettedContainer<>(Block.BLOCK_STATE_REGISTRY, Blocks.AIR.defaultBlockState(), PalettedContainer.Strategy.SECTION_STATES);
+            PalettedContainerRO<Holder<Biome>> sectionBiomes = sectionTag.contains("biomes", Tag.TAG_COMPOUND)
+                    ? biomeCodec.parse(NbtOps.INSTANCE, sectionTag.getCompound("biomes")).getOrThrow(false, message -> {})
+                    : new PalettedContainer<>(biomes.asHolderIdMap(), plains, PalettedContainer.Strategy.SECTION_BIOMES);
+            sections[sectionIndex] = new LevelChunkSection(states, sectionBiomes);
+        }
+        for (int i = 0; i < sections.length; i++) {
+            if (sections[i] == null) {
+                sections[i] = new LevelChunkSection(biomes);
+            }
+        }
+        return new LevelChunk(this, pos, UpgradeData.EMPTY, new LevelChunkTicks<>(), new LevelChunkTicks<>(),
+                tag.getLong("InhabitedTime"), sections, null, null);
+    }
+
+    @Nullable
+    private RegionFileReader region(int regionX, int regionZ) {
+        long key = ChunkPos.asLong(regionX, regionZ);
+        if (regions.containsKey(key)) {
+            return regions.getAndMoveToLast(key);
+        }
+        RegionFileReader region = null;
+        Path path = regionDir.resolve("r." + regionX + "." + regionZ + ".mca");
+        if (Files.isRegularFile(path)) {
+            try {
+                region = RegionFileReader.open(path);
+            } catch (IOException e) {
+                System.err.println("Skipping region " + path.getFileName() + ": " + e.getMessage());
+            }
+        }
+        regions.putAndMoveToLast(key, region);
+        if (regions.size() > OPEN_REGIONS) {
+            closeQuietly(regions.removeFirst());
+        }
+        return region;
+    }
+
+    @Override
+    public Holder<Biome> getUncachedNoiseBiome(int quartX, int quartY, int quartZ) {
+        return plains;
+    }
+
+    // Only answers from the cache; scans must not read from disk while they are timed
+    @Nullable
+    @Override
+    public ChunkAccess getChunk(int x, int z, ChunkStatus status, boolean require) {
+        SavedChunk saved = chunks.get(ChunkPos.asLong(x, z));
+        return saved == null ? null : saved.chunk();
+    }
+
+    @Override
+    public void close() {
+        for (RegionFileReader region : regions.values()) {
+            closeQuietly(region);
+        }
+        regions.clear();
+    }
+
+    private static void closeQuietly(@Nullable RegionFileReader region) {
+        if (region != null) {
+            try {
+                region.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package potionseeker.block_swap_advanced.converter;
+
+import potionseeker.block_swap_advanced.swapper.StructureLookup;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Registry;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.util.RandomSource;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.StructureManager;
+import net.minecraft.world.level.WorldGenLevel;
+import net.minecraft.world.level.chunk.ChunkGenerator;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+import net.minecraft.world.level.levelgen.structure.Structure;
+import net.minecraft.world.level.levelgen.structure.StructurePiece;
+import net.minecraft.world.level.levelgen.structure.StructureStart;
+import net.minecraft.world.level.levelgen.structure.pieces.PiecesContainer;
+import net.minecraft.world.level.levelgen.structure.pieces.StructurePieceSerializationContext;
+import net.minecraft.world.level.levelgen.structure.pieces.StructurePieceType;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Structure starts rebuilt from saved chunk data, the way {@code StructureManager.startsForStructure} would find them:
+ * through the chunk's references to the chunks holding the starts. Only piece bounding boxes matter to structure
+ * filters, so pieces are loaded as plain boxes instead of going through their templates.
+ */
+public final class SavedStructures {
+    private SavedStructures() {}
+
+    /**
+     * Resolves every start the chunk references up front, so the scan itself never reads from disk.
+     */
+    public static StructureLookup resolve(ReplayLevel level, ReplayLevel.SavedChunk saved) {
+        Registry<Structure> structures = level.registryAccess().registryOrThrow(Registries.STRUCTURE);
+        CompoundTag references = saved.structures().getCompound("References");
+        Map<Structure, List<StructureStart>> starts = new IdentityHashMap<>();
+        for (String key : references.getAllKeys()) {
+            Structure structure = structures.get(ResourceLocation.tryParse(key));
+            if (structure == null) {
+                continue;
+            }
+            List<StructureStart> structureStarts = new ArrayList<>();
+            for (long reference : references.getLongArray(key)) {
+                ReplayLevel.SavedChunk origin = level.load(ChunkPos.getX(reference), ChunkPos.getZ(reference));
+                StructureStart start = start(structure, origin.structures().getCompound("starts").getCompound(key));
+                if (start != null && start.isValid()) {
+                    structureStarts.add(start);
+                }
+            }
+            starts.put(structure, structureStarts);
+        }
+        return (chunkPos, structure) -> starts.getOrDefault(structure, List.of());
+    }
+
+    @Nullable
+    private static StructureStart start(Structure structure, CompoundTag tag) {
+        if (tag.isEmpty() || "INVALID".equals(tag.getString("id"))) {
+            return null;
+        }
+        List<StructurePiece> pieces = new ArrayList<>();
+        ListTag children = tag.getList("Children", Tag.TAG_COMPOUND);
+        for (int i = 0; i < children.size(); i++) {
+            CompoundTag child = children.getCompound(i);
+            int[] box = child.getIntArray("BB");
+            if (box.length == 6) {
+                StructurePieceType type = BuiltInRegistries.STRUCTURE_PIECE.get(ResourceLocation.tryParse(child.getString("id")));
+                pieces.add(new BoxPiece(type != null ? type : StructurePieceType.JIGSAW, child.getInt("GD"),
+                        new BoundingBox(box[0], box[1], box[2], box[3], box[4], box[5])));
+            }
+        }
+        return new StructureStart(structure, new ChunkPos(tag.getInt("ChunkX"), tag.getInt("ChunkZ")), tag.getInt("references"), new PiecesContainer(pieces));
+    }
+
+    /**
+     * A structure piece that is nothing but its bounding box.
+     */
+    public static final class BoxPiece extends StructurePiece {
+        public BoxPiece(StructurePieceType type, int genDepth, BoundingBox boundingBox) {
+            super(type, genDepth, boundingBox);
+        }
+
+        @Override
+        protected void addAdditionalSaveData(StructurePieceSerializationContext context, CompoundTag tag) {
+        }
+
+        @Override
+        public void postProcess(WorldGenLevel level, StructureManager structureManager, ChunkGenerator generator, RandomSource random, BoundingBox box, ChunkPos chunkPos, BlockPos pos) {
+            throw new UnsupportedOperationException("Saved structure pieces only carry their bounding box");
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package potionseeker.block_swap_advanced.converter;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.core.Holder;
+import net.minecraft.core.QuartPos;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.sounds.SoundEvent;
+import net.minecraft.sounds.SoundSource;
+import net.minecraft.util.profiling.InactiveProfiler;
+import net.minecraft.world.Difficulty;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.flag.FeatureFlagSet;
+import net.minecraft.world.flag.FeatureFlags;
+import net.minecraft.world.item.crafting.RecipeManager;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.GameRules;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.Biomes;
+import net.minecraft.world.level.biome.Climate;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.ChunkSource;
+import net.minecraft.world.level.chunk.ChunkStatus;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.dimension.DimensionType;
+import net.minecraft.world.level.entity.LevelEntityGetter;
+import net.minecraft.world.level.gameevent.GameEvent;
+import net.minecraft.world.level.material.Fluid;
+import net.minecraft.world.level.saveddata.maps.MapItemSavedData;
+import net.minecraft.world.level.storage.WritableLevelData;
+import net.minecraft.world.phys.Vec3;
+import net.minecraft.world.scores.Scoreboard;
+import net.minecraft.world.ticks.BlackholeTickAccess;
+import net.minecraft.world.ticks.LevelTickAccess;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * An overworld-shaped level with no server behind it, just enough for the swap engine: registries, build height,
+ * dimension and biomes. Biomes come in bands of four chunks cycling through a few vanilla biomes, so biome filters
+ * see a mix. Everything else is unsupported and fails loudly if the engine ever starts depending on it.
+ */
+public class SyntheticLevel extends Level {
+    private static final List<ResourceKey<Biome>> BIOME_BANDS = List.of(Biomes.PLAINS, Biomes.FOREST, Biomes.DESERT, Biomes.DRIPSTONE_CAVES);
+
+    private final List<Holder<Biome>> biomeBands;
+
+    public SyntheticLevel(RegistryAccess registryAccess) {
+        this(registryAccess, Level.OVERWORLD, OfflineRegistries.overworldType(), 0L);
+    }
+
+    protected SyntheticLevel(RegistryAccess registryAccess, ResourceKey<Level> dimension, Holder<DimensionType> dimensionType, long biomeZoomSeed) {
+        super(new FixedLevelData(), dimension, registryAccess,
+                dimensionType, () -> InactiveProfiler.INSTANCE, false, false, biomeZoomSeed, 0);
+        this.biomeBands = BIOME_BANDS.stream()
+                .map(key -> (Holder<Biome>) registryAccess.registryOrThrow(Registries.BIOME).getHolderOrThrow(key))
+                .toList();
+    }
+
+    /**
+     * @return an unattached chunk at {@code pos} with this level's biome bands and empty sections
+     */
+    public LevelChunk createChunk(ChunkPos pos) {
+        LevelChunk chunk = new LevelChunk(this, pos);
+        chunk.fillBiomesFromNoise((quartX, quartY, quartZ, sampler) -> getUncachedNoiseBiome(quartX, quartY, quartZ), Climate.empty());
+        return chunk;
+    }
+
+    @Override
+    public Holder<Biome> getUncachedNoiseBiome(int quartX, int quartY, int quartZ) {
+        int band = Math.floorMod(QuartPos.toSection(quartX) >> 2, biomeBands.size());
+        return biomeBands.get(band);
+    }
+
+    // No chunk is ever loaded, so biome lookups always fall through to getUncachedNoiseBiome
+    @Nullable
+    @Override
+    public ChunkAccess getChunk(int x, int z, ChunkStatus status, boolean require) {
+        return null;
+    }
+
+    @Override
+    public FeatureFlagSet enabledFeatures() {
+        return FeatureFlags.DEFAULT_FLAGS;
+    }
+
+    @Override
+    public LevelTickAccess<Block> getBlockTicks() {
+        return BlackholeTickAccess.emptyLevelList();
+    }
+
+    @Override
+    public LevelTickAccess<Fluid> getFluidTicks() {
+        return BlackholeTickAccess.emptyLevelList();
+    }
+
+    @Override
+    public List<? extends Player> players() {
+        return List.of();
+    }
+
+    @Override
+    public float getShade(Direction direction, boolean shade) {
+        return 1.0F;
+    }
+
+    @Override
+    public void sendBlockUpdated(BlockPos pos, BlockState oldState, BlockState newState, int flags) {
+    }
+
+    @Override
+    public void playSeededSound(@Nullable Player player, double x, double y, double z, Holder<SoundEvent> sound, SoundSource source, float volume, float pitch, long seed) {
+    }
+
+    @Override
+    public void playSeededSound(@Nullable Player player, Entity entity, Holder<SoundEvent> sound, SoundSource source, float volume, float pitch, long seed) {
+    }
+
+    @Override
+    public void levelEvent(@Nullable Player player, int type, BlockPos pos, int data) {
+    }
+
+    @Override
+    public void gameEvent(GameEvent event, Vec3 pos, GameEvent.Context context) {
+    }
+
+    @Override
+    public void destroyBlockProgress(int breakerId, BlockPos pos, int progress) {
+    }
+
+    @Override
+    public String gatherChunkSourceStats() {
+        return "synthetic";
+    }
+
+    @Nullable
+    @Override
+    public Entity getEntity(int id) {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public MapItemSavedData getMapData(String id) {
+        return null;
+    }
+
+    @Override
+    public void setMapData(String id, MapItemSavedData data) {
+        throw unsupported();
+    }
+
+    @Override
+    public int getFreeMapId() {
+        throw unsupported();
+    }
+
+    @Override
+    public Scoreboard getScoreboard() {
+        throw unsupported();
+    }
+
+    @Override
+    public RecipeManager getRecipeManager() {
+        throw unsupported();
+    }
+
+    @Override
+    protected LevelEntityGetter<Entity> getEntities() {
+        throw unsupported();
+    }
+
+    @Override
+    public ChunkSource getChunkSource() {
+        throw unsupported();
+    }
+
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("Not available in a level without a server");
+    }
+
+    /**
+     * Spawn at the origin, noon, clear weather and default game rules, none of which change.
+     */
+    private static final class FixedLevelData implements WritableLevelData {
+        private final GameRules gameRules = new GameRules();
+
+        @Override
+        public int getXSpawn() {
+            return 0;
+        }
+
+        @Override
+        public int getYSpawn() {
+            return 0;
+        }
+
+        @Override
+        public int getZSpawn() {
+            return 0;
+        }
+
+        @Override
+        public float getSpawnAngle() {
+            return 0.0F;
+        }
+
+        @Override
+        public void setXSpawn(int x) {
+        }
+
+        @Override
+        public void setYSpawn(int y) {
+        }
+
+        @Override
+        public void setZSpawn(int z) {
+        }
+
+        @Override
+        public void setSpawnAngle(float angle) {
+        }
+
+        @Override
+        public long getGameTime() {
+            return 0L;
+        }
+
+        @Override
+        public long getDayTime() {
+            return 6000L;
+        }
+
+        @Override
+        public boolean isThundering() {
+            return false;
+        }
+
+        @Override
+        public boolean isRaining() {
+            return false;
+        }
+
+        @Override
+        public void setRaining(boolean raining) {
+        }
+
+        @Override
+        public boolean isHardcore() {
+            return false;
+        }
+
+        @Override
+        public GameRules getGameRules() {
+            return gameRules;
+        }
+
+        @Override
+        public Difficulty getDifficulty() {
+            return Difficulty.NORMAL;
+        }
+
+        @Override
+        public boolean isDifficultyLocked() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package potionseeker.block_swap_advanced.converter;
+
+import potionseeker.block_swap_advanced.census.ChunkCensusData;
+import potionseeker.block_swap_advanced.config.BlockSwapConfig;
+import potionseeker.block_swap_advanced.config.MissingBlockIDsConfig;
+import potionseeker.block_swap_advanced.region.RegionFileReader;
+import potionseeker.block_swap_advanced.serialization.JanksonJsonOps;
+import potionseeker.block_swap_advanced.serialization.JanksonUtil;
+import potionseeker.block_swap_advanced.swapper.SwapPhase;
+import potionseeker.block_swap_advanced.swapper.Swapper;
+
+import com.mojang.serialization.DataResult;
+import net.minecraft.core.Holder;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.util.DirectoryLock;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.biome.BiomeManager;
+import net.minecraft.world.level.dimension.DimensionType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Applies a rule set to every chunk of a stopped world's dimension, straight through its region files and on every
+ * core, instead of waiting for players to load each chunk under retro_gen. Each region file is converted by one worker
+ * from start to finish; see {@link RegionConverter} for what a conversion does to a chunk. Converted chunks are stamped
+ * as processed, so retro_gen and redo_gen treat them like chunks the server processed itself, and a later run with a
+ * changed config only applies the rules that changed.
+ * <p>
+ * Usage: {@code ./gradlew :Converter:convertWorld -Pworld=<world dir> (-PinPlace | -Poutput=<dir>)
+ * [-Pdimension=minecraft:the_nether] [-PswapConfig=<block_swap.json5>] [-Pthreads=<n>] [-Pmmap=false]}.
+ * <ul>
+ *     <li>{@code inPlace} replaces each region file of the world as soon as its converted copy is complete.</li>
+ *     <li>{@code output} writes the converted region files, and the block census, to the same place in another
+ *     directory, to be copied over the world once checked; nothing else of the world is copied.</li>
+ * </ul>
+ * The config defaults to the world's own {@code serverconfig/block_swap.json5}, and block ids are repaired through its
+ * {@code missing_block_ids.json5}. The world is locked for the whole run, so a running server refuses to open it and
+ * the converter refuses to start on a world a server has open. Finished regions are recorded in
+ * {@code block_swap_convert.progress} next to the output, and a conversion that is stopped picks up where it left off
+ * when started again with the same dimension and config. Region files are memory-mapped unless converting in place on
+ * Windows, which can't replace a file that is still mapped.
+ */
+public final class WorldConverter {
+    private static final String PROGRESS_FILE = "block_swap_convert.progress";
+    private static final int CACHED_CHUNKS = 512;
+    private static final long REPORT_SECONDS = 10;
+
+    private WorldConverter() {}
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = options(args);
+        boolean inPlace = Boolean.parseBoolean(options.get("in-place"));
+        if (!options.containsKey("world") || inPlace == options.containsKey("output")) {
+            System.err.println("Usage: WorldConverter --world <world dir> (--in-place true | --output <dir>) [--dimension <id>] [--config <block_swap.json5>] [--threads <n>] [--mmap <true|false>]");
+            System.exit(2);
+        }
+        Path world = Paths.get(options.get("world"));
+        Path output = inPlace ? world : Paths.get(options.get("output"));
+        ResourceKey<Level> dimension = ResourceKey.create(Registries.DIMENSION, new ResourceLocation(options.getOrDefault("dimension", "minecraft:overworld")));
+        Path configPath = options.containsKey("config") ? Paths.get(options.get("config")) : world.resolve("serverconfig").resolve("block_swap.json5");
+        int threads = Integer.parseInt(options.getOrDefault("threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+        boolean windows = System.getProperty("os.name").toLowerCase(Locale.ROOT).startsWith("windows");
+        boolean mapped = Boolean.parseBoolean(options.getOrDefault("mmap", Boolean.toString(!(inPlace && windows))));
+
+        RegistryAccess registryAccess = OfflineRegistries.registryAccess();
+        DataResult<BlockSwapConfig> config = JanksonUtil.readConfigWithResult(configPath, BlockSwapConfig.CODEC, JanksonJsonOps.INSTANCE);
+        if (config.result().isEmpty()) {
+            System.err.println("Could not read " + configPath + ": " + config.error().map(DataResult.PartialResult::message).orElse("unknown error"));
+            System.exit(1);
+        }
+        Swapper.updateConfig(config.result().get());
+        if (Swapper.table(SwapPhase.RETRO).isEmpty()) {
+            System.err.println("No rule in " + configPath + " is applied by retro_gen, so there is nothing to convert");
+            System.exit(1);
+        }
+        MissingBlockIDsConfig missingBlockIds = MissingBlockIDsConfig.read(world.resolve("serverconfig").resolve("missing_block_ids.json5"));
+
+        try (DirectoryLock lock = DirectoryLock.create(world)) {
+            CompoundTag worldGenSettings = NbtIo.readCompressed(world.resolve("level.dat").toFile()).getCompound("Data").getCompound("WorldGenSettings");
+            long seed = worldGenSettings.getLong("seed");
+            Holder<DimensionType> dimensionType = OfflineRegistries.dimensionType(worldGenSettings, dimension);
+
+            Path regionDir = DimensionType.getStorageFolder(dimension, world).resolve("region");
+            Path outputDir = DimensionType.getStorageFolder(dimension, output).resolve("region");
+            Files.createDirectories(outputDir);
+            List<Path> regionFiles;
+            try (Stream<Path> files = Files.list(regionDir)) {
+                regionFiles = files.filter(RegionFileReader::isRegionFile).sorted().toList();
+            }
+
+            try (ConvertProgress progress = ConvertProgress.open(output.resolve(PROGRESS_FILE), dimension.location().toString(), Swapper.configHash())) {
+                List<Path> pending = regionFiles.stream().filter(file -> !progress.isFinished(file.getFileName().toString())).toList();
+                System.out.printf(Locale.ROOT, "Converting %d region files from %s to %s with %d rules from %s on %d threads%s%n",
+                        pending.size(), regionDir, outputDir, config.result().get().swapEntries().size(), configPath, threads, mapped ? ", memory-mapped" : "");
+                if (pending.size() < regionFiles.size()) {
+                    System.out.printf(Locale.ROOT, "Resuming: %d region files were converted by an earlier run%n", regionFiles.size() - pending.size());
+                }
+
+                ConvertStats stats = new ConvertStats(Swapper.table(SwapPhase.RETRO).ruleCount());
+                Path censusDir = ChunkCensusData.regionDir(dimension, world);
+                Path outputCensusDir = ChunkCensusData.regionDir(dimension, output);
+                List<ReplayLevel> levels = new ArrayList<>();
+                ThreadLocal<RegionConverter> converters = ThreadLocal.withInitial(() -> {
+                    ReplayLevel level = new ReplayLevel(registryAccess, dimension, dimensionType, BiomeManager.obfuscateSeed(seed), regionDir, missingBlockIds, CACHED_CHUNKS);
+                    synchronized (levels) {
+                        levels.add(level);
+                    }
+                    return new RegionConverter(level, seed, stats, mapped);
+                });
+
+                AtomicInteger threadId = new AtomicInteger();
+                ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+                    Thread thread = new Thread(runnable, "BlockSwap Converter #" + threadId.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "BlockSwap Converter Progress");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                reporter.scheduleAtFixedRate(() -> stats.printProgress(System.out, pending.size()), REPORT_SECONDS, REPORT_SECONDS, TimeUnit.SECONDS);
+
+                for (Path regionFile : pending) {
+                    workers.execute(() -> {
+                        String name = regionFile.getFileName().toString();
+                        try {
+                            converters.get().convert(regionFile, outputDir, censusDir, outputCensusDir);
+                            progress.markFinished(name);
+                        } catch (IOException | RuntimeException e) {
+                            stats.regionsFailed.increment();
+                            System.err.println("Could not convert " + name + ", left as it was: " + e);
+                            if (!inPlace) {
+                                copyQuietly(regionFile, outputDir.resolve(name));
+                            }
+                        }
+                    });
+                }
+                workers.shutdown();
+                workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+                reporter.shutdownNow();
+                synchronized (levels) {
+                    levels.forEach(ReplayLevel::close);
+                }
+
+                stats.printSummary(System.out, Swapper.table(SwapPhase.RETRO));
+                if (stats.regionsFailed.sum() == 0) {
+                    progress.delete();
+                } else {
+                    System.out.println("Run the converter again to retry the regions that failed");
+                }
+            }
+        } catch (DirectoryLock.LockException e) {
+            System.err.println(world + " is in use; stop the server before converting it");
+            System.exit(1);
+        }
+    }
+
+    private static void copyQuietly(Path from, Path to) {
+        try {
+            Files.copy(from, to, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("Could not copy " + from.getFileName() + " to the output either: " + e.getMessage());
+        }
+    }
+
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected an option, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+}